@@ -0,0 +1,85 @@
+package bench;
+
+import ledger.LocalLedgerStore;
+import model.Money;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.AccountService;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class AccountServiceBenchmark {
+
+    // Fewer accounts means more threads contending for the same rows
+    @Param({ "100", "10000" })
+    public int accounts;
+
+    // Ledger backend: the MySQL tables, or the memory-mapped local ledger with group commit
+    @Param({ "mysql", "local" })
+    public String storage;
+
+    private BenchDatabase database;
+    private LocalLedgerStore localStore;
+    private AccountService accountService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException, IOException {
+        database = BenchDatabase.create("service" + accounts, accounts, Money.ofUnits(1_000_000));
+        if ("local".equals(storage)) {
+            Path dir = Files.createTempDirectory("bench-ledger");
+            localStore = new LocalLedgerStore(dir, 64 * 1024 * 1024, true, 50, 0);
+            for (int userId : database.userIds) {
+                int accountId = localStore.provisionAccount(userId);
+                localStore.deposit(accountId, Money.ofUnits(1_000_000), null);
+            }
+            accountService = new AccountService(localStore);
+        } else {
+            accountService = new AccountService();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (localStore != null) {
+            localStore.close();
+        }
+        database.close();
+    }
+
+    @Benchmark
+    public boolean deposit() throws SQLException {
+        int[] userIds = database.userIds;
+        return accountService.deposit(userIds[ThreadLocalRandom.current().nextInt(userIds.length)], 100);
+    }
+
+    @Benchmark
+    public boolean transfer() throws SQLException {
+        int[] userIds = database.userIds;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int from = userIds[random.nextInt(userIds.length)];
+        int to = userIds[random.nextInt(userIds.length)];
+        return accountService.transfer(from, to, 1);
+    }
+}
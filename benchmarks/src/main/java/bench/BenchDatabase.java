@@ -0,0 +1,109 @@
+package bench;
+
+import model.Money;
+import model.Transaction;
+import repository.TransactionRepository;
+import util.DBConnection;
+import util.SchemaMigrator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+// Stand-in database for the benchmarks: a private in-memory H2 database in MySQL mode,
+// created with the application's own migrations and seeded with synthetic customers.
+final class BenchDatabase {
+    private static final int BATCH_SIZE = 1_000;
+
+    final int[] userIds;
+    final int[] accountIds;
+
+    private BenchDatabase(int[] userIds, int[] accountIds) {
+        this.userIds = userIds;
+        this.accountIds = accountIds;
+    }
+
+    // Must run before anything touches util.DBConnection in this JVM
+    static void configure(String name) {
+        System.setProperty("bank.db.url", "jdbc:h2:mem:" + name + ";MODE=MySQL;DB_CLOSE_DELAY=-1");
+        System.setProperty("bank.db.user", "sa");
+        System.setProperty("bank.db.password", "");
+    }
+
+    static BenchDatabase create(String name, int customers, long initialBalance) throws SQLException {
+        configure(name);
+        SchemaMigrator.migrate();
+
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO users (username, password, role) VALUES (?, ?, 'USER')")) {
+                for (int i = 0; i < customers; i++) {
+                    stmt.setString(1, "bench-" + i);
+                    stmt.setString(2, "bench");
+                    stmt.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) {
+                        stmt.executeBatch();
+                    }
+                }
+                stmt.executeBatch();
+            }
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO accounts (userId, balance) SELECT userId, ? FROM users WHERE username LIKE 'bench-%'")) {
+                stmt.setBigDecimal(1, Money.toDecimal(initialBalance));
+                stmt.executeUpdate();
+            }
+            conn.commit();
+
+            List<int[]> rows = new ArrayList<>(customers);
+            try (Statement stmt = conn.createStatement();
+                    ResultSet rs = stmt.executeQuery("SELECT a.userId, a.accountId FROM accounts a"
+                            + " JOIN users u ON u.userId = a.userId WHERE u.username LIKE 'bench-%' ORDER BY a.accountId")) {
+                while (rs.next()) {
+                    rows.add(new int[] { rs.getInt(1), rs.getInt(2) });
+                }
+            }
+            int[] userIds = new int[rows.size()];
+            int[] accountIds = new int[rows.size()];
+            for (int i = 0; i < rows.size(); i++) {
+                userIds[i] = rows.get(i)[0];
+                accountIds[i] = rows.get(i)[1];
+            }
+            return new BenchDatabase(userIds, accountIds);
+        }
+    }
+
+    // Adds transfersPerAccount outgoing transfers for every account, spread over the last year
+    void seedHistory(int transfersPerAccount) throws SQLException {
+        TransactionRepository repository = new TransactionRepository();
+        LocalDateTime start = LocalDateTime.now().minusDays(365);
+        List<Transaction> batch = new ArrayList<>(BATCH_SIZE);
+        long sequence = 0;
+
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            for (int i = 0; i < accountIds.length; i++) {
+                for (int j = 0; j < transfersPerAccount; j++) {
+                    int to = accountIds[(i + j + 1) % accountIds.length];
+                    LocalDateTime at = start.plusSeconds(sequence++ * 31);
+                    batch.add(new Transaction(0, accountIds[i], to, 100, at, "TRANSFER"));
+                    if (batch.size() == BATCH_SIZE) {
+                        repository.insertBatch(conn, batch);
+                        batch.clear();
+                    }
+                }
+            }
+            repository.insertBatch(conn, batch);
+            conn.commit();
+        }
+    }
+
+    void close() {
+        DBConnection.shutdown();
+    }
+}
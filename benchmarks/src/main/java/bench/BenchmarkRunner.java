@@ -0,0 +1,42 @@
+package bench;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * Runs the benchmarks once per thread count and writes one JSON result file per run,
+ * e.g. benchmarks/results/jmh-8-threads.json. SampleTime results include the p50 to p99.99
+ * latency percentiles.
+ *
+ * Usage: java -jar benchmarks/target/benchmarks.jar [threads,...] [include regex] [results dir]
+ * Defaults: 1, the number of cores and 8x the number of cores; every benchmark; benchmarks/results.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws RunnerException {
+        int cores = Runtime.getRuntime().availableProcessors();
+        String threadList = args.length > 0 ? args[0] : "1," + cores + "," + cores * 8;
+        String include = args.length > 1 ? args[1] : "bench\\..*";
+        File resultsDir = new File(args.length > 2 ? args[2] : "benchmarks/results");
+        resultsDir.mkdirs();
+
+        for (String value : threadList.split(",")) {
+            int threads = Integer.parseInt(value.trim());
+            Options options = new OptionsBuilder()
+                    .include(include)
+                    .threads(threads)
+                    // Size the pool to the thread count so the benchmark measures the database, not pool waits
+                    .jvmArgsAppend("-Dbank.pool.maxSize=" + Math.max(10, threads),
+                            "-Dbank.pool.borrowTimeoutMs=60000")
+                    .resultFormat(ResultFormatType.JSON)
+                    .result(new File(resultsDir, "jmh-" + threads + "-threads.json").getPath())
+                    .build();
+            new Runner(options).run();
+        }
+    }
+}
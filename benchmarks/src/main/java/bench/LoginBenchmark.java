@@ -0,0 +1,78 @@
+package bench;
+
+import model.Money;
+import model.User;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import service.AuthService;
+import util.DBConnection;
+import util.PasswordHasher;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Login throughput per PBKDF2 cost, with and without the verified-login cache.
+// Each parameter combination runs in its own fork, so the system properties set in
+// setUp are the ones AuthService reads when it is first loaded.
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class LoginBenchmark {
+    private static final int CUSTOMERS = 1_000;
+    private static final String PASSWORD = "bench";
+
+    @Param({ "10000", "100000", "310000" })
+    public int iterations;
+
+    // 0 disables the cache so every login pays for the query and the hash
+    @Param({ "0", "10000" })
+    public int cacheMaxSize;
+
+    private BenchDatabase database;
+    private AuthService authService;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        System.setProperty("bank.password.iterations", String.valueOf(iterations));
+        System.setProperty("bank.password.cacheMaxSize", String.valueOf(cacheMaxSize));
+        // Let every benchmark thread queue rather than be turned away
+        System.setProperty("bank.password.queueSize", "100000");
+
+        database = BenchDatabase.create("login" + iterations + "_" + cacheMaxSize, CUSTOMERS, Money.ofUnits(100));
+        PasswordHasher hasher = new PasswordHasher(iterations);
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(
+                        "UPDATE users SET password = ? WHERE username LIKE 'bench-%'")) {
+            stmt.setString(1, hasher.hash(PASSWORD));
+            stmt.executeUpdate();
+        }
+        authService = new AuthService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public User login() throws SQLException {
+        return authService.authenticate("bench-" + ThreadLocalRandom.current().nextInt(CUSTOMERS), PASSWORD);
+    }
+}
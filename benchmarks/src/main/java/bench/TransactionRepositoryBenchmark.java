@@ -0,0 +1,69 @@
+package bench;
+
+import model.Page;
+import model.Transaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import repository.TransactionRepository;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class TransactionRepositoryBenchmark {
+
+    @Param({ "1000" })
+    public int accounts;
+
+    // Each account sends this many transfers and receives as many, so its history is twice this size
+    @Param({ "10", "200" })
+    public int transfersPerAccount;
+
+    private BenchDatabase database;
+    private TransactionRepository transactionRepository;
+
+    @Setup(Level.Trial)
+    public void setUp() throws SQLException {
+        database = BenchDatabase.create("history" + accounts + "x" + transfersPerAccount, accounts, 0);
+        database.seedHistory(transfersPerAccount);
+        transactionRepository = new TransactionRepository();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Transaction> findByAccountId() throws SQLException {
+        return transactionRepository.findByAccountId(randomAccount());
+    }
+
+    @Benchmark
+    public Page<Transaction> findFirstPageByAccountId() throws SQLException {
+        return transactionRepository.findPageByAccountId(randomAccount(), null, 20);
+    }
+
+    private int randomAccount() {
+        int[] accountIds = database.accountIds;
+        return accountIds[ThreadLocalRandom.current().nextInt(accountIds.length)];
+    }
+}
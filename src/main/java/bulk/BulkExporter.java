@@ -0,0 +1,115 @@
+package bulk;
+
+import model.Account;
+import model.Money;
+import model.Transaction;
+import model.User;
+import util.DBConnection;
+import util.ResultSetStream;
+import util.RowMapper;
+import util.ThreadPools;
+import util.UncheckedSQLException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+// Writes users, accounts and transactions to a directory, one file per kind, each streamed
+// straight from the database on its own thread and connection.
+public class BulkExporter {
+    private final Path dir;
+    private final BulkFormat format;
+
+    public BulkExporter(Path dir, BulkFormat format) {
+        this.dir = dir;
+        this.format = format;
+    }
+
+    public List<BulkReport> run() throws IOException, SQLException {
+        Files.createDirectories(dir);
+        ExecutorService pool = ThreadPools.newFixedPool("bulk-export", 3);
+        try {
+            List<Future<BulkReport>> futures = new ArrayList<>();
+            futures.add(pool.submit(() -> export(RecordCodec.USERS,
+                    "SELECT userId, username, password, role FROM users ORDER BY userId",
+                    rs -> new User(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getString(4)))));
+            futures.add(pool.submit(() -> export(RecordCodec.ACCOUNTS,
+                    "SELECT accountId, userId, balance FROM accounts ORDER BY accountId",
+                    rs -> new Account(rs.getInt(1), rs.getInt(2), Money.fromDecimal(rs.getBigDecimal(3))))));
+            futures.add(pool.submit(() -> export(RecordCodec.TRANSACTIONS,
+                    "SELECT transactionId, fromAccountId, toAccountId, amount, dateTime, type"
+                            + " FROM transactions ORDER BY transactionId",
+                    rs -> new Transaction(rs.getInt(1), rs.getInt(2), rs.getInt(3),
+                            Money.fromDecimal(rs.getBigDecimal(4)), rs.getTimestamp(5).toLocalDateTime(),
+                            rs.getString(6)))));
+
+            List<BulkReport> reports = new ArrayList<>();
+            for (Future<BulkReport> future : futures) {
+                reports.add(await(future));
+            }
+            return reports;
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private <T> BulkReport export(RecordCodec<T> codec, String sql, RowMapper<T> mapper)
+            throws IOException, SQLException {
+        long start = System.nanoTime();
+        long rows = 0;
+        boolean complete = false;
+        Connection conn = DBConnection.getConnection();
+        PreparedStatement stmt;
+        try {
+            stmt = ResultSetStream.prepareStreaming(conn, sql);
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+        try (Stream<T> records = ResultSetStream.of(conn, stmt, mapper);
+                RecordWriter<T> writer = format.openWriter(dir, codec)) {
+            Iterator<T> it = records.iterator();
+            while (it.hasNext()) {
+                writer.write(it.next());
+                rows++;
+            }
+            complete = true;
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        } finally {
+            // A partial file would look complete to the importer
+            if (!complete) {
+                Files.deleteIfExists(format.file(dir, codec));
+            }
+        }
+        return new BulkReport(codec.getName(), rows, 0, System.nanoTime() - start);
+    }
+
+    private static BulkReport await(Future<BulkReport> future) throws IOException, SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while exporting", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+}
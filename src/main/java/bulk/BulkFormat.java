@@ -0,0 +1,243 @@
+package bulk;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * File formats for bulk import and export. Each kind of record goes to its own file in
+ * the directory, e.g. users.csv or users.bin.
+ *
+ * CSV: a header line, then one record per line. Fields containing a comma or a quote
+ * are quoted, with quotes doubled; line breaks inside fields are not supported.
+ *
+ * Binary: the magic number "BNK1" and the record kind, then each record prefixed with
+ * a 1 byte, then a 0 byte at the end. Numbers are big-endian, money is cents and
+ * strings use DataOutput's modified UTF-8.
+ */
+public enum BulkFormat {
+    CSV("csv"),
+    BINARY("bin");
+
+    private static final int MAGIC = 0x424E4B31;
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final String extension;
+
+    BulkFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public static BulkFormat fromName(String name) {
+        for (BulkFormat format : values()) {
+            if (format.extension.equalsIgnoreCase(name) || format.name().equalsIgnoreCase(name)) {
+                return format;
+            }
+        }
+        throw new IllegalArgumentException("Unknown format: " + name + " (use csv or bin)");
+    }
+
+    public Path file(Path dir, RecordCodec<?> codec) {
+        return dir.resolve(codec.getName() + "." + extension);
+    }
+
+    public <T> RecordReader<T> openReader(Path dir, RecordCodec<T> codec) throws IOException {
+        Path path = file(dir, codec);
+        return this == CSV ? new CsvReader<>(path, codec) : new BinaryReader<>(path, codec);
+    }
+
+    public <T> RecordWriter<T> openWriter(Path dir, RecordCodec<T> codec) throws IOException {
+        Path path = file(dir, codec);
+        return this == CSV ? new CsvWriter<>(path, codec) : new BinaryWriter<>(path, codec);
+    }
+
+    private static final class CsvReader<T> implements RecordReader<T> {
+        private final BufferedReader in;
+        private final RecordCodec<T> codec;
+        private final Path path;
+        private long line = 1;
+
+        CsvReader(Path path, RecordCodec<T> codec) throws IOException {
+            this.path = path;
+            this.codec = codec;
+            this.in = new BufferedReader(Files.newBufferedReader(path, StandardCharsets.UTF_8), BUFFER_SIZE);
+            String header = in.readLine();
+            if (header == null || !Arrays.equals(split(header), codec.getHeader())) {
+                in.close();
+                throw new IOException(path + ": expected header " + String.join(",", codec.getHeader()));
+            }
+        }
+
+        @Override
+        public T read() throws IOException {
+            String text;
+            do {
+                text = in.readLine();
+                line++;
+                if (text == null) {
+                    return null;
+                }
+            } while (text.isEmpty());
+            String[] fields = split(text);
+            if (fields.length != codec.getHeader().length) {
+                throw new IOException(path + ":" + line + ": expected " + codec.getHeader().length + " fields");
+            }
+            try {
+                return codec.fromFields(fields);
+            } catch (RuntimeException e) {
+                throw new IOException(path + ":" + line + ": " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+
+        private static String[] split(String text) {
+            List<String> fields = new ArrayList<>();
+            StringBuilder field = new StringBuilder();
+            boolean quoted = false;
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (quoted) {
+                    if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else if (c == '"') {
+                        quoted = false;
+                    } else {
+                        field.append(c);
+                    }
+                } else if (c == '"') {
+                    quoted = true;
+                } else if (c == ',') {
+                    fields.add(field.toString());
+                    field.setLength(0);
+                } else {
+                    field.append(c);
+                }
+            }
+            fields.add(field.toString());
+            return fields.toArray(new String[0]);
+        }
+    }
+
+    private static final class CsvWriter<T> implements RecordWriter<T> {
+        private final BufferedWriter out;
+        private final RecordCodec<T> codec;
+
+        CsvWriter(Path path, RecordCodec<T> codec) throws IOException {
+            this.codec = codec;
+            this.out = new BufferedWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8), BUFFER_SIZE);
+            writeLine(codec.getHeader());
+        }
+
+        @Override
+        public void write(T record) throws IOException {
+            writeLine(codec.toFields(record));
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+
+        private void writeLine(String[] fields) throws IOException {
+            for (int i = 0; i < fields.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                String field = fields[i];
+                if (field.indexOf(',') >= 0 || field.indexOf('"') >= 0) {
+                    out.write('"');
+                    out.write(field.replace("\"", "\"\""));
+                    out.write('"');
+                } else {
+                    out.write(field);
+                }
+            }
+            out.write('\n');
+        }
+    }
+
+    private static final class BinaryReader<T> implements RecordReader<T> {
+        private final DataInputStream in;
+        private final RecordCodec<T> codec;
+        private final Path path;
+
+        BinaryReader(Path path, RecordCodec<T> codec) throws IOException {
+            this.path = path;
+            this.codec = codec;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), BUFFER_SIZE));
+            try {
+                if (in.readInt() != MAGIC || !codec.getName().equals(in.readUTF())) {
+                    throw new IOException(path + ": not a " + codec.getName() + " bulk file");
+                }
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+        }
+
+        @Override
+        public T read() throws IOException {
+            try {
+                int marker = in.readByte();
+                if (marker == 0) {
+                    return null;
+                }
+                if (marker != 1) {
+                    throw new IOException(path + ": corrupt record marker " + marker);
+                }
+                return codec.read(in);
+            } catch (EOFException e) {
+                throw new IOException(path + ": file is truncated", e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static final class BinaryWriter<T> implements RecordWriter<T> {
+        private final DataOutputStream out;
+        private final RecordCodec<T> codec;
+
+        BinaryWriter(Path path, RecordCodec<T> codec) throws IOException {
+            this.codec = codec;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), BUFFER_SIZE));
+            out.writeInt(MAGIC);
+            out.writeUTF(codec.getName());
+        }
+
+        @Override
+        public void write(T record) throws IOException {
+            out.writeByte(1);
+            codec.write(out, record);
+        }
+
+        // The end marker lets the reader tell a complete file from a truncated one
+        @Override
+        public void close() throws IOException {
+            try {
+                out.writeByte(0);
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,320 @@
+package bulk;
+
+import model.Account;
+import model.Transaction;
+import model.User;
+import repository.AccountRepository;
+import repository.BulkRepository;
+import repository.TransactionRepository;
+import service.TransferEngine;
+import util.DBConnection;
+import util.IntLongMap;
+import util.ThreadPools;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Loads users, accounts and transactions exported by BulkExporter (or produced by
+ * another system in the same format) into the database.
+ *
+ * Each kind of record is a pipeline stage: the calling thread parses the file into
+ * chunks while a pool of writers inserts them, one database transaction per chunk. The
+ * chunk's row in bulk_import_progress is written in the same transaction, so running
+ * the same job again after a crash skips exactly the chunks that made it in.
+ *
+ * Ids in the files are mapped to the ids generated here. Users are matched by username
+ * and accounts by owner, so users or accounts that already exist (the default admin, or
+ * rows from an earlier run) are reused rather than inserted twice. Balances are taken as
+ * they are in the file; imported transactions are history and do not move money.
+ */
+public class BulkImporter {
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final Path dir;
+    private final BulkFormat format;
+    private final String jobId;
+    private final int chunkSize;
+    private final int writers;
+
+    private final BulkRepository bulkRepository = new BulkRepository();
+    private final TransactionRepository transactionRepository = new TransactionRepository();
+    // Only used for its deadlock-retry loop around each chunk transaction
+    private final TransferEngine retry = new TransferEngine(new AccountRepository(), transactionRepository);
+
+    // Ids in the files -> ids in this database; written under their own lock by the writers
+    private final IntLongMap userIds = new IntLongMap();
+    private final IntLongMap accountIds = new IntLongMap();
+
+    public BulkImporter(Path dir, BulkFormat format, String jobId, int chunkSize, int writers) {
+        this.dir = dir;
+        this.format = format;
+        this.jobId = jobId;
+        this.chunkSize = chunkSize;
+        this.writers = writers;
+    }
+
+    public List<BulkReport> run() throws IOException, SQLException {
+        List<BulkReport> reports = new ArrayList<>();
+        reports.add(load(RecordCodec.USERS, new ChunkLoader<User>() {
+            @Override
+            public void insert(Connection conn, List<User> users) throws SQLException {
+                loadUsers(conn, users);
+            }
+
+            @Override
+            public void resolve(Connection conn, List<User> users) throws SQLException {
+                loadUsers(conn, users);
+            }
+        }));
+        reports.add(load(RecordCodec.ACCOUNTS, new ChunkLoader<Account>() {
+            @Override
+            public void insert(Connection conn, List<Account> accounts) throws SQLException {
+                loadAccounts(conn, accounts);
+            }
+
+            @Override
+            public void resolve(Connection conn, List<Account> accounts) throws SQLException {
+                loadAccounts(conn, accounts);
+            }
+        }));
+        reports.add(load(RecordCodec.TRANSACTIONS, new ChunkLoader<Transaction>() {
+            @Override
+            public void insert(Connection conn, List<Transaction> transactions) throws SQLException {
+                loadTransactions(conn, transactions);
+            }
+
+            @Override
+            public void resolve(Connection conn, List<Transaction> transactions) {
+                // Transactions have no natural key; a loaded chunk is simply skipped
+            }
+        }));
+        return reports;
+    }
+
+    // Maps every user in the chunk to an existing user with the same name, inserting the missing ones
+    private void loadUsers(Connection conn, List<User> users) throws SQLException {
+        String[] usernames = new String[users.size()];
+        for (int i = 0; i < usernames.length; i++) {
+            usernames[i] = users.get(i).getUsername();
+        }
+        int[] ids = bulkRepository.resolveUserIds(conn, usernames);
+        List<User> missing = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] < 0) {
+                missing.add(users.get(i));
+            }
+        }
+        int[] inserted = missing.isEmpty() ? new int[0] : bulkRepository.insertUsers(conn, missing);
+
+        synchronized (userIds) {
+            for (int i = 0, next = 0; i < ids.length; i++) {
+                userIds.put(users.get(i).getUserId(), ids[i] >= 0 ? ids[i] : inserted[next++]);
+            }
+        }
+    }
+
+    // Maps every account to its owner's existing account, inserting accounts for owners without one
+    private void loadAccounts(Connection conn, List<Account> accounts) throws SQLException {
+        int[] owners = new int[accounts.size()];
+        for (int i = 0; i < owners.length; i++) {
+            Account account = accounts.get(i);
+            long owner = userIds.get(account.getUserId(), -1);
+            if (owner < 0) {
+                throw new SQLException("Account " + account.getAccountId() + " belongs to user "
+                        + account.getUserId() + ", who is not in the users file");
+            }
+            owners[i] = (int) owner;
+        }
+        int[] ids = bulkRepository.resolveAccountIds(conn, owners);
+        List<Account> missing = new ArrayList<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (ids[i] < 0) {
+                missing.add(new Account(0, owners[i], accounts.get(i).getBalance()));
+            }
+        }
+        int[] inserted = missing.isEmpty() ? new int[0] : bulkRepository.insertAccounts(conn, missing);
+
+        synchronized (accountIds) {
+            for (int i = 0, next = 0; i < ids.length; i++) {
+                accountIds.put(accounts.get(i).getAccountId(), ids[i] >= 0 ? ids[i] : inserted[next++]);
+            }
+        }
+    }
+
+    private void loadTransactions(Connection conn, List<Transaction> transactions) throws SQLException {
+        List<Transaction> mapped = new ArrayList<>(transactions.size());
+        for (Transaction transaction : transactions) {
+            mapped.add(new Transaction(0, mapAccount(transaction, transaction.getFromAccountId()),
+                    mapAccount(transaction, transaction.getToAccountId()), transaction.getAmount(),
+                    transaction.getDateTime(), transaction.getType()));
+        }
+        transactionRepository.insertBatch(conn, mapped);
+    }
+
+    private int mapAccount(Transaction transaction, int sourceAccountId) throws SQLException {
+        long id = accountIds.get(sourceAccountId, -1);
+        if (id < 0) {
+            throw new SQLException("Transaction " + transaction.getTransactionId() + " refers to account "
+                    + sourceAccountId + ", which is not in the accounts file");
+        }
+        return (int) id;
+    }
+
+    private <T> BulkReport load(RecordCodec<T> codec, ChunkLoader<T> loader) throws IOException, SQLException {
+        String entity = codec.getName();
+        if (!Files.exists(format.file(dir, codec))) {
+            System.out.println(entity + ": no " + format.file(dir, codec).getFileName() + ", skipped");
+            return new BulkReport(entity, 0, 0, 0);
+        }
+
+        Set<Integer> loadedChunks;
+        try (Connection conn = DBConnection.getConnection()) {
+            loadedChunks = bulkRepository.completedChunks(conn, jobId, entity);
+        }
+
+        long start = System.nanoTime();
+        AtomicLong rows = new AtomicLong();
+        AtomicLong skipped = new AtomicLong();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        BlockingQueue<Chunk<T>> queue = new ArrayBlockingQueue<>(writers * 2);
+
+        ExecutorService pool = ThreadPools.newFixedPool("bulk-" + entity, writers);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < writers; i++) {
+            workers.add(pool.submit(() -> {
+                // Runs until this writer's end marker, even after a failure (its own or another
+                // writer's), so the parser is never stuck on a full queue
+                while (true) {
+                    Chunk<T> chunk = queue.take();
+                    if (chunk.records == null) {
+                        break;
+                    }
+                    if (failure.get() != null) {
+                        continue;
+                    }
+                    try {
+                        if (loadedChunks.contains(chunk.index)) {
+                            try (Connection conn = DBConnection.getConnection()) {
+                                loader.resolve(conn, chunk.records);
+                            }
+                            skipped.addAndGet(chunk.records.size());
+                        } else {
+                            retry.executeWithRetry(conn -> {
+                                loader.insert(conn, chunk.records);
+                                bulkRepository.recordChunk(conn, jobId, entity, chunk.index, chunk.records.size());
+                                return null;
+                            });
+                            rows.addAndGet(chunk.records.size());
+                        }
+                    } catch (SQLException | RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+                return null;
+            }));
+        }
+
+        // Parse stage, on this thread
+        try (RecordReader<T> reader = format.openReader(dir, codec)) {
+            long nextReport = start + REPORT_INTERVAL_NANOS;
+            int index = 0;
+            List<T> records = new ArrayList<>(chunkSize);
+            for (T record = reader.read(); record != null && failure.get() == null; record = reader.read()) {
+                records.add(record);
+                if (records.size() == chunkSize) {
+                    put(queue, new Chunk<>(index++, records));
+                    records = new ArrayList<>(chunkSize);
+                }
+                if (System.nanoTime() > nextReport) {
+                    reportProgress(entity, rows.get(), skipped.get(), start);
+                    nextReport += REPORT_INTERVAL_NANOS;
+                }
+            }
+            if (!records.isEmpty()) {
+                put(queue, new Chunk<>(index, records));
+            }
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+        } finally {
+            for (int i = 0; i < writers; i++) {
+                put(queue, new Chunk<T>(-1, null));
+            }
+            awaitAll(workers, failure);
+            pool.shutdown();
+        }
+
+        Exception error = failure.get();
+        if (error instanceof IOException) {
+            throw (IOException) error;
+        }
+        if (error instanceof SQLException) {
+            throw (SQLException) error;
+        }
+        if (error != null) {
+            throw (RuntimeException) error;
+        }
+        return new BulkReport(entity, rows.get(), skipped.get(), System.nanoTime() - start);
+    }
+
+    private static <T> void put(BlockingQueue<Chunk<T>> queue, Chunk<T> chunk) {
+        try {
+            queue.put(chunk);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading", e);
+        }
+    }
+
+    private static void awaitAll(List<Future<?>> workers, AtomicReference<Exception> failure) {
+        for (Future<?> worker : workers) {
+            try {
+                worker.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            } catch (ExecutionException e) {
+                failure.compareAndSet(null, new IllegalStateException(e.getCause()));
+            }
+        }
+    }
+
+    private static void reportProgress(String entity, long rows, long skipped, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.printf("%s: %,d rows loaded, %,d skipped (%,.0f rows/s)%n", entity, rows, skipped, rows / seconds);
+    }
+
+    private interface ChunkLoader<T> {
+        // Loads the chunk inside the caller's transaction
+        void insert(Connection conn, List<T> records) throws SQLException;
+
+        // Restores the id mapping for a chunk that an earlier run already loaded
+        void resolve(Connection conn, List<T> records) throws SQLException;
+    }
+
+    private static final class Chunk<T> {
+        final int index;
+        // null marks the end of the stage
+        final List<T> records;
+
+        Chunk(int index, List<T> records) {
+            this.index = index;
+            this.records = records == null ? null : Collections.unmodifiableList(records);
+        }
+    }
+}
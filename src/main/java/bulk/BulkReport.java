@@ -0,0 +1,44 @@
+package bulk;
+
+// Outcome of loading or exporting one kind of record
+public class BulkReport {
+    private final String entity;
+    private final long rows;
+    private final long skippedRows;
+    private final long elapsedNanos;
+
+    public BulkReport(String entity, long rows, long skippedRows, long elapsedNanos) {
+        this.entity = entity;
+        this.rows = rows;
+        this.skippedRows = skippedRows;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public double rowsPerSecond() {
+        return elapsedNanos == 0 ? 0 : rows * 1e9 / elapsedNanos;
+    }
+
+    @Override
+    public String toString() {
+        String skipped = skippedRows > 0 ? String.format(", %,d already loaded", skippedRows) : "";
+        return String.format("%s: %,d rows in %.1f s (%,.0f rows/s)%s",
+                entity, rows, elapsedNanos / 1e9, rowsPerSecond(), skipped);
+    }
+
+    // Getters
+    public String getEntity() {
+        return entity;
+    }
+
+    public long getRows() {
+        return rows;
+    }
+
+    public long getSkippedRows() {
+        return skippedRows;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
@@ -0,0 +1,130 @@
+package bulk;
+
+import model.Account;
+import model.Money;
+import model.Transaction;
+import model.User;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+// How one kind of record is laid out in the bulk files: as CSV fields and as binary.
+// Ids in the files are the ids of the exporting database; the importer maps them to new ones.
+public abstract class RecordCodec<T> {
+
+    public static final RecordCodec<User> USERS = new RecordCodec<User>("users",
+            "userId", "username", "password", "role") {
+        @Override
+        String[] toFields(User user) {
+            return new String[] { String.valueOf(user.getUserId()), user.getUsername(), user.getPassword(), user.getRole() };
+        }
+
+        @Override
+        User fromFields(String[] fields) {
+            return new User(Integer.parseInt(fields[0]), fields[1], fields[2], fields[3]);
+        }
+
+        @Override
+        void write(DataOutputStream out, User user) throws IOException {
+            out.writeInt(user.getUserId());
+            out.writeUTF(user.getUsername());
+            out.writeUTF(user.getPassword());
+            out.writeUTF(user.getRole());
+        }
+
+        @Override
+        User read(DataInputStream in) throws IOException {
+            return new User(in.readInt(), in.readUTF(), in.readUTF(), in.readUTF());
+        }
+    };
+
+    public static final RecordCodec<Account> ACCOUNTS = new RecordCodec<Account>("accounts",
+            "accountId", "userId", "balance") {
+        @Override
+        String[] toFields(Account account) {
+            return new String[] { String.valueOf(account.getAccountId()), String.valueOf(account.getUserId()),
+                    Money.format(account.getBalance()) };
+        }
+
+        @Override
+        Account fromFields(String[] fields) {
+            return new Account(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Money.parse(fields[2]));
+        }
+
+        @Override
+        void write(DataOutputStream out, Account account) throws IOException {
+            out.writeInt(account.getAccountId());
+            out.writeInt(account.getUserId());
+            out.writeLong(account.getBalance());
+        }
+
+        @Override
+        Account read(DataInputStream in) throws IOException {
+            return new Account(in.readInt(), in.readInt(), in.readLong());
+        }
+    };
+
+    public static final RecordCodec<Transaction> TRANSACTIONS = new RecordCodec<Transaction>("transactions",
+            "transactionId", "fromAccountId", "toAccountId", "amount", "dateTime", "type") {
+        @Override
+        String[] toFields(Transaction transaction) {
+            return new String[] { String.valueOf(transaction.getTransactionId()),
+                    String.valueOf(transaction.getFromAccountId()), String.valueOf(transaction.getToAccountId()),
+                    Money.format(transaction.getAmount()), transaction.getDateTime().toString(), transaction.getType() };
+        }
+
+        @Override
+        Transaction fromFields(String[] fields) {
+            return new Transaction(Integer.parseInt(fields[0]), Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                    Money.parse(fields[3]), LocalDateTime.parse(fields[4]), fields[5]);
+        }
+
+        @Override
+        void write(DataOutputStream out, Transaction transaction) throws IOException {
+            out.writeInt(transaction.getTransactionId());
+            out.writeInt(transaction.getFromAccountId());
+            out.writeInt(transaction.getToAccountId());
+            out.writeLong(transaction.getAmount());
+            out.writeLong(transaction.getDateTime().toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(transaction.getDateTime().getNano());
+            out.writeUTF(transaction.getType());
+        }
+
+        @Override
+        Transaction read(DataInputStream in) throws IOException {
+            int id = in.readInt();
+            int from = in.readInt();
+            int to = in.readInt();
+            long amount = in.readLong();
+            LocalDateTime dateTime = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+            return new Transaction(id, from, to, amount, dateTime, in.readUTF());
+        }
+    };
+
+    private final String name;
+    private final String[] header;
+
+    RecordCodec(String name, String... header) {
+        this.name = name;
+        this.header = header;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    String[] getHeader() {
+        return header;
+    }
+
+    abstract String[] toFields(T record);
+
+    abstract T fromFields(String[] fields);
+
+    abstract void write(DataOutputStream out, T record) throws IOException;
+
+    abstract T read(DataInputStream in) throws IOException;
+}
@@ -0,0 +1,10 @@
+package bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface RecordReader<T> extends Closeable {
+
+    // The next record, or null at the end of the file
+    T read() throws IOException;
+}
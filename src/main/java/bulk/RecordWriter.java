@@ -0,0 +1,9 @@
+package bulk;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+public interface RecordWriter<T> extends Closeable {
+
+    void write(T record) throws IOException;
+}
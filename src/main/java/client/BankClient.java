@@ -0,0 +1,209 @@
+package client;
+
+import model.Account;
+import model.Money;
+import model.Page;
+import model.Transaction;
+import model.TransactionCursor;
+import util.Json;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Client for the HTTP API served by server.BankServer. One instance holds one session;
+ * errors reported by the server surface as IOException with the server's message.
+ */
+public class BankClient {
+    // Tries per money movement; every try carries the same Idempotency-Key, so at most one applies
+    private static final int MOVEMENT_ATTEMPTS = 3;
+
+    private final String baseUrl;
+    private String token;
+    private int userId;
+    private String role;
+
+    public BankClient(String baseUrl) {
+        this.baseUrl = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+    }
+
+    public boolean login(String username, String password) throws IOException {
+        Response response = call("POST", "/api/login", form("username", username, "password", password));
+        if (response.status == 401) {
+            return false;
+        }
+        Map<String, Object> body = response.body();
+        token = (String) body.get("token");
+        userId = ((Number) body.get("userId")).intValue();
+        role = (String) body.get("role");
+        return true;
+    }
+
+    public void logout() throws IOException {
+        if (token != null) {
+            call("POST", "/api/logout", "").body();
+            token = null;
+        }
+    }
+
+    public Account getAccount() throws IOException {
+        Map<String, Object> body = call("GET", "/api/balance", null).body();
+        return new Account(((Number) body.get("accountId")).intValue(), userId, Money.parse((String) body.get("balance")));
+    }
+
+    public boolean deposit(long amount) throws IOException {
+        return applied(move("/api/deposit", form("amount", Money.format(amount))));
+    }
+
+    public boolean withdraw(long amount) throws IOException {
+        return applied(move("/api/withdraw", form("amount", Money.format(amount))));
+    }
+
+    public boolean transfer(int toUserId, long amount) throws IOException {
+        return applied(move("/api/transfer",
+                form("toUserId", String.valueOf(toUserId), "amount", Money.format(amount))));
+    }
+
+    @SuppressWarnings("unchecked")
+    public Page<Transaction> getTransactionHistory(TransactionCursor cursor, int pageSize) throws IOException {
+        String query = form("size", String.valueOf(pageSize), "cursor", cursor == null ? "" : cursor.toToken());
+        Map<String, Object> body = call("GET", "/api/history?" + query, null).body();
+
+        List<Transaction> transactions = new ArrayList<>();
+        for (Object item : (List<Object>) body.get("transactions")) {
+            Map<String, Object> row = (Map<String, Object>) item;
+            transactions.add(new Transaction(
+                    ((Number) row.get("transactionId")).intValue(),
+                    ((Number) row.get("fromAccountId")).intValue(),
+                    ((Number) row.get("toAccountId")).intValue(),
+                    Money.parse((String) row.get("amount")),
+                    LocalDateTime.parse((String) row.get("dateTime")),
+                    (String) row.get("type")));
+        }
+        String next = (String) body.get("nextCursor");
+        return new Page<>(transactions, next == null ? null : TransactionCursor.fromToken(next));
+    }
+
+    public boolean isLoggedIn() {
+        return token != null;
+    }
+
+    public boolean isAdmin() {
+        return "ADMIN".equals(role);
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    private static boolean applied(Response response) throws IOException {
+        return Boolean.TRUE.equals(response.body().get("applied"));
+    }
+
+    // Sends a money movement under a new request key, retrying when the connection fails or
+    // times out: the server applies the key once and answers retries with the first result
+    private Response move(String path, String form) throws IOException {
+        String requestKey = UUID.randomUUID().toString();
+        for (int attempt = 1;; attempt++) {
+            try {
+                return call("POST", path, form, requestKey);
+            } catch (IOException e) {
+                if (attempt >= MOVEMENT_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private Response call(String method, String path, String form) throws IOException {
+        return call(method, path, form, null);
+    }
+
+    private Response call(String method, String path, String form, String requestKey) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL(baseUrl + path).openConnection();
+        try {
+            conn.setRequestMethod(method);
+            conn.setConnectTimeout(5000);
+            conn.setReadTimeout(30000);
+            if (token != null) {
+                conn.setRequestProperty("Authorization", "Bearer " + token);
+            }
+            if (requestKey != null) {
+                conn.setRequestProperty("Idempotency-Key", requestKey);
+            }
+            if (form != null && "POST".equals(method)) {
+                byte[] bytes = form.getBytes(StandardCharsets.UTF_8);
+                conn.setDoOutput(true);
+                conn.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+                conn.setFixedLengthStreamingMode(bytes.length);
+                try (OutputStream out = conn.getOutputStream()) {
+                    out.write(bytes);
+                }
+            }
+            int status = conn.getResponseCode();
+            InputStream in = status >= 400 ? conn.getErrorStream() : conn.getInputStream();
+            return new Response(status, in == null ? "{}" : read(in));
+        } finally {
+            conn.disconnect();
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try (InputStream stream = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = stream.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String form(String... pairs) throws UnsupportedEncodingException {
+        StringBuilder out = new StringBuilder();
+        for (int i = 0; i < pairs.length; i += 2) {
+            if (out.length() > 0) {
+                out.append('&');
+            }
+            out.append(URLEncoder.encode(pairs[i], "UTF-8")).append('=').append(URLEncoder.encode(pairs[i + 1], "UTF-8"));
+        }
+        return out.toString();
+    }
+
+    private static final class Response {
+        final int status;
+        final String text;
+
+        Response(int status, String text) {
+            this.status = status;
+            this.text = text;
+        }
+
+        // Parsed body of a successful response; an error status becomes an IOException
+        Map<String, Object> body() throws IOException {
+            Map<String, Object> json;
+            try {
+                json = Json.parseObject(text);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Malformed response from server (HTTP " + status + "): " + e.getMessage());
+            }
+            if (status >= 400) {
+                throw new IOException("Server error (HTTP " + status + "): " + json.get("error"));
+            }
+            return json;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ledger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Point-in-time copy of the ledger's in-memory state, so startup only replays the log
+ * written after it. The file ends with a CRC32 of everything before it and is replaced
+ * atomically (written to a temporary file, forced, then renamed), so a crash while
+ * writing leaves the previous snapshot in place.
+ *
+ * Also holds the locations of the keyed records (see LocalLedgerStore) still within the
+ * request retention period, so their keys survive the log before logEnd not being replayed.
+ * Version 1 files have none and are still read.
+ *
+ * History lists are captured as (array, size) pairs: LongList only appends, so the
+ * prefix stays valid while the file is written outside the ledger lock.
+ */
+final class LedgerSnapshot {
+    private static final int MAGIC = 0x424E4B53; // "BNKS"
+    private static final int VERSION = 2;
+
+    // Log position the snapshot covers; replay starts here
+    long logEnd;
+    int nextAccountId;
+    long nextSeq;
+    long lastEpochSecond;
+    int lastNano;
+
+    int[] accountIds;
+    int[] userIds;
+    long[] balances;
+
+    long[] allLocations;
+    int allSize;
+
+    int[] historyAccounts;
+    long[][] historyLocations;
+    int[] historySizes;
+
+    long[] requestLocations;
+    int requestSize;
+
+    void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 64 * 1024), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(logEnd);
+            out.writeInt(nextAccountId);
+            out.writeLong(nextSeq);
+            out.writeLong(lastEpochSecond);
+            out.writeInt(lastNano);
+
+            out.writeInt(accountIds.length);
+            for (int i = 0; i < accountIds.length; i++) {
+                out.writeInt(accountIds[i]);
+                out.writeInt(userIds[i]);
+                out.writeLong(balances[i]);
+            }
+            writeLocations(out, allLocations, allSize);
+            out.writeInt(historyAccounts.length);
+            for (int i = 0; i < historyAccounts.length; i++) {
+                out.writeInt(historyAccounts[i]);
+                writeLocations(out, historyLocations[i], historySizes[i]);
+            }
+            writeLocations(out, requestLocations, requestSize);
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // The snapshot in the file, or null if there is none or it is unreadable
+    static LedgerSnapshot read(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(file), 64 * 1024), new CRC32());
+        try (DataInputStream in = new DataInputStream(checked)) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            int version = in.readInt();
+            if (version < 1 || version > VERSION) {
+                return null;
+            }
+            LedgerSnapshot snapshot = new LedgerSnapshot();
+            snapshot.logEnd = in.readLong();
+            snapshot.nextAccountId = in.readInt();
+            snapshot.nextSeq = in.readLong();
+            snapshot.lastEpochSecond = in.readLong();
+            snapshot.lastNano = in.readInt();
+
+            int accounts = in.readInt();
+            snapshot.accountIds = new int[accounts];
+            snapshot.userIds = new int[accounts];
+            snapshot.balances = new long[accounts];
+            for (int i = 0; i < accounts; i++) {
+                snapshot.accountIds[i] = in.readInt();
+                snapshot.userIds[i] = in.readInt();
+                snapshot.balances[i] = in.readLong();
+            }
+            snapshot.allLocations = readLocations(in);
+            snapshot.allSize = snapshot.allLocations.length;
+
+            int histories = in.readInt();
+            snapshot.historyAccounts = new int[histories];
+            snapshot.historyLocations = new long[histories][];
+            snapshot.historySizes = new int[histories];
+            for (int i = 0; i < histories; i++) {
+                snapshot.historyAccounts[i] = in.readInt();
+                snapshot.historyLocations[i] = readLocations(in);
+                snapshot.historySizes[i] = snapshot.historyLocations[i].length;
+            }
+            snapshot.requestLocations = version >= 2 ? readLocations(in) : new long[0];
+            snapshot.requestSize = snapshot.requestLocations.length;
+            long actual = checked.getChecksum().getValue();
+            return in.readLong() == actual ? snapshot : null;
+        } catch (EOFException | NegativeArraySizeException e) {
+            // Truncated, or a garbage count; the checksum would have failed anyway
+            return null;
+        }
+    }
+
+    private static void writeLocations(DataOutputStream out, long[] locations, int size) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(locations[i]);
+        }
+    }
+
+    private static long[] readLocations(DataInputStream in) throws IOException {
+        long[] locations = new long[in.readInt()];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = in.readLong();
+        }
+        return locations;
+    }
+}
@@ -0,0 +1,918 @@
+package ledger;
+
+import model.Account;
+import model.IdempotencyRecord;
+import model.Money;
+import model.Page;
+import model.RollupPeriod;
+import model.StatementTotal;
+import model.Transaction;
+import model.TransactionCursor;
+import repository.LedgerStore;
+import repository.RequestKeyConflictException;
+import repository.StatementAggregator;
+import repository.UserRepository;
+import util.IntLongMap;
+import util.IntObjectMap;
+import util.LruCache;
+import util.ThreadPools;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Ledger kept in local files instead of MySQL. Every change is appended as a small
+ * checksummed record to a memory-mapped SegmentedLog; balances live in memory in a
+ * primitive int -> long map and the history is an index of record locations, so reads
+ * never touch anything but memory and the mapped log.
+ *
+ * Writers apply their change under a single lock, which is held only for the balance
+ * check and the copy into the mapped segment. Durability is handled outside the lock:
+ * with group commit, a writer waits until the flusher thread has forced the log past
+ * its record, and one force covers every record appended while the previous one ran.
+ * In async mode writers return at once and the log is forced every flush interval,
+ * so a machine crash can lose the last interval's writes (a process crash cannot; the
+ * mapped pages belong to the OS).
+ *
+ * On startup the newest snapshot is loaded and only the log after it is replayed. The
+ * log is never compacted: history reads point into it.
+ *
+ * Record payload (37 bytes): type, seq (the transactionId), account a, account b,
+ * amount in cents, and the time as epoch seconds and nanos. CREATE records carry the
+ * new accountId and its userId in a and b.
+ *
+ * A keyed movement's record is followed by its request: the operation's type, the key's
+ * length and the key's ASCII bytes. A keyed request that is refused is logged too, as a
+ * REFUSED record (seq 0) carrying the request, so the key and its outcome are written by
+ * the same append as the change they describe, and a refusal waits for the flush like
+ * any write. Recent keys are kept in a bounded cache for the retention period; replay
+ * rebuilds it, and snapshots keep the locations of the keyed records still within it.
+ */
+public class LocalLedgerStore implements LedgerStore, Closeable {
+    private static final byte CREATE = 1;
+    private static final byte DEPOSIT = 2;
+    private static final byte WITHDRAWAL = 3;
+    private static final byte TRANSFER = 4;
+    private static final byte REFUSED = 5;
+    private static final String[] TYPE_NAMES = { null, "CREATE", "DEPOSIT", "WITHDRAWAL", "TRANSFER", "REFUSED" };
+
+    private static final int RECORD_BYTES = 37;
+    // Operation type and key length, then the key
+    private static final int REQUEST_HEADER_BYTES = 2;
+    private static final String SNAPSHOT_FILE = "ledger.snapshot";
+
+    private final Path dir;
+    private final UserRepository users = new UserRepository();
+    private final SegmentedLog log;
+    private final boolean groupCommit;
+    private final long flushIntervalMillis;
+
+    // Everything below up to 'appended' is guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final IntLongMap balances = new IntLongMap();
+    private final IntLongMap owners = new IntLongMap(); // accountId -> userId
+    private final IntLongMap accountsByUser = new IntLongMap(); // userId -> accountId
+    private final IntObjectMap<LongList> histories = new IntObjectMap<>();
+    private final LruCache<String, IdempotencyRecord> requests;
+    private final int requestCacheSize;
+    private final long requestRetentionMillis;
+    private LongList keyedRecords = new LongList(); // locations, in log order
+    private LongList allTransactions = new LongList(1024);
+    private int nextAccountId = 1;
+    private long nextSeq = 1;
+    private LocalDateTime lastTime = LocalDateTime.MIN;
+    private final ByteBuffer record = ByteBuffer.allocate(
+            RECORD_BYTES + REQUEST_HEADER_BYTES + IdempotencyRecord.MAX_KEY_LENGTH);
+    private boolean closed;
+
+    // Number of records appended; only written under lock
+    private volatile long appended;
+    // Number of those known to be on disk; only written by the flusher under flushMonitor
+    private volatile long flushed;
+    private volatile RuntimeException flushFailure;
+    private final Object flushMonitor = new Object();
+    private long flushRequested;
+    private boolean stopping;
+    private final Thread flusher;
+
+    private final Object snapshotLock = new Object();
+    private final ScheduledExecutorService snapshotter;
+
+    public LocalLedgerStore(Path dir, int segmentBytes, boolean groupCommit, long flushIntervalMillis,
+            long snapshotIntervalMillis) throws IOException {
+        this(dir, segmentBytes, groupCommit, flushIntervalMillis, snapshotIntervalMillis, 100_000,
+                TimeUnit.HOURS.toMillis(24));
+    }
+
+    public LocalLedgerStore(Path dir, int segmentBytes, boolean groupCommit, long flushIntervalMillis,
+            long snapshotIntervalMillis, int requestCacheSize, long requestRetentionMillis) throws IOException {
+        this.dir = dir;
+        this.requests = new LruCache<>(requestCacheSize, requestRetentionMillis, TimeUnit.MILLISECONDS);
+        this.requestCacheSize = requestCacheSize;
+        this.requestRetentionMillis = requestRetentionMillis;
+        this.log = new SegmentedLog(dir, segmentBytes);
+        this.groupCommit = groupCommit;
+        this.flushIntervalMillis = Math.max(1, flushIntervalMillis);
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            try {
+                log.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+            throw e;
+        }
+
+        this.flusher = new Thread(this::runFlusher, "ledger-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+        if (snapshotIntervalMillis > 0) {
+            this.snapshotter = Executors.newSingleThreadScheduledExecutor(ThreadPools.daemonThreads("ledger-snapshot"));
+            snapshotter.scheduleWithFixedDelay(this::snapshotQuietly, snapshotIntervalMillis, snapshotIntervalMillis,
+                    TimeUnit.MILLISECONDS);
+        } else {
+            this.snapshotter = null;
+        }
+    }
+
+    @Override
+    public Account findAccountByUserId(int userId) throws SQLException {
+        lock.lock();
+        try {
+            int accountId = (int) accountsByUser.get(userId, -1);
+            return accountId < 0 ? null : new Account(accountId, userId, balances.get(accountId, 0));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Account findAccountById(int accountId) throws SQLException {
+        lock.lock();
+        try {
+            int userId = (int) owners.get(accountId, -1);
+            return userId < 0 ? null : new Account(accountId, userId, balances.get(accountId, 0));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public IntObjectMap<Account> findAccountsByUserIds(int[] userIds) {
+        IntObjectMap<Account> found = new IntObjectMap<>(userIds.length);
+        lock.lock();
+        try {
+            for (int userId : userIds) {
+                int accountId = (int) accountsByUser.get(userId, -1);
+                if (accountId >= 0) {
+                    found.put(userId, new Account(accountId, userId, balances.get(accountId, 0)));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return found;
+    }
+
+    @Override
+    public IntObjectMap<Account> findAccountsByIds(int[] accountIds) {
+        IntObjectMap<Account> found = new IntObjectMap<>(accountIds.length);
+        lock.lock();
+        try {
+            for (int accountId : accountIds) {
+                int userId = (int) owners.get(accountId, -1);
+                if (userId >= 0) {
+                    found.put(accountId, new Account(accountId, userId, balances.get(accountId, 0)));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return found;
+    }
+
+    // Users live in MySQL, so a user without an account is looked up there first; without the
+    // check, money sent to a mistyped userId would land in an account nobody can reach
+    @Override
+    public int provisionAccount(int userId) throws SQLException {
+        int accountId = existingAccount(userId);
+        if (accountId > 0) {
+            return accountId;
+        }
+        if (!users.exists(userId)) {
+            return 0;
+        }
+        long write;
+        lock.lock();
+        try {
+            long existing = accountsByUser.get(userId, -1);
+            if (existing >= 0) {
+                return (int) existing;
+            }
+            accountId = nextAccountId;
+            write = append(CREATE, accountId, userId, 0);
+        } finally {
+            lock.unlock();
+        }
+        awaitFlushed(write);
+        return accountId;
+    }
+
+    private int existingAccount(int userId) {
+        lock.lock();
+        try {
+            return (int) accountsByUser.get(userId, 0);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Every change is in the log and accounts start at zero, so the balance at a time is the sum
+    // of the history up to it, or the current balance minus the history after it; whichever is shorter
+    @Override
+    public long findBalanceAt(int accountId, LocalDateTime time) {
+        long balance;
+        History history;
+        lock.lock();
+        try {
+            balance = balances.get(accountId, 0);
+            history = historyOfLocked(accountId);
+        } finally {
+            lock.unlock();
+        }
+
+        int count = countAtOrBefore(history, time);
+        if (count < history.size - count) {
+            balance = 0;
+            for (int i = 0; i < count; i++) {
+                balance += effect(log.read(history.locations[i]), accountId);
+            }
+        } else {
+            for (int i = count; i < history.size; i++) {
+                balance -= effect(log.read(history.locations[i]), accountId);
+            }
+        }
+        return balance;
+    }
+
+    @Override
+    public boolean deposit(int accountId, long amount, String requestKey) throws SQLException {
+        if (!Money.isPositive(amount)) {
+            return false;
+        }
+        IdempotencyRecord request = request(accountId, requestKey, "DEPOSIT", accountId, amount);
+        boolean applied;
+        long write;
+        lock.lock();
+        try {
+            Boolean replayed = replay(request);
+            if (replayed != null) {
+                return replayed;
+            }
+            // Balances are never negative, so -1 means no such account
+            long balance = balances.get(accountId, -1);
+            applied = balance >= 0 && balance <= Long.MAX_VALUE - amount;
+            write = applied ? append(DEPOSIT, accountId, accountId, amount, request) : refuse(DEPOSIT, request);
+        } finally {
+            lock.unlock();
+        }
+        awaitFlushed(write);
+        return applied;
+    }
+
+    @Override
+    public boolean withdraw(int accountId, long amount, String requestKey) throws SQLException {
+        if (!Money.isPositive(amount)) {
+            return false;
+        }
+        IdempotencyRecord request = request(accountId, requestKey, "WITHDRAWAL", accountId, amount);
+        boolean applied;
+        long write;
+        lock.lock();
+        try {
+            Boolean replayed = replay(request);
+            if (replayed != null) {
+                return replayed;
+            }
+            applied = balances.get(accountId, -1) >= amount;
+            write = applied ? append(WITHDRAWAL, accountId, accountId, amount, request) : refuse(WITHDRAWAL, request);
+        } finally {
+            lock.unlock();
+        }
+        awaitFlushed(write);
+        return applied;
+    }
+
+    @Override
+    public boolean transfer(int fromAccountId, int toAccountId, long amount, String requestKey) throws SQLException {
+        if (fromAccountId == toAccountId || !Money.isPositive(amount)) {
+            return false;
+        }
+        IdempotencyRecord request = request(fromAccountId, requestKey, "TRANSFER", toAccountId, amount);
+        boolean applied;
+        long write;
+        lock.lock();
+        try {
+            Boolean replayed = replay(request);
+            if (replayed != null) {
+                return replayed;
+            }
+            long toBalance = balances.get(toAccountId, -1);
+            applied = balances.get(fromAccountId, -1) >= amount && toBalance >= 0
+                    && toBalance <= Long.MAX_VALUE - amount;
+            write = applied ? append(TRANSFER, fromAccountId, toAccountId, amount, request)
+                    : refuse(TRANSFER, request);
+        } finally {
+            lock.unlock();
+        }
+        awaitFlushed(write);
+        return applied;
+    }
+
+    private static IdempotencyRecord request(int accountId, String requestKey, String operation, int toAccountId,
+            long amount) {
+        return requestKey == null ? null
+                : IdempotencyRecord.request(accountId, requestKey, operation, toAccountId, amount);
+    }
+
+    // The outcome recorded for the request's key, or null if the key is new. Call under the lock.
+    private Boolean replay(IdempotencyRecord request) {
+        if (request == null) {
+            return null;
+        }
+        IdempotencyRecord recorded = requests.get(request.cacheKey());
+        if (recorded == null) {
+            return null;
+        }
+        if (!request.sameRequest(recorded)) {
+            throw new RequestKeyConflictException(recorded);
+        }
+        return recorded.isApplied();
+    }
+
+    // Logs a refused keyed request so a retry gets the same answer; unkeyed refusals write
+    // nothing. Call under the lock. Returns the record's number, or 0 if there is none.
+    private long refuse(byte operation, IdempotencyRecord request) throws SQLException {
+        if (request == null) {
+            return 0;
+        }
+        return append(REFUSED, operation, request.getAccountId(), request.getToAccountId(), request.getAmount(),
+                request.getRequestKey());
+    }
+
+    // Puts a keyed record's request and outcome in the cache, unless it is past the retention
+    // period. Called by apply, so replay rebuilds the cache as writers filled it.
+    private void remember(ByteBuffer payload, long location) {
+        LocalDateTime time = dateTimeOf(payload);
+        long age = Math.max(0, Duration.between(time, LocalDateTime.now()).toMillis());
+        if (age >= requestRetentionMillis) {
+            return;
+        }
+        byte[] key = new byte[payload.get(RECORD_BYTES + 1)];
+        for (int i = 0; i < key.length; i++) {
+            key[i] = payload.get(RECORD_BYTES + REQUEST_HEADER_BYTES + i);
+        }
+        IdempotencyRecord outcome = new IdempotencyRecord(payload.getInt(9), new String(key, StandardCharsets.US_ASCII),
+                TYPE_NAMES[payload.get(RECORD_BYTES)], payload.getInt(13), payload.getLong(17),
+                payload.get(0) != REFUSED, time);
+        requests.put(outcome.cacheKey(), outcome, age, TimeUnit.MILLISECONDS);
+        keyedRecords.add(location);
+    }
+
+    @Override
+    public List<Transaction> findTransactions(int accountId) {
+        try (Stream<Transaction> transactions = streamTransactions(accountId)) {
+            return transactions.collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public Page<Transaction> findTransactionPage(int accountId, TransactionCursor cursor, int pageSize) {
+        return page(historyOf(accountId), cursor, pageSize);
+    }
+
+    @Override
+    public Stream<Transaction> streamTransactions(int accountId) {
+        return stream(historyOf(accountId));
+    }
+
+    @Override
+    public List<Transaction> findAllTransactions() {
+        try (Stream<Transaction> transactions = streamAllTransactions()) {
+            return transactions.collect(Collectors.toList());
+        }
+    }
+
+    @Override
+    public Page<Transaction> findAllTransactionPage(TransactionCursor cursor, int pageSize) {
+        return page(allHistory(), cursor, pageSize);
+    }
+
+    @Override
+    public Stream<Transaction> streamAllTransactions() {
+        return stream(allHistory());
+    }
+
+    // No stored rollups here: the range is found by binary search and only the transactions in it
+    // are folded, so the cost is O(transactions in range) rather than O(buckets)
+    @Override
+    public List<StatementTotal> findStatementTotals(int accountId, RollupPeriod period, LocalDate from, LocalDate to) {
+        return aggregate(historyOf(accountId), period, from, to).totalsFor(accountId);
+    }
+
+    @Override
+    public List<StatementTotal> findBankTotals(RollupPeriod period, LocalDate from, LocalDate to) {
+        return aggregate(allHistory(), period, from, to).bankTotals();
+    }
+
+    // The length of each account's history list
+    @Override
+    public IntLongMap countTransactions(int[] accountIds) {
+        IntLongMap counts = new IntLongMap(accountIds.length);
+        lock.lock();
+        try {
+            for (int accountId : accountIds) {
+                LongList list = histories.get(accountId);
+                if (list != null && list.size() > 0) {
+                    counts.put(accountId, list.size());
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return counts;
+    }
+
+    // Copies the state under the lock, makes the log durable up to the copied position and
+    // writes the copy out. Writers are only blocked for the copy.
+    public void writeSnapshot() throws IOException {
+        synchronized (snapshotLock) {
+            LedgerSnapshot snapshot = capture();
+            log.force();
+            snapshot.write(dir.resolve(SNAPSHOT_FILE));
+        }
+    }
+
+    // Flushes outstanding writes, writes a final snapshot and unmaps the log
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+
+        if (snapshotter != null) {
+            snapshotter.shutdown();
+            try {
+                snapshotter.awaitTermination(1, TimeUnit.MINUTES);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (flushMonitor) {
+            stopping = true;
+            flushMonitor.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        try {
+            writeSnapshot();
+        } finally {
+            log.close();
+        }
+    }
+
+    private long append(byte type, int a, int b, long amount) throws SQLException {
+        return append(type, type, a, b, amount, null);
+    }
+
+    private long append(byte type, int a, int b, long amount, IdempotencyRecord request) throws SQLException {
+        return append(type, type, a, b, amount, request == null ? null : request.getRequestKey());
+    }
+
+    // Writes one record to the log, followed by the request if it has a key, and applies it.
+    // Call under the lock after checking the change is allowed. Returns the record's number,
+    // to pass to awaitFlushed.
+    private long append(byte type, byte operation, int a, int b, long amount, String requestKey)
+            throws SQLException {
+        if (closed) {
+            throw new SQLException("Ledger is closed.");
+        }
+        if (flushFailure != null) {
+            throw new SQLException("Ledger stopped accepting writes after a failed flush.", flushFailure);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (now.isBefore(lastTime)) {
+            // Keep times in log order even if the clock steps back, so id order is time order
+            now = lastTime;
+        }
+        record.clear();
+        record.put(type)
+                .putLong(type == CREATE || type == REFUSED ? 0 : nextSeq)
+                .putInt(a)
+                .putInt(b)
+                .putLong(amount)
+                .putLong(now.toEpochSecond(ZoneOffset.UTC))
+                .putInt(now.getNano());
+        if (requestKey != null) {
+            // Request keys are printable ASCII, at most 64 characters
+            record.put(operation).put((byte) requestKey.length()).put(requestKey.getBytes(StandardCharsets.US_ASCII));
+        }
+        record.flip();
+
+        long location;
+        try {
+            location = log.append(record);
+        } catch (IOException e) {
+            throw new SQLException("Could not write to the ledger.", e);
+        }
+        // The log consumed the buffer
+        record.rewind();
+        apply(record, location);
+        return ++appended;
+    }
+
+    // Applies a record that is already in the log; used by writers and by replay
+    private void apply(ByteBuffer payload, long location) {
+        byte type = payload.get(0);
+        int a = payload.getInt(9);
+        int b = payload.getInt(13);
+        long amount = payload.getLong(17);
+        if (payload.remaining() > RECORD_BYTES) {
+            remember(payload, location);
+        }
+        switch (type) {
+            case REFUSED:
+                return;
+            case CREATE:
+                owners.put(a, b);
+                accountsByUser.put(b, a);
+                balances.put(a, 0);
+                nextAccountId = Math.max(nextAccountId, a + 1);
+                return;
+            case DEPOSIT:
+                balances.addTo(a, amount);
+                break;
+            case WITHDRAWAL:
+                balances.addTo(a, -amount);
+                break;
+            default:
+                balances.addTo(a, -amount);
+                balances.addTo(b, amount);
+                break;
+        }
+        nextSeq = payload.getLong(1) + 1;
+        lastTime = dateTimeOf(payload);
+        allTransactions.add(location);
+        historyList(a).add(location);
+        if (b != a) {
+            historyList(b).add(location);
+        }
+    }
+
+    private LongList historyList(int accountId) {
+        LongList list = histories.get(accountId);
+        if (list == null) {
+            list = new LongList();
+            histories.put(accountId, list);
+        }
+        return list;
+    }
+
+    private void recover() throws IOException {
+        long start = 0;
+        LedgerSnapshot snapshot = LedgerSnapshot.read(dir.resolve(SNAPSHOT_FILE));
+        if (snapshot != null && SegmentedLog.segmentOf(snapshot.logEnd) < log.segmentCount()) {
+            install(snapshot);
+            start = snapshot.logEnd;
+        }
+        log.replay(start, (location, payload) -> {
+            if (!isValid(payload)) {
+                throw new IOException("Unknown ledger record at segment " + SegmentedLog.segmentOf(location)
+                        + ", offset " + SegmentedLog.offsetOf(location));
+            }
+            apply(payload, location);
+        });
+    }
+
+    // A known type, and either a bare record or one followed by a whole request
+    private static boolean isValid(ByteBuffer payload) {
+        byte type = payload.get(0);
+        if (payload.remaining() < RECORD_BYTES || type < CREATE || type > REFUSED) {
+            return false;
+        }
+        if (payload.remaining() == RECORD_BYTES) {
+            return type != REFUSED;
+        }
+        if (type == CREATE || payload.remaining() < RECORD_BYTES + REQUEST_HEADER_BYTES) {
+            return false;
+        }
+        byte operation = payload.get(RECORD_BYTES);
+        int keyLength = payload.get(RECORD_BYTES + 1);
+        return operation >= DEPOSIT && operation <= TRANSFER && (type == REFUSED || type == operation)
+                && keyLength > 0 && payload.remaining() == RECORD_BYTES + REQUEST_HEADER_BYTES + keyLength;
+    }
+
+    private void install(LedgerSnapshot snapshot) {
+        for (int i = 0; i < snapshot.accountIds.length; i++) {
+            owners.put(snapshot.accountIds[i], snapshot.userIds[i]);
+            accountsByUser.put(snapshot.userIds[i], snapshot.accountIds[i]);
+            balances.put(snapshot.accountIds[i], snapshot.balances[i]);
+        }
+        allTransactions = new LongList(snapshot.allLocations, snapshot.allSize);
+        for (int i = 0; i < snapshot.historyAccounts.length; i++) {
+            histories.put(snapshot.historyAccounts[i],
+                    new LongList(snapshot.historyLocations[i], snapshot.historySizes[i]));
+        }
+        nextAccountId = snapshot.nextAccountId;
+        nextSeq = snapshot.nextSeq;
+        lastTime = LocalDateTime.ofEpochSecond(snapshot.lastEpochSecond, snapshot.lastNano, ZoneOffset.UTC);
+        for (int i = 0; i < snapshot.requestSize; i++) {
+            long location = snapshot.requestLocations[i];
+            remember(log.read(location), location);
+        }
+    }
+
+    private LedgerSnapshot capture() {
+        LedgerSnapshot snapshot = new LedgerSnapshot();
+        lock.lock();
+        try {
+            snapshot.logEnd = log.end();
+            snapshot.nextAccountId = nextAccountId;
+            snapshot.nextSeq = nextSeq;
+            snapshot.lastEpochSecond = lastTime.toEpochSecond(ZoneOffset.UTC);
+            snapshot.lastNano = lastTime.getNano();
+
+            int accounts = owners.size();
+            snapshot.accountIds = new int[accounts];
+            snapshot.userIds = new int[accounts];
+            snapshot.balances = new long[accounts];
+            int[] next = new int[1];
+            owners.forEach((accountId, userId) -> {
+                snapshot.accountIds[next[0]] = accountId;
+                snapshot.userIds[next[0]] = (int) userId;
+                snapshot.balances[next[0]] = balances.get(accountId, 0);
+                next[0]++;
+            });
+
+            trimKeyedRecords();
+            snapshot.requestLocations = keyedRecords.array();
+            snapshot.requestSize = keyedRecords.size();
+
+            // Only the arrays and sizes are copied; the lists are append-only
+            snapshot.allLocations = allTransactions.array();
+            snapshot.allSize = allTransactions.size();
+            snapshot.historyAccounts = new int[histories.size()];
+            snapshot.historyLocations = new long[histories.size()][];
+            snapshot.historySizes = new int[histories.size()];
+            next[0] = 0;
+            histories.forEach((accountId, list) -> {
+                snapshot.historyAccounts[next[0]] = accountId;
+                snapshot.historyLocations[next[0]] = list.array();
+                snapshot.historySizes[next[0]] = list.size();
+                next[0]++;
+            });
+        } finally {
+            lock.unlock();
+        }
+        return snapshot;
+    }
+
+    // Drops the keyed records past the retention period or beyond what the cache holds. Log
+    // order is time order, so they are a prefix of the list. Call under the lock.
+    private void trimKeyedRecords() {
+        long[] locations = keyedRecords.array();
+        int size = keyedRecords.size();
+        LocalDateTime cutoff = LocalDateTime.now().minus(requestRetentionMillis, ChronoUnit.MILLIS);
+        int first = Math.max(0, size - requestCacheSize);
+        while (first < size && !dateTimeOf(log.read(locations[first])).isAfter(cutoff)) {
+            first++;
+        }
+        if (first > 0) {
+            keyedRecords = new LongList(Arrays.copyOfRange(locations, first, size), size - first);
+        }
+    }
+
+    private void snapshotQuietly() {
+        try {
+            writeSnapshot();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ledger snapshot failed: " + e.getMessage());
+        }
+    }
+
+    // Blocks until the record with the given number is on disk (group commit only)
+    private void awaitFlushed(long write) throws SQLException {
+        if (!groupCommit) {
+            return;
+        }
+        synchronized (flushMonitor) {
+            if (flushRequested < write) {
+                flushRequested = write;
+                flushMonitor.notifyAll();
+            }
+            while (flushed < write) {
+                if (flushFailure != null) {
+                    throw new SQLException("Could not flush the ledger to disk.", flushFailure);
+                }
+                try {
+                    flushMonitor.wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for the ledger to flush.", e);
+                }
+            }
+        }
+    }
+
+    // Forces the log whenever a writer asks for it, and at least every flush interval.
+    // Records appended while a force is running are picked up together by the next one.
+    private void runFlusher() {
+        while (true) {
+            boolean stop;
+            synchronized (flushMonitor) {
+                if (!stopping && flushRequested <= flushed) {
+                    try {
+                        flushMonitor.wait(flushIntervalMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                stop = stopping;
+            }
+
+            long target = appended;
+            if (target > flushed && flushFailure == null) {
+                RuntimeException failure = null;
+                try {
+                    log.force();
+                } catch (RuntimeException e) {
+                    failure = e;
+                }
+                synchronized (flushMonitor) {
+                    if (failure == null) {
+                        flushed = target;
+                    } else {
+                        flushFailure = failure;
+                    }
+                    flushMonitor.notifyAll();
+                }
+            }
+            if (stop) {
+                return;
+            }
+        }
+    }
+
+    private History historyOf(int accountId) {
+        lock.lock();
+        try {
+            return historyOfLocked(accountId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private History historyOfLocked(int accountId) {
+        LongList list = histories.get(accountId);
+        return list == null ? new History(new long[0], 0) : new History(list.array(), list.size());
+    }
+
+    private History allHistory() {
+        lock.lock();
+        try {
+            return new History(allTransactions.array(), allTransactions.size());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Stream<Transaction> stream(History history) {
+        long[] locations = history.locations;
+        int size = history.size;
+        return IntStream.range(0, size).mapToObj(i -> toTransaction(log.read(locations[size - 1 - i])));
+    }
+
+    // Locations are in log order, which is (dateTime, transactionId) order, so the cursor
+    // position is found by binary search and the page is read backwards from there
+    private Page<Transaction> page(History history, TransactionCursor cursor, int pageSize) {
+        int end = cursor == null ? history.size : countBefore(history, cursor);
+        int start = Math.max(0, end - pageSize);
+        List<Transaction> transactions = new ArrayList<>(end - start);
+        for (int i = end - 1; i >= start; i--) {
+            transactions.add(toTransaction(log.read(history.locations[i])));
+        }
+        TransactionCursor next = start > 0 && !transactions.isEmpty()
+                ? TransactionCursor.after(transactions.get(transactions.size() - 1))
+                : null;
+        return new Page<>(transactions, next);
+    }
+
+    // Number of entries that sort before the cursor
+    private int countBefore(History history, TransactionCursor cursor) {
+        int low = 0;
+        int high = history.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            ByteBuffer payload = log.read(history.locations[mid]);
+            int order = dateTimeOf(payload).compareTo(cursor.getDateTime());
+            if (order < 0 || (order == 0 && (int) payload.getLong(1) < cursor.getTransactionId())) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Number of entries dated at or before the time
+    private int countAtOrBefore(History history, LocalDateTime time) {
+        int low = 0;
+        int high = history.size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (dateTimeOf(log.read(history.locations[mid])).isAfter(time)) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+        return low;
+    }
+
+    private StatementAggregator aggregate(History history, RollupPeriod period, LocalDate from, LocalDate to) {
+        StatementAggregator aggregator = new StatementAggregator(period);
+        int end = countAtOrBefore(history, to.atStartOfDay().minusNanos(1));
+        for (int i = countAtOrBefore(history, from.atStartOfDay().minusNanos(1)); i < end; i++) {
+            aggregator.add(toTransaction(log.read(history.locations[i])));
+        }
+        return aggregator;
+    }
+
+    // Change the record made to the account's balance
+    private static long effect(ByteBuffer payload, int accountId) {
+        long amount = payload.getLong(17);
+        switch (payload.get(0)) {
+            case DEPOSIT:
+                return amount;
+            case WITHDRAWAL:
+                return -amount;
+            default:
+                return payload.getInt(9) == accountId ? -amount : amount;
+        }
+    }
+
+    private static Transaction toTransaction(ByteBuffer payload) {
+        return new Transaction(
+                (int) payload.getLong(1),
+                payload.getInt(9),
+                payload.getInt(13),
+                payload.getLong(17),
+                dateTimeOf(payload),
+                TYPE_NAMES[payload.get(0)]);
+    }
+
+    private static LocalDateTime dateTimeOf(ByteBuffer payload) {
+        return LocalDateTime.ofEpochSecond(payload.getLong(25), payload.getInt(33), ZoneOffset.UTC);
+    }
+
+    // Prefix of an append-only location list, captured under the lock
+    private static final class History {
+        final long[] locations;
+        final int size;
+
+        History(long[] locations, int size) {
+            this.locations = locations;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package ledger;
+
+import java.util.Arrays;
+
+// Growable array of longs. Elements are only ever appended, so a reader that captured
+// the backing array and size under the ledger lock can keep reading that prefix after
+// the lock is released, even while the list grows.
+final class LongList {
+    private long[] values;
+    private int size;
+
+    LongList() {
+        this(4);
+    }
+
+    LongList(int capacity) {
+        this.values = new long[Math.max(1, capacity)];
+    }
+
+    // Takes ownership of the array; elements past size are ignored
+    LongList(long[] values, int size) {
+        this.values = values.length == 0 ? new long[1] : values;
+        this.size = size;
+    }
+
+    void add(long value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size << 1);
+        }
+        values[size++] = value;
+    }
+
+    long get(int index) {
+        return values[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    long[] array() {
+        return values;
+    }
+}
@@ -0,0 +1,233 @@
+package ledger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log split into fixed-size, memory-mapped segment files
+ * (ledger-00000000.log, ledger-00000001.log, ...).
+ *
+ * Each record is [int length][int CRC32 of payload][payload]. Segments are created
+ * zero-filled, so a zero length marks the end of the written data. A record is located
+ * by (segment << 32 | offset of its header).
+ *
+ * append() is not thread-safe and must be called under the owner's lock. read() may be
+ * called from any thread for a location the caller obtained under that lock. force()
+ * may run on another thread concurrently with appends.
+ */
+final class SegmentedLog implements Closeable {
+    private static final int HEADER_BYTES = 8;
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final List<MappedByteBuffer> segments = new CopyOnWriteArrayList<>();
+    private final List<FileChannel> channels = new ArrayList<>();
+
+    // Write position; only touched under the owner's lock
+    private int currentSegment;
+    private int writeOffset;
+    // Segments before this one have been forced since they were last written
+    private volatile int firstUnforced;
+
+    SegmentedLog(Path dir, int segmentBytes) throws IOException {
+        this.dir = dir;
+        this.segmentBytes = segmentBytes;
+        Files.createDirectories(dir);
+
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "ledger-*.log")) {
+            for (Path file : stream) {
+                files.add(file);
+            }
+        }
+        Collections.sort(files);
+        for (int i = 0; i < files.size(); i++) {
+            if (!files.get(i).getFileName().toString().equals(segmentName(i))) {
+                throw new IOException("Ledger segment " + segmentName(i) + " is missing in " + dir);
+            }
+            map(i);
+        }
+        if (segments.isEmpty()) {
+            map(0);
+        }
+    }
+
+    static long location(int segment, int offset) {
+        return ((long) segment << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    interface Visitor {
+        void record(long location, ByteBuffer payload) throws IOException;
+    }
+
+    // Reads every record from the given location to the end and leaves the log positioned to
+    // append after the last good one. A torn or corrupt record in the last segment is treated as
+    // the end of the log (the crash happened while writing it) and cleared; anywhere else it is an error.
+    long replay(long from, Visitor visitor) throws IOException {
+        int segment = segmentOf(from);
+        int offset = offsetOf(from);
+        CRC32 crc = new CRC32();
+        while (true) {
+            ByteBuffer buffer = segments.get(segment).duplicate();
+            int capacity = buffer.capacity();
+            boolean lastSegment = segment == segments.size() - 1;
+            while (offset + HEADER_BYTES <= capacity) {
+                buffer.position(offset);
+                int length = buffer.getInt();
+                if (length == 0) {
+                    break;
+                }
+                int checksum = buffer.getInt();
+                boolean valid = length > 0 && offset + HEADER_BYTES + length <= capacity;
+                if (valid) {
+                    ByteBuffer payload = buffer.slice();
+                    payload.limit(length);
+                    crc.reset();
+                    crc.update(payload.duplicate());
+                    valid = (int) crc.getValue() == checksum;
+                    if (valid) {
+                        visitor.record(location(segment, offset), payload);
+                    }
+                }
+                if (!valid) {
+                    if (!lastSegment) {
+                        throw new IOException("Corrupt ledger record in " + segmentName(segment) + " at offset " + offset);
+                    }
+                    clearFrom(segment, offset);
+                    break;
+                }
+                offset += HEADER_BYTES + length;
+            }
+            if (lastSegment) {
+                currentSegment = segment;
+                writeOffset = offset;
+                firstUnforced = segment;
+                return location(segment, offset);
+            }
+            segment++;
+            offset = 0;
+        }
+    }
+
+    long append(ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+        if (HEADER_BYTES + length > segmentBytes) {
+            throw new IOException("Ledger record larger than a segment");
+        }
+        if (writeOffset + HEADER_BYTES + length > segments.get(currentSegment).capacity()) {
+            // A full segment is made durable before anything is written to the next one, so a
+            // crash can only lose the tail of the log, never a stretch in the middle
+            segments.get(currentSegment).force();
+            map(currentSegment + 1);
+            currentSegment++;
+            writeOffset = 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        ByteBuffer buffer = segments.get(currentSegment).duplicate();
+        buffer.position(writeOffset + 4);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        // Length last, so a record is never seen with a length but without its body
+        buffer.putInt(writeOffset, length);
+
+        long location = location(currentSegment, writeOffset);
+        writeOffset += HEADER_BYTES + length;
+        return location;
+    }
+
+    ByteBuffer read(long location) {
+        ByteBuffer buffer = segments.get(segmentOf(location)).duplicate();
+        int offset = offsetOf(location);
+        int length = buffer.getInt(offset);
+        buffer.position(offset + HEADER_BYTES);
+        ByteBuffer payload = buffer.slice();
+        payload.limit(length);
+        return payload;
+    }
+
+    int segmentCount() {
+        return segments.size();
+    }
+
+    // The write position, for snapshots; call under the owner's lock
+    long end() {
+        return location(currentSegment, writeOffset);
+    }
+
+    // Flushes everything appended so far to disk
+    void force() {
+        int last = segments.size() - 1;
+        for (int segment = firstUnforced; segment <= last; segment++) {
+            segments.get(segment).force();
+        }
+        firstUnforced = last;
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        IOException failure = null;
+        synchronized (channels) {
+            for (FileChannel channel : channels) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void map(int segment) throws IOException {
+        Path file = dir.resolve(segmentName(segment));
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        synchronized (channels) {
+            channels.add(channel);
+        }
+        // Mapping past the end grows the file; the new part reads as zeros. A segment written
+        // with a larger segment size keeps its own size.
+        long size = Math.max(channel.size(), segmentBytes);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException(file + " is larger than a mappable segment");
+        }
+        segments.add(channel.map(FileChannel.MapMode.READ_WRITE, 0, size));
+    }
+
+    private void clearFrom(int segment, int offset) {
+        ByteBuffer buffer = segments.get(segment).duplicate();
+        buffer.position(offset);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 0);
+        }
+    }
+
+    private static String segmentName(int segment) {
+        return String.format("ledger-%08d.log", segment);
+    }
+}
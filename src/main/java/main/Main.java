@@ -1,32 +1,89 @@
 package main;
 
-import model.Account;
+import metrics.Metrics;
+import model.BalanceSnapshot;
+import model.Dashboard;
+import model.DirectoryCursor;
+import model.DirectoryPage;
+import model.DirectoryQuery;
+import model.Money;
+import model.Page;
+import model.Session;
+import model.StatementTotal;
 import model.Transaction;
+import model.TransactionCursor;
 import model.User;
+import model.UserSort;
+import model.UserSummary;
+import repository.AccountRepository;
+import repository.UserRepository;
+import server.BankServer;
 import service.AccountService;
+import service.AdminDirectoryService;
+import service.AsyncAccountService;
+import service.AsyncExecutor;
 import service.AuthService;
+import service.BalanceSnapshotService;
+import service.LedgerStores;
+import service.ReportingService;
+import service.SessionRegistry;
+import service.SqlLedgerStore;
 import service.UserService;
 import util.ConsoleInput;
+import util.DBConnection;
+import util.Futures;
+import util.SchemaMigrator;
+import util.ThreadPools;
+import util.UncheckedSQLException;
 
+import java.io.IOException;
 import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 public class Main {
+    private static final int HISTORY_PAGE_SIZE = 20;
+    private static final int USERS_PAGE_SIZE = 20;
+    private static final int USERNAME_SUGGESTIONS = 5;
+    private static final int RECENT_TRANSACTIONS = 5;
+    private static final int DEFAULT_PORT = 8080;
+
     private static final AuthService authService = new AuthService();
     private static final AccountService accountService = new AccountService();
+    private static final AsyncAccountService asyncAccountService =
+            new AsyncAccountService(accountService, AsyncExecutor.shared());
     private static final UserService userService = new UserService();
+    private static final ReportingService reportingService = new ReportingService();
+    private static final AdminDirectoryService directoryService = new AdminDirectoryService();
 
+    // No arguments: local console. --server [port]: serve the HTTP API. --connect URL: console over the API.
     public static void main(String[] args) {
+        if (args.length > 0 && "--connect".equals(args[0])) {
+            runRemote(args.length > 1 ? args[1] : "http://localhost:" + DEFAULT_PORT);
+            return;
+        }
         try {
+            SchemaMigrator.migrate();
+            LedgerStores.warmUp();
+            UserRepository.loadIndex();
+            if (args.length > 0 && "--server".equals(args[0])) {
+                runServer(args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT);
+                return;
+            }
             while (true) {
-                if (!authService.isLoggedIn()) {
-                    showLoginMenu();
+                Session session = showLoginMenu();
+                if (session == null) {
+                    continue;
+                }
+                if (session.isAdmin()) {
+                    showAdminMenu(session);
                 } else {
-                    if (authService.isAdmin()) {
-                        showAdminMenu();
-                    } else {
-                        showUserMenu();
-                    }
+                    showUserMenu(session);
                 }
             }
         } catch (SQLException e) {
@@ -36,19 +93,46 @@ public class Main {
         }
     }
 
-    private static void showLoginMenu() throws SQLException {
+    private static void runServer(int port) {
+        try {
+            BankServer server = new BankServer(port);
+            server.start();
+            System.out.println("Bank API listening on port " + server.getPort()
+                    + (ThreadPools.virtualThreadsAvailable() ? " (virtual threads)" : ""));
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            Thread.currentThread().join();
+        } catch (IOException e) {
+            System.out.println("Could not start server: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void runRemote(String serverUrl) {
+        try {
+            new RemoteConsole(serverUrl).run();
+        } catch (IOException e) {
+            System.out.println("Connection error: " + e.getMessage());
+        } finally {
+            ConsoleInput.close();
+        }
+    }
+
+    private static Session showLoginMenu() throws SQLException {
         System.out.println("\n=== Bank Login ===");
         String username = ConsoleInput.readString("Username: ");
         String password = ConsoleInput.readString("Password: ");
 
-        if (authService.login(username, password)) {
+        Session session = authService.login(username, password);
+        if (session != null) {
             System.out.println("Login successful!");
         } else {
             System.out.println("Invalid credentials!");
         }
+        return session;
     }
 
-    private static void showUserMenu() throws SQLException {
+    private static void showUserMenu(Session session) throws SQLException {
         while (true) {
             System.out.println("\n=== User Menu ===");
             System.out.println("1. Check Balance");
@@ -56,29 +140,37 @@ public class Main {
             System.out.println("3. Withdraw");
             System.out.println("4. Transfer");
             System.out.println("5. Transaction History");
-            System.out.println("6. Logout");
+            System.out.println("6. Balance at Date");
+            System.out.println("7. Logout");
             System.out.println("0. Exit");
 
             int choice = ConsoleInput.readInt("Enter your choice: ");
+            if (choice != 0 && authService.getSession(session.getToken()) == null) {
+                System.out.println("Session expired, please log in again.");
+                return;
+            }
 
             switch (choice) {
                 case 1:
-                    checkBalance();
+                    checkBalance(session);
                     break;
                 case 2:
-                    deposit();
+                    deposit(session);
                     break;
                 case 3:
-                    withdraw();
+                    withdraw(session);
                     break;
                 case 4:
-                    transfer();
+                    transfer(session);
                     break;
                 case 5:
-                    showTransactionHistory();
+                    showTransactionHistory(session);
                     break;
                 case 6:
-                    authService.logout();
+                    showBalanceAt(session);
+                    break;
+                case 7:
+                    authService.logout(session.getToken());
                     return;
                 case 0:
                     System.exit(0);
@@ -88,7 +180,7 @@ public class Main {
         }
     }
 
-    private static void showAdminMenu() throws SQLException {
+    private static void showAdminMenu(Session session) throws SQLException {
         while (true) {
             System.out.println("\n=== Admin Menu ===");
             System.out.println("1. List All Users");
@@ -96,10 +188,16 @@ public class Main {
             System.out.println("3. Update User");
             System.out.println("4. Delete User");
             System.out.println("5. List All Transactions");
-            System.out.println("6. Logout");
+            System.out.println("6. System Statistics");
+            System.out.println("7. Transaction Report");
+            System.out.println("8. Logout");
             System.out.println("0. Exit");
 
             int choice = ConsoleInput.readInt("Enter your choice: ");
+            if (choice != 0 && authService.getSession(session.getToken()) == null) {
+                System.out.println("Session expired, please log in again.");
+                return;
+            }
 
             switch (choice) {
                 case 1:
@@ -118,7 +216,13 @@ public class Main {
                     listAllTransactions();
                     break;
                 case 6:
-                    authService.logout();
+                    showStatistics();
+                    break;
+                case 7:
+                    showTransactionReport();
+                    break;
+                case 8:
+                    authService.logout(session.getToken());
                     return;
                 case 0:
                     System.exit(0);
@@ -128,91 +232,143 @@ public class Main {
         }
     }
 
-    private static void checkBalance() throws SQLException {
-        int userId = authService.getCurrentUser().getUserId();
-        // Create account if it doesn't exist
-        accountService.createAccountIfNotExists(userId);
-
-        // Now get the account (should exist now)
-        Account account = accountService.getAccountByUserId(userId);
-        if (account != null) {
-            System.out.println("\n=== Account Balance ===");
-            System.out.println("Account ID: " + account.getAccountId());
-            System.out.println("Current balance: $" + String.format("%.2f", account.getBalance()));
+    private static void checkBalance(Session session) throws SQLException {
+        // The balance and the recent history are read at the same time
+        Dashboard dashboard = Futures.await(asyncAccountService.getDashboard(session.getUserId(),
+                RECENT_TRANSACTIONS, AsyncExecutor.defaultDeadline()));
+        System.out.println("\n=== Account Balance ===");
+        // Accounts are opened by the first deposit or incoming transfer
+        if (dashboard.getAccount() != null) {
+            System.out.println("Account ID: " + dashboard.getAccount().getAccountId());
         } else {
-            System.out.println("Account not found!");
+            System.out.println("No account yet.");
+        }
+        System.out.println("Current balance: $" + Money.format(dashboard.getBalance()));
+        if (!dashboard.getRecentTransactions().isEmpty()) {
+            System.out.println("Recent transactions:");
+            for (Transaction transaction : dashboard.getRecentTransactions()) {
+                System.out.println("  " + transaction.getDateTime() + " - " +
+                        transaction.getType() + " - Amount: $" + Money.format(transaction.getAmount()));
+            }
         }
     }
 
-    private static void deposit() throws SQLException {
-        int userId = authService.getCurrentUser().getUserId();
-        // Create account if it doesn't exist
-        accountService.createAccountIfNotExists(userId);
+    private static void showBalanceAt(Session session) throws SQLException {
+        String input = ConsoleInput.readString("Date and time (yyyy-MM-dd HH:mm): ");
+        LocalDateTime time;
+        try {
+            time = LocalDateTime.parse(input.trim().replace(' ', 'T'));
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date!");
+            return;
+        }
+        Long balance = accountService.getBalanceAt(session.getUserId(), time);
+        if (balance != null) {
+            System.out.println("Balance at " + time + ": $" + Money.format(balance));
+        } else {
+            System.out.println("Account not found!");
+        }
+    }
 
-        double amount = ConsoleInput.readDouble("Enter amount to deposit: ");
+    private static void deposit(Session session) throws SQLException {
+        int userId = session.getUserId();
+        long amount = ConsoleInput.readAmount("Enter amount to deposit: ");
         if (amount > 0) {
-            accountService.deposit(userId, amount);
-            System.out.println("Deposit successful!");
+            if (accountService.deposit(userId, amount)) {
+                System.out.println("Deposit successful!");
+            } else {
+                System.out.println("Deposit failed!");
+            }
         } else {
             System.out.println("Invalid amount!");
         }
     }
 
-    private static void withdraw() throws SQLException {
-        int userId = authService.getCurrentUser().getUserId();
-        // Create account if it doesn't exist
-        accountService.createAccountIfNotExists(userId);
-
-        double amount = ConsoleInput.readDouble("Enter amount to withdraw: ");
+    private static void withdraw(Session session) throws SQLException {
+        int userId = session.getUserId();
+        long amount = ConsoleInput.readAmount("Enter amount to withdraw: ");
         if (amount > 0) {
-            accountService.withdraw(userId, amount);
-            System.out.println("Withdrawal successful!");
+            if (accountService.withdraw(userId, amount)) {
+                System.out.println("Withdrawal successful!");
+            } else {
+                System.out.println("Insufficient funds!");
+            }
         } else {
             System.out.println("Invalid amount!");
         }
     }
 
-    private static void transfer() throws SQLException {
-        int fromUserId = authService.getCurrentUser().getUserId();
-        // Create account if it doesn't exist for current user
-        accountService.createAccountIfNotExists(fromUserId);
-
+    private static void transfer(Session session) throws SQLException {
+        int fromUserId = session.getUserId();
         int toUserId = ConsoleInput.readInt("Enter recipient user ID: ");
-        // Create account if it doesn't exist for recipient
-        accountService.createAccountIfNotExists(toUserId);
 
-        double amount = ConsoleInput.readDouble("Enter amount to transfer: ");
+        long amount = ConsoleInput.readAmount("Enter amount to transfer: ");
         if (amount > 0) {
-            accountService.transfer(fromUserId, toUserId, amount);
-            System.out.println("Transfer successful!");
+            if (accountService.transfer(fromUserId, toUserId, amount)) {
+                System.out.println("Transfer successful!");
+            } else {
+                System.out.println("Transfer failed: insufficient funds or unknown recipient!");
+            }
         } else {
             System.out.println("Invalid amount!");
         }
     }
 
-    private static void showTransactionHistory() throws SQLException {
-        int userId = authService.getCurrentUser().getUserId();
-        // Create account if it doesn't exist
-        accountService.createAccountIfNotExists(userId);
-
-        List<Transaction> transactions = accountService.getTransactionHistory(userId);
+    private static void showTransactionHistory(Session session) throws SQLException {
+        int userId = session.getUserId();
         System.out.println("\n=== Transaction History ===");
-        if (transactions.isEmpty()) {
-            System.out.println("No transactions found.");
-        } else {
-            for (Transaction transaction : transactions) {
+        TransactionCursor cursor = null;
+        boolean first = true;
+        while (true) {
+            Page<Transaction> page = accountService.getTransactionHistory(userId, cursor, HISTORY_PAGE_SIZE);
+            if (first && page.getItems().isEmpty()) {
+                System.out.println("No transactions found.");
+            }
+            first = false;
+            for (Transaction transaction : page.getItems()) {
                 System.out.println(transaction.getDateTime() + " - " +
-                        transaction.getType() + " - Amount: $" + String.format("%.2f", transaction.getAmount()));
+                        transaction.getType() + " - Amount: $" + Money.format(transaction.getAmount()));
+            }
+            if (!page.hasMore() || !"y".equalsIgnoreCase(ConsoleInput.readString("Show more? (y/n): ").trim())) {
+                return;
             }
+            cursor = page.getNextCursor();
         }
     }
 
     private static void listAllUsers() throws SQLException {
-        List<User> users = userService.getAllUsers();
+        String prefix = ConsoleInput.readString("Username starts with (empty for all): ").trim();
+        String role = ConsoleInput.readString("Role (USER/ADMIN, empty for all): ").trim().toUpperCase();
+        int sortChoice = ConsoleInput.readInt("Sort by (1. Username, 2. User ID, 3. Balance): ");
+        UserSort sort = sortChoice == 2 ? UserSort.USER_ID : sortChoice == 3 ? UserSort.BALANCE : UserSort.USERNAME;
+        DirectoryQuery query = new DirectoryQuery(prefix, role, sort);
+
         System.out.println("\n=== All Users ===");
-        for (User user : users) {
-            System.out.println("ID: " + user.getUserId() + ", Username: " + user.getUsername() +
-                    ", Role: " + user.getRole());
+        // One page at a time, so only a screenful of users is ever held in memory
+        DirectoryCursor cursor = null;
+        boolean first = true;
+        while (true) {
+            DirectoryPage page;
+            try {
+                page = directoryService.getPage(query, cursor, USERS_PAGE_SIZE);
+            } catch (IllegalArgumentException e) {
+                System.out.println(e.getMessage());
+                return;
+            }
+            if (first && page.getItems().isEmpty()) {
+                System.out.println("No users found.");
+            }
+            first = false;
+            for (UserSummary user : page.getItems()) {
+                System.out.println("ID: " + user.getUserId() + ", Username: " + user.getUsername() +
+                        ", Role: " + user.getRole() +
+                        (user.hasAccount() ? ", Balance: $" + Money.format(user.getBalance()) +
+                                ", Transactions: " + user.getTransactionCount() : ", No account"));
+            }
+            if (!page.hasMore() || !"y".equalsIgnoreCase(ConsoleInput.readString("Show more? (y/n): ").trim())) {
+                return;
+            }
+            cursor = page.getNextCursor();
         }
     }
 
@@ -225,7 +381,10 @@ public class Main {
     }
 
     private static void updateUser() throws SQLException {
-        int userId = ConsoleInput.readInt("Enter user ID to update: ");
+        int userId = readUserId("Enter user ID or username to update: ");
+        if (userId == 0) {
+            return;
+        }
         String username = ConsoleInput.readString("Enter new username: ");
         String password = ConsoleInput.readString("Enter new password: ");
         String role = ConsoleInput.readString("Enter new role (USER/ADMIN): ");
@@ -236,23 +395,105 @@ public class Main {
     }
 
     private static void deleteUser() throws SQLException {
-        int userId = ConsoleInput.readInt("Enter user ID to delete: ");
+        int userId = readUserId("Enter user ID or username to delete: ");
+        if (userId == 0) {
+            return;
+        }
         userService.deleteUser(userId);
         System.out.println("User deleted successfully!");
     }
 
+    // A user ID, or a username resolved from the in-memory index; 0 (after suggesting
+    // usernames that start with the input) if no user has that name
+    private static int readUserId(String prompt) throws SQLException {
+        String input = ConsoleInput.readString(prompt).trim();
+        if (!input.isEmpty() && input.chars().allMatch(Character::isDigit)) {
+            try {
+                return Integer.parseInt(input);
+            } catch (NumberFormatException e) {
+                // Too long for an id; try it as a username
+            }
+        }
+        int userId = userService.findUserId(input);
+        if (userId == 0) {
+            List<String> suggestions = userService.completeUsername(input, USERNAME_SUGGESTIONS);
+            System.out.println("No user named " + input
+                    + (suggestions.isEmpty() ? "." : ". Did you mean: " + String.join(", ", suggestions) + "?"));
+        }
+        return userId;
+    }
+
     private static void listAllTransactions() throws SQLException {
-        List<Transaction> transactions = accountService.getAllTransactions();
         System.out.println("\n=== All Transactions ===");
-        if (transactions.isEmpty()) {
-            System.out.println("No transactions found.");
-        } else {
-            for (Transaction transaction : transactions) {
+        // Rows are printed as they arrive so the full table is never held in memory
+        long count = 0;
+        try (Stream<Transaction> transactions = accountService.streamAllTransactions()) {
+            Iterator<Transaction> it = transactions.iterator();
+            while (it.hasNext()) {
+                Transaction transaction = it.next();
                 System.out.println(transaction.getDateTime() + " - " +
-                        transaction.getType() + " - Amount: $" + String.format("%.2f", transaction.getAmount()) +
+                        transaction.getType() + " - Amount: $" + Money.format(transaction.getAmount()) +
                         " - From: " + transaction.getFromAccountId() +
                         " - To: " + transaction.getToAccountId());
+                count++;
+            }
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        }
+        if (count == 0) {
+            System.out.println("No transactions found.");
+        }
+    }
+
+    // Totals per kind of transaction between two days, for one user or the whole bank, from the rollups
+    private static void showTransactionReport() throws SQLException {
+        LocalDate from;
+        LocalDate to;
+        try {
+            from = LocalDate.parse(ConsoleInput.readString("From (yyyy-MM-dd): ").trim());
+            to = LocalDate.parse(ConsoleInput.readString("To (yyyy-MM-dd): ").trim());
+        } catch (DateTimeParseException e) {
+            System.out.println("Invalid date!");
+            return;
+        }
+        String username = ConsoleInput.readString("Username (empty for the whole bank): ").trim();
+
+        Map<String, StatementTotal> totals;
+        if (username.isEmpty()) {
+            totals = reportingService.getBankStatement(from, to);
+        } else {
+            User user = userService.getUserByUsername(username);
+            if (user == null) {
+                System.out.println("User not found!");
+                return;
+            }
+            totals = reportingService.getStatement(user.getUserId(), from, to);
+        }
+
+        System.out.println("\n=== Transactions from " + from + " to " + to + " ===");
+        if (totals.isEmpty()) {
+            System.out.println("No transactions found.");
+        }
+        for (StatementTotal total : totals.values()) {
+            System.out.println(total);
+        }
+    }
+
+    private static void showStatistics() throws SQLException {
+        System.out.println("\n=== System Statistics ===");
+        System.out.println("Connection pool: " + DBConnection.getPoolStats());
+        System.out.println("Account cache: " + AccountRepository.getCacheStats());
+        System.out.println("Sessions: " + SessionRegistry.getInstance().getStats());
+        System.out.println("Login verification cache: " + AuthService.getVerificationCacheStats());
+        if (LedgerStores.get() instanceof SqlLedgerStore) {
+            BalanceSnapshot snapshot = new BalanceSnapshotService().getLatestSnapshot();
+            System.out.println("Latest balance snapshot: " + (snapshot == null ? "none" : snapshot));
+        }
+        if (Metrics.isEnabled()) {
+            System.out.println("Latencies:");
+            for (String line : Metrics.summary()) {
+                System.out.println("  " + line);
             }
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,150 @@
+package main;
+
+import client.BankClient;
+import model.Account;
+import model.Money;
+import model.Page;
+import model.Transaction;
+import model.TransactionCursor;
+import util.ConsoleInput;
+
+import java.io.IOException;
+
+// Customer menu that talks to a running BankServer instead of the database
+public class RemoteConsole {
+    private static final int HISTORY_PAGE_SIZE = 20;
+
+    private final BankClient client;
+
+    public RemoteConsole(String serverUrl) {
+        this.client = new BankClient(serverUrl);
+    }
+
+    public void run() throws IOException {
+        while (true) {
+            if (!client.isLoggedIn()) {
+                showLoginMenu();
+            } else if (client.isAdmin()) {
+                System.out.println("Admin functions are only available in the local console.");
+                client.logout();
+            } else {
+                showUserMenu();
+            }
+        }
+    }
+
+    private void showLoginMenu() throws IOException {
+        System.out.println("\n=== Bank Login ===");
+        String username = ConsoleInput.readString("Username: ");
+        String password = ConsoleInput.readString("Password: ");
+
+        if (client.login(username, password)) {
+            System.out.println("Login successful!");
+        } else {
+            System.out.println("Invalid credentials!");
+        }
+    }
+
+    private void showUserMenu() throws IOException {
+        while (true) {
+            System.out.println("\n=== User Menu ===");
+            System.out.println("1. Check Balance");
+            System.out.println("2. Deposit");
+            System.out.println("3. Withdraw");
+            System.out.println("4. Transfer");
+            System.out.println("5. Transaction History");
+            System.out.println("6. Logout");
+            System.out.println("0. Exit");
+
+            int choice = ConsoleInput.readInt("Enter your choice: ");
+
+            switch (choice) {
+                case 1:
+                    checkBalance();
+                    break;
+                case 2:
+                    deposit();
+                    break;
+                case 3:
+                    withdraw();
+                    break;
+                case 4:
+                    transfer();
+                    break;
+                case 5:
+                    showTransactionHistory();
+                    break;
+                case 6:
+                    client.logout();
+                    return;
+                case 0:
+                    client.logout();
+                    System.exit(0);
+                    break;
+                default:
+                    System.out.println("Invalid choice!");
+            }
+        }
+    }
+
+    private void checkBalance() throws IOException {
+        Account account = client.getAccount();
+        System.out.println("\n=== Account Balance ===");
+        if (account.getAccountId() != 0) {
+            System.out.println("Account ID: " + account.getAccountId());
+        } else {
+            System.out.println("No account yet.");
+        }
+        System.out.println("Current balance: $" + Money.format(account.getBalance()));
+    }
+
+    private void deposit() throws IOException {
+        long amount = ConsoleInput.readAmount("Enter amount to deposit: ");
+        if (amount > 0) {
+            System.out.println(client.deposit(amount) ? "Deposit successful!" : "Deposit failed!");
+        } else {
+            System.out.println("Invalid amount!");
+        }
+    }
+
+    private void withdraw() throws IOException {
+        long amount = ConsoleInput.readAmount("Enter amount to withdraw: ");
+        if (amount > 0) {
+            System.out.println(client.withdraw(amount) ? "Withdrawal successful!" : "Insufficient funds!");
+        } else {
+            System.out.println("Invalid amount!");
+        }
+    }
+
+    private void transfer() throws IOException {
+        int toUserId = ConsoleInput.readInt("Enter recipient user ID: ");
+        long amount = ConsoleInput.readAmount("Enter amount to transfer: ");
+        if (amount > 0) {
+            System.out.println(client.transfer(toUserId, amount)
+                    ? "Transfer successful!" : "Transfer failed: insufficient funds or unknown recipient!");
+        } else {
+            System.out.println("Invalid amount!");
+        }
+    }
+
+    private void showTransactionHistory() throws IOException {
+        System.out.println("\n=== Transaction History ===");
+        TransactionCursor cursor = null;
+        boolean first = true;
+        while (true) {
+            Page<Transaction> page = client.getTransactionHistory(cursor, HISTORY_PAGE_SIZE);
+            if (first && page.getItems().isEmpty()) {
+                System.out.println("No transactions found.");
+            }
+            first = false;
+            for (Transaction transaction : page.getItems()) {
+                System.out.println(transaction.getDateTime() + " - " +
+                        transaction.getType() + " - Amount: $" + Money.format(transaction.getAmount()));
+            }
+            if (!page.hasMore() || !"y".equalsIgnoreCase(ConsoleInput.readString("Show more? (y/n): ").trim())) {
+                return;
+            }
+            cursor = page.getNextCursor();
+        }
+    }
+}
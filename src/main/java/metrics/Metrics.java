@@ -0,0 +1,144 @@
+package metrics;
+
+import util.DBConnection;
+import util.PoolStats;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Registry of the operation and SQL timers. Timers are created once, usually into static
+ * finals next to the code they time, so recording never looks anything up.
+ *
+ * Every histogram is registered as an MBean (bank:type=Operation,name=... and
+ * bank:type=Sql,name=...,phase=acquire|execute|fetch), and prometheus() renders everything
+ * in the Prometheus text format for the server's /metrics endpoint.
+ *
+ * Turned off with -Dbank.metrics.enabled=false, which makes every timer call a no-op.
+ */
+public class Metrics {
+    static final boolean ENABLED = Boolean.parseBoolean(System.getProperty("bank.metrics.enabled", "true"));
+
+    private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+
+    private static final Map<String, OperationTimer> operations = new ConcurrentSkipListMap<>();
+    private static final Map<String, SqlTimer> statements = new ConcurrentSkipListMap<>();
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    public static OperationTimer operation(String name) {
+        return operations.computeIfAbsent(name, key -> {
+            OperationTimer timer = new OperationTimer(key);
+            register("bank:type=Operation,name=" + key, timer.getLatency());
+            return timer;
+        });
+    }
+
+    public static SqlTimer sql(String name) {
+        return statements.computeIfAbsent(name, key -> {
+            SqlTimer timer = new SqlTimer(key);
+            register("bank:type=Sql,name=" + key + ",phase=acquire", timer.getAcquire());
+            register("bank:type=Sql,name=" + key + ",phase=execute", timer.getExecute());
+            register("bank:type=Sql,name=" + key + ",phase=fetch", timer.getFetch());
+            return timer;
+        });
+    }
+
+    private static void register(String name, LatencyHistogramMBean histogram) {
+        if (!ENABLED) {
+            return;
+        }
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(name);
+            if (!server.isRegistered(objectName)) {
+                server.registerMBean(histogram, objectName);
+            }
+        } catch (JMException e) {
+            System.err.println("Could not register MBean " + name + ": " + e.getMessage());
+        }
+    }
+
+    // One line per timer that has recorded something, for the console
+    public static List<String> summary() {
+        List<String> lines = new ArrayList<>();
+        for (OperationTimer timer : operations.values()) {
+            if (timer.getLatency().getCount() > 0) {
+                lines.add(timer.toString());
+            }
+        }
+        for (SqlTimer timer : statements.values()) {
+            if (timer.getExecute().getCount() > 0) {
+                lines.add(timer.toString());
+            }
+        }
+        return lines;
+    }
+
+    // Every timer as Prometheus summaries, in seconds, plus the connection pool gauges
+    public static String prometheus() {
+        StringBuilder out = new StringBuilder(4096);
+        out.append("# TYPE bank_operation_seconds summary\n");
+        for (OperationTimer timer : operations.values()) {
+            appendSummary(out, "bank_operation_seconds", "operation=\"" + timer.getName() + "\"", timer.getLatency());
+        }
+        out.append("# TYPE bank_operation_errors_total counter\n");
+        for (OperationTimer timer : operations.values()) {
+            out.append("bank_operation_errors_total{operation=\"").append(timer.getName()).append("\"} ")
+                    .append(timer.getErrors()).append('\n');
+        }
+        out.append("# TYPE bank_sql_seconds summary\n");
+        for (SqlTimer timer : statements.values()) {
+            String labels = "statement=\"" + timer.getName() + "\",phase=";
+            appendSummary(out, "bank_sql_seconds", labels + "\"acquire\"", timer.getAcquire());
+            appendSummary(out, "bank_sql_seconds", labels + "\"execute\"", timer.getExecute());
+            appendSummary(out, "bank_sql_seconds", labels + "\"fetch\"", timer.getFetch());
+        }
+        appendPool(out);
+        return out.toString();
+    }
+
+    private static void appendSummary(StringBuilder out, String metric, String labels, LatencyHistogram histogram) {
+        for (double quantile : QUANTILES) {
+            out.append(metric).append('{').append(labels).append(",quantile=\"").append(quantile).append("\"} ")
+                    .append(seconds(histogram.percentileNanos(quantile * 100))).append('\n');
+        }
+        out.append(metric).append("_sum{").append(labels).append("} ")
+                .append(seconds(histogram.getTotalNanos())).append('\n');
+        out.append(metric).append("_count{").append(labels).append("} ").append(histogram.getCount()).append('\n');
+    }
+
+    private static void appendPool(StringBuilder out) {
+        PoolStats pool;
+        try {
+            pool = DBConnection.getPoolStats();
+        } catch (SQLException e) {
+            return;
+        }
+        appendGauge(out, "bank_pool_active_connections", pool.getActive());
+        appendGauge(out, "bank_pool_idle_connections", pool.getIdle());
+        appendGauge(out, "bank_pool_waiting_threads", pool.getWaiting());
+        out.append("# TYPE bank_pool_borrows_total counter\nbank_pool_borrows_total ")
+                .append(pool.getBorrowCount()).append('\n');
+        out.append("# TYPE bank_pool_timeouts_total counter\nbank_pool_timeouts_total ")
+                .append(pool.getTimeoutCount()).append('\n');
+    }
+
+    private static void appendGauge(StringBuilder out, String metric, long value) {
+        out.append("# TYPE ").append(metric).append(" gauge\n").append(metric).append(' ').append(value).append('\n');
+    }
+
+    private static String seconds(long nanos) {
+        return String.format(Locale.ROOT, "%.9f", nanos / 1e9);
+    }
+}
@@ -0,0 +1,56 @@
+package metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency and error count of one service operation. Use as
+ *
+ *   long start = TIMER.start();
+ *   try { ... } catch (SQLException | RuntimeException e) { TIMER.error(); throw e; }
+ *   finally { TIMER.stop(start); }
+ *
+ * Both calls do nothing when metrics are disabled.
+ */
+public class OperationTimer {
+    private final String name;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LongAdder errors = new LongAdder();
+
+    OperationTimer(String name) {
+        this.name = name;
+    }
+
+    public long start() {
+        return Metrics.ENABLED ? System.nanoTime() : 0;
+    }
+
+    public void stop(long start) {
+        if (Metrics.ENABLED) {
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    public void error() {
+        if (Metrics.ENABLED) {
+            errors.increment();
+        }
+    }
+
+    // Getters
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public String toString() {
+        return name + ": " + latency + ", errors=" + getErrors();
+    }
+}
@@ -0,0 +1,89 @@
+package metrics;
+
+import util.DBConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+
+/**
+ * Time spent on one SQL statement, split into getting a pooled connection, executing the
+ * statement (up to the first row for queries) and reading the rows. Each step takes the
+ * previous step's end time and returns its own, so a statement costs one System.nanoTime()
+ * per step and allocates nothing:
+ *
+ *   try (Connection conn = SQL.acquire(); PreparedStatement stmt = ...) {
+ *       long start = SQL.start();
+ *       try (ResultSet rs = stmt.executeQuery()) {
+ *           long executed = SQL.executed(start);
+ *           ... read rows ...
+ *           SQL.fetched(executed);
+ *       }
+ *   }
+ *
+ * Statements run on the caller's connection skip acquire.
+ */
+public class SqlTimer {
+    private final String name;
+    private final LatencyHistogram acquire = new LatencyHistogram();
+    private final LatencyHistogram execute = new LatencyHistogram();
+    private final LatencyHistogram fetch = new LatencyHistogram();
+
+    SqlTimer(String name) {
+        this.name = name;
+    }
+
+    // DBConnection.getConnection(), timed
+    public Connection acquire() throws SQLException {
+        if (!Metrics.ENABLED) {
+            return DBConnection.getConnection();
+        }
+        long start = System.nanoTime();
+        Connection conn = DBConnection.getConnection();
+        acquire.record(System.nanoTime() - start);
+        return conn;
+    }
+
+    public long start() {
+        return Metrics.ENABLED ? System.nanoTime() : 0;
+    }
+
+    public long executed(long start) {
+        return lap(execute, start);
+    }
+
+    public long fetched(long start) {
+        return lap(fetch, start);
+    }
+
+    private static long lap(LatencyHistogram histogram, long start) {
+        if (!Metrics.ENABLED) {
+            return 0;
+        }
+        long now = System.nanoTime();
+        histogram.record(now - start);
+        return now;
+    }
+
+    // Getters
+    public String getName() {
+        return name;
+    }
+
+    public LatencyHistogram getAcquire() {
+        return acquire;
+    }
+
+    public LatencyHistogram getExecute() {
+        return execute;
+    }
+
+    public LatencyHistogram getFetch() {
+        return fetch;
+    }
+
+    @Override
+    public String toString() {
+        return name + ": execute " + execute + (acquire.getCount() == 0 ? "" : "; acquire " + acquire)
+                + (fetch.getCount() == 0 ? "" : "; fetch " + fetch);
+    }
+}
@@ -3,9 +3,9 @@ package model;
 public class Account {
     private int accountId;
     private int userId;
-    private double balance;
+    private long balance; // in cents, see Money
 
-    public Account(int accountId, int userId, double balance) {
+    public Account(int accountId, int userId, long balance) {
         this.accountId = accountId;
         this.userId = userId;
         this.balance = balance;
@@ -28,11 +28,11 @@ public class Account {
         this.userId = userId;
     }
 
-    public double getBalance() {
+    public long getBalance() {
         return balance;
     }
 
-    public void setBalance(double balance) {
+    public void setBalance(long balance) {
         this.balance = balance;
     }
 }
\ No newline at end of file
@@ -0,0 +1,45 @@
+package model;
+
+// An account whose stored balance differs from the net of its transactions. Amounts in cents.
+public class BalanceDiscrepancy {
+    private final int accountId;
+    private final int userId;
+    private final long balance;
+    private final long expected;
+
+    public BalanceDiscrepancy(int accountId, int userId, long balance, long expected) {
+        this.accountId = accountId;
+        this.userId = userId;
+        this.balance = balance;
+        this.expected = expected;
+    }
+
+    // Stored balance minus the net of the transactions
+    public long getDifference() {
+        return balance - expected;
+    }
+
+    // Getters
+    public int getAccountId() {
+        return accountId;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public long getExpected() {
+        return expected;
+    }
+
+    @Override
+    public String toString() {
+        return "Account " + accountId + " (user " + userId + "): balance $" + Money.format(balance)
+                + ", transactions net $" + Money.format(expected)
+                + ", difference $" + Money.format(getDifference());
+    }
+}
@@ -0,0 +1,41 @@
+package model;
+
+import java.time.LocalDateTime;
+
+// Header of a stored set of balance checkpoints: every account's balance as of lastTransactionId
+public class BalanceSnapshot {
+    private final int snapshotId;
+    private final LocalDateTime takenAt;
+    private final int lastTransactionId;
+    private final int accountCount;
+
+    public BalanceSnapshot(int snapshotId, LocalDateTime takenAt, int lastTransactionId, int accountCount) {
+        this.snapshotId = snapshotId;
+        this.takenAt = takenAt;
+        this.lastTransactionId = lastTransactionId;
+        this.accountCount = accountCount;
+    }
+
+    // Getters
+    public int getSnapshotId() {
+        return snapshotId;
+    }
+
+    public LocalDateTime getTakenAt() {
+        return takenAt;
+    }
+
+    public int getLastTransactionId() {
+        return lastTransactionId;
+    }
+
+    public int getAccountCount() {
+        return accountCount;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + snapshotId + " at " + takenAt + ", " + accountCount + " accounts up to transaction "
+                + lastTransactionId;
+    }
+}
@@ -0,0 +1,41 @@
+package model;
+
+import java.util.List;
+
+// A customer's balance with their newest transactions. The account is null until it is opened.
+public class Dashboard {
+    private final int userId;
+    private final Account account;
+    private final List<Transaction> recentTransactions;
+    private final boolean moreHistory;
+
+    public Dashboard(int userId, Account account, List<Transaction> recentTransactions, boolean moreHistory) {
+        this.userId = userId;
+        this.account = account;
+        this.recentTransactions = recentTransactions;
+        this.moreHistory = moreHistory;
+    }
+
+    public long getBalance() {
+        return account == null ? 0 : account.getBalance();
+    }
+
+    // Getters
+    public int getUserId() {
+        return userId;
+    }
+
+    public Account getAccount() {
+        return account;
+    }
+
+    // Newest first
+    public List<Transaction> getRecentTransactions() {
+        return recentTransactions;
+    }
+
+    // True if the history goes back further than the recent transactions
+    public boolean hasMoreHistory() {
+        return moreHistory;
+    }
+}
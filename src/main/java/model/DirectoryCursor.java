@@ -0,0 +1,32 @@
+package model;
+
+// Keyset position in a user directory listing: the sort key of the last row already seen.
+// Only the fields used by the listing's UserSort are compared.
+public class DirectoryCursor {
+    private final String username;
+    private final long balance;
+    private final int userId;
+
+    public DirectoryCursor(String username, long balance, int userId) {
+        this.username = username;
+        this.balance = balance;
+        this.userId = userId;
+    }
+
+    public static DirectoryCursor after(UserSummary summary) {
+        return new DirectoryCursor(summary.getUsername(), summary.getBalance(), summary.getUserId());
+    }
+
+    // Getters
+    public String getUsername() {
+        return username;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+}
@@ -0,0 +1,28 @@
+package model;
+
+import java.util.List;
+
+// A page of the admin user directory; the counterpart of Page for DirectoryCursor
+public class DirectoryPage {
+    private final List<UserSummary> items;
+    private final DirectoryCursor nextCursor;
+
+    public DirectoryPage(List<UserSummary> items, DirectoryCursor nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters
+    public List<UserSummary> getItems() {
+        return items;
+    }
+
+    // Position to pass back to fetch the following page, or null on the last page
+    public DirectoryCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,31 @@
+package model;
+
+// Filters and ordering of an admin user directory listing
+public class DirectoryQuery {
+    private final String usernamePrefix; // null or empty for every username
+    private final String role; // null for every role
+    private final UserSort sort;
+
+    public DirectoryQuery(String usernamePrefix, String role, UserSort sort) {
+        this.usernamePrefix = usernamePrefix == null || usernamePrefix.isEmpty() ? null : usernamePrefix;
+        this.role = role == null || role.isEmpty() ? null : role;
+        this.sort = sort;
+    }
+
+    public static DirectoryQuery all(UserSort sort) {
+        return new DirectoryQuery(null, null, sort);
+    }
+
+    // Getters
+    public String getUsernamePrefix() {
+        return usernamePrefix;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public UserSort getSort() {
+        return sort;
+    }
+}
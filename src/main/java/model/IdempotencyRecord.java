@@ -0,0 +1,98 @@
+package model;
+
+import java.time.LocalDateTime;
+
+// A keyed deposit, withdrawal or transfer and its outcome. Keys are scoped to the source
+// account; a deposit or withdrawal has toAccountId equal to accountId. Amount in cents.
+public class IdempotencyRecord {
+    public static final int MAX_KEY_LENGTH = 64;
+
+    private final int accountId;
+    private final String requestKey;
+    private final String operation;
+    private final int toAccountId;
+    private final long amount;
+    private final boolean applied;
+    private final LocalDateTime createdAt;
+
+    public IdempotencyRecord(int accountId, String requestKey, String operation, int toAccountId, long amount,
+            boolean applied, LocalDateTime createdAt) {
+        this.accountId = accountId;
+        this.requestKey = requestKey;
+        this.operation = operation;
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+        this.applied = applied;
+        this.createdAt = createdAt;
+    }
+
+    // A request not executed yet; the outcome is filled in with withOutcome
+    public static IdempotencyRecord request(int accountId, String requestKey, String operation, int toAccountId,
+            long amount) {
+        return new IdempotencyRecord(accountId, checkKey(requestKey), operation, toAccountId, amount, false, null);
+    }
+
+    // 1 to 64 printable ASCII characters, e.g. a UUID
+    public static String checkKey(String requestKey) {
+        if (requestKey.isEmpty() || requestKey.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException("Request key must be 1 to " + MAX_KEY_LENGTH + " characters long.");
+        }
+        for (int i = 0; i < requestKey.length(); i++) {
+            char c = requestKey.charAt(i);
+            if (c < '!' || c > '~') {
+                throw new IllegalArgumentException("Request key must be printable ASCII without spaces.");
+            }
+        }
+        return requestKey;
+    }
+
+    public IdempotencyRecord withOutcome(boolean applied, LocalDateTime createdAt) {
+        return new IdempotencyRecord(accountId, requestKey, operation, toAccountId, amount, applied, createdAt);
+    }
+
+    // True if the other record asks for the same movement, whatever its outcome
+    public boolean sameRequest(IdempotencyRecord other) {
+        return accountId == other.accountId && toAccountId == other.toAccountId && amount == other.amount
+                && operation.equals(other.operation) && requestKey.equals(other.requestKey);
+    }
+
+    // Identifies the key in in-memory caches
+    public String cacheKey() {
+        return accountId + ":" + requestKey;
+    }
+
+    // Getters
+    public int getAccountId() {
+        return accountId;
+    }
+
+    public String getRequestKey() {
+        return requestKey;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public int getToAccountId() {
+        return toAccountId;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public boolean isApplied() {
+        return applied;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    @Override
+    public String toString() {
+        return operation + " " + requestKey + " from account " + accountId + " to " + toAccountId
+                + ": $" + Money.format(amount) + (applied ? " applied" : " rejected");
+    }
+}
@@ -0,0 +1,77 @@
+package model;
+
+import java.math.BigDecimal;
+
+/**
+ * Money amounts are carried as a plain long count of cents. These helpers do the
+ * arithmetic with overflow checks (ArithmeticException rather than silently wrapping)
+ * and convert exactly to and from the DECIMAL(18,2) columns, whose full range fits
+ * in a long.
+ */
+public final class Money {
+    public static final int SCALE = 2;
+    public static final long CENTS_PER_UNIT = 100;
+
+    // Largest value a DECIMAL(18,2) column can hold: 9,999,999,999,999,999.99
+    public static final long MAX_CENTS = 999_999_999_999_999_999L;
+
+    private Money() {
+    }
+
+    public static long add(long cents, long otherCents) {
+        return Math.addExact(cents, otherCents);
+    }
+
+    public static long subtract(long cents, long otherCents) {
+        return Math.subtractExact(cents, otherCents);
+    }
+
+    public static long multiply(long cents, long factor) {
+        return Math.multiplyExact(cents, factor);
+    }
+
+    public static long ofUnits(long units) {
+        return Math.multiplyExact(units, CENTS_PER_UNIT);
+    }
+
+    public static boolean isPositive(long cents) {
+        return cents > 0 && cents <= MAX_CENTS;
+    }
+
+    // Exact conversion from a DECIMAL column; fails rather than rounds if the value has more than two decimals
+    public static long fromDecimal(BigDecimal value) {
+        if (value == null) {
+            return 0;
+        }
+        return value.movePointRight(SCALE).longValueExact();
+    }
+
+    public static BigDecimal toDecimal(long cents) {
+        return BigDecimal.valueOf(cents, SCALE);
+    }
+
+    // Parses user input such as "12", "12.5" or "12.50"; more than two decimals is rejected
+    public static long parse(String text) {
+        try {
+            return fromDecimal(new BigDecimal(text.trim()));
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount must have at most two decimals: " + text);
+        }
+    }
+
+    public static String format(long cents) {
+        StringBuilder out = new StringBuilder(24);
+        if (cents < 0) {
+            out.append('-');
+        }
+        // Work in negative space so Long.MIN_VALUE does not overflow on negation
+        long negative = cents < 0 ? cents : -cents;
+        long units = -(negative / CENTS_PER_UNIT);
+        long fraction = -(negative % CENTS_PER_UNIT);
+        out.append(units).append('.');
+        if (fraction < 10) {
+            out.append('0');
+        }
+        return out.append(fraction).toString();
+    }
+}
@@ -0,0 +1,27 @@
+package model;
+
+import java.util.List;
+
+public class Page<T> {
+    private final List<T> items;
+    private final TransactionCursor nextCursor;
+
+    public Page(List<T> items, TransactionCursor nextCursor) {
+        this.items = items;
+        this.nextCursor = nextCursor;
+    }
+
+    // Getters
+    public List<T> getItems() {
+        return items;
+    }
+
+    // Position to pass back to fetch the following page, or null on the last page
+    public TransactionCursor getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean hasMore() {
+        return nextCursor != null;
+    }
+}
@@ -0,0 +1,60 @@
+package model;
+
+import java.util.List;
+
+// Outcome of a reconciliation run. Only the first discrepancies found are kept; discrepancyCount has them all.
+public class ReconciliationReport {
+    private final long accountsChecked;
+    private final long transactionsScanned;
+    private final long discrepancyCount;
+    private final List<BalanceDiscrepancy> discrepancies;
+    private final int shards;
+    private final long elapsedNanos;
+
+    public ReconciliationReport(long accountsChecked, long transactionsScanned, long discrepancyCount,
+            List<BalanceDiscrepancy> discrepancies, int shards, long elapsedNanos) {
+        this.accountsChecked = accountsChecked;
+        this.transactionsScanned = transactionsScanned;
+        this.discrepancyCount = discrepancyCount;
+        this.discrepancies = discrepancies;
+        this.shards = shards;
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    public boolean isBalanced() {
+        return discrepancyCount == 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%,d accounts, %,d transaction rows in %d shards, %.1f s (%,.0f rows/s): %s",
+                accountsChecked, transactionsScanned, shards, elapsedNanos / 1e9,
+                elapsedNanos == 0 ? 0 : transactionsScanned * 1e9 / elapsedNanos,
+                isBalanced() ? "all balances match" : String.format("%,d discrepancies", discrepancyCount));
+    }
+
+    // Getters
+    public long getAccountsChecked() {
+        return accountsChecked;
+    }
+
+    public long getTransactionsScanned() {
+        return transactionsScanned;
+    }
+
+    public long getDiscrepancyCount() {
+        return discrepancyCount;
+    }
+
+    public List<BalanceDiscrepancy> getDiscrepancies() {
+        return discrepancies;
+    }
+
+    public int getShards() {
+        return shards;
+    }
+
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+}
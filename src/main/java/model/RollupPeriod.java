@@ -0,0 +1,37 @@
+package model;
+
+import java.time.LocalDate;
+
+// Bucket size of the transaction rollups; code is the value stored in transaction_rollups.period
+public enum RollupPeriod {
+    DAY("D"),
+    MONTH("M");
+
+    private final String code;
+
+    RollupPeriod(String code) {
+        this.code = code;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    // First day of the bucket containing the date
+    public LocalDate start(LocalDate date) {
+        return this == DAY ? date : date.withDayOfMonth(1);
+    }
+
+    public LocalDate next(LocalDate periodStart) {
+        return this == DAY ? periodStart.plusDays(1) : periodStart.plusMonths(1);
+    }
+
+    public static RollupPeriod fromCode(String code) {
+        for (RollupPeriod period : values()) {
+            if (period.code.equals(code)) {
+                return period;
+            }
+        }
+        throw new IllegalArgumentException("Unknown rollup period: " + code);
+    }
+}
@@ -0,0 +1,76 @@
+package model;
+
+// A logged-in user. The role is resolved to a bitmask once at login so
+// authorization checks are a single AND instead of string comparisons.
+public class Session {
+    public static final int ROLE_USER = 1;
+    public static final int ROLE_ADMIN = 1 << 1;
+
+    private final String token;
+    private final int userId;
+    private final String username;
+    private final String role;
+    private final int roleMask;
+    private final long createdAtMillis;
+    // Written by the request threads, read by the expiry wheel
+    private volatile long lastAccessNanos;
+
+    public Session(String token, User user, long nowNanos) {
+        this.token = token;
+        this.userId = user.getUserId();
+        this.username = user.getUsername();
+        this.role = user.getRole();
+        this.roleMask = roleMask(role);
+        this.createdAtMillis = System.currentTimeMillis();
+        this.lastAccessNanos = nowNanos;
+    }
+
+    // An admin can do everything a customer can
+    public static int roleMask(String role) {
+        if ("ADMIN".equals(role)) {
+            return ROLE_ADMIN | ROLE_USER;
+        }
+        return ROLE_USER;
+    }
+
+    public boolean hasRole(int role) {
+        return (roleMask & role) == role;
+    }
+
+    public boolean isAdmin() {
+        return hasRole(ROLE_ADMIN);
+    }
+
+    public void touch(long nowNanos) {
+        lastAccessNanos = nowNanos;
+    }
+
+    // Getters
+    public String getToken() {
+        return token;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public int getRoleMask() {
+        return roleMask;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public long getCreatedAtMillis() {
+        return createdAtMillis;
+    }
+
+    public long getLastAccessNanos() {
+        return lastAccessNanos;
+    }
+}
@@ -0,0 +1,87 @@
+package model;
+
+import java.time.LocalDate;
+
+// Count, sum, min and max of one kind of transaction on one account over one period.
+// Amounts are in cents. Bank-wide totals use accountId 0.
+public class StatementTotal {
+    // Kinds, as seen from the account; a transfer is TRANSFER_OUT for the sender and TRANSFER_IN for the receiver
+    public static final String DEPOSIT = "DEPOSIT";
+    public static final String WITHDRAWAL = "WITHDRAWAL";
+    public static final String TRANSFER_IN = "TRANSFER_IN";
+    public static final String TRANSFER_OUT = "TRANSFER_OUT";
+
+    private final int accountId;
+    private final RollupPeriod period;
+    private final LocalDate periodStart;
+    private final String kind;
+    private final long count;
+    private final long total;
+    private final long min;
+    private final long max;
+
+    public StatementTotal(int accountId, RollupPeriod period, LocalDate periodStart, String kind, long count,
+            long total, long min, long max) {
+        this.accountId = accountId;
+        this.period = period;
+        this.periodStart = periodStart;
+        this.kind = kind;
+        this.count = count;
+        this.total = total;
+        this.min = min;
+        this.max = max;
+    }
+
+    // Kind of a transaction for its fromAccountId; the toAccountId of a transfer sees TRANSFER_IN
+    public static String outgoingKind(String type) {
+        if (DEPOSIT.equals(type) || WITHDRAWAL.equals(type)) {
+            return type;
+        }
+        return TRANSFER_OUT;
+    }
+
+    // Both totals combined, keeping this one's account, period and kind
+    public StatementTotal plus(StatementTotal other) {
+        return new StatementTotal(accountId, period, periodStart, kind, count + other.count,
+                Money.add(total, other.total), Math.min(min, other.min), Math.max(max, other.max));
+    }
+
+    // Getters
+    public int getAccountId() {
+        return accountId;
+    }
+
+    public RollupPeriod getPeriod() {
+        return period;
+    }
+
+    public LocalDate getPeriodStart() {
+        return periodStart;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getTotal() {
+        return total;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return kind + ": " + count + " totalling $" + Money.format(total)
+                + " (min $" + Money.format(min) + ", max $" + Money.format(max) + ")";
+    }
+}
@@ -6,11 +6,11 @@ public class Transaction {
     private int transactionId;
     private int fromAccountId;
     private int toAccountId;
-    private double amount;
+    private long amount; // in cents, see Money
     private LocalDateTime dateTime;
     private String type;
 
-    public Transaction(int transactionId, int fromAccountId, int toAccountId, double amount, LocalDateTime dateTime,
+    public Transaction(int transactionId, int fromAccountId, int toAccountId, long amount, LocalDateTime dateTime,
             String type) {
         this.transactionId = transactionId;
         this.fromAccountId = fromAccountId;
@@ -45,11 +45,11 @@ public class Transaction {
         this.toAccountId = toAccountId;
     }
 
-    public double getAmount() {
+    public long getAmount() {
         return amount;
     }
 
-    public void setAmount(double amount) {
+    public void setAmount(long amount) {
         this.amount = amount;
     }
 
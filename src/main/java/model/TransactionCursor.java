@@ -0,0 +1,45 @@
+package model;
+
+import java.time.LocalDateTime;
+
+// Keyset position in a newest-first transaction listing: the last row already seen
+public class TransactionCursor {
+    private final LocalDateTime dateTime;
+    private final int transactionId;
+
+    public TransactionCursor(LocalDateTime dateTime, int transactionId) {
+        this.dateTime = dateTime;
+        this.transactionId = transactionId;
+    }
+
+    public static TransactionCursor after(Transaction transaction) {
+        return new TransactionCursor(transaction.getDateTime(), transaction.getTransactionId());
+    }
+
+    // Opaque text form for clients of the network API, e.g. "2024-05-01T10:15:30_42"
+    public String toToken() {
+        return dateTime + "_" + transactionId;
+    }
+
+    public static TransactionCursor fromToken(String token) {
+        int separator = token.lastIndexOf('_');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Invalid cursor: " + token);
+        }
+        try {
+            return new TransactionCursor(LocalDateTime.parse(token.substring(0, separator)),
+                    Integer.parseInt(token.substring(separator + 1)));
+        } catch (RuntimeException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, e);
+        }
+    }
+
+    // Getters
+    public LocalDateTime getDateTime() {
+        return dateTime;
+    }
+
+    public int getTransactionId() {
+        return transactionId;
+    }
+}
@@ -0,0 +1,9 @@
+package model;
+
+// Orderings of the admin user directory. Ties on balance are broken by userId so every
+// ordering is total and can be paged with a keyset cursor (see DirectoryCursor).
+public enum UserSort {
+    USERNAME,
+    USER_ID,
+    BALANCE // highest first
+}
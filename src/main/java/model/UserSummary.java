@@ -0,0 +1,60 @@
+package model;
+
+// One row of the admin user directory: the user with their account's balance and activity
+public class UserSummary {
+    private final int userId;
+    private final String username;
+    private final String role;
+    private final int accountId; // 0 if the user has no account yet
+    private final long balance; // in cents, see Money
+    private final long transactionCount;
+
+    public UserSummary(int userId, String username, String role, int accountId, long balance, long transactionCount) {
+        this.userId = userId;
+        this.username = username;
+        this.role = role;
+        this.accountId = accountId;
+        this.balance = balance;
+        this.transactionCount = transactionCount;
+    }
+
+    public UserSummary withAccount(int accountId, long balance, long transactionCount) {
+        return new UserSummary(userId, username, role, accountId, balance, transactionCount);
+    }
+
+    public boolean hasAccount() {
+        return accountId != 0;
+    }
+
+    // Getters
+    public int getUserId() {
+        return userId;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getRole() {
+        return role;
+    }
+
+    public int getAccountId() {
+        return accountId;
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+
+    public long getTransactionCount() {
+        return transactionCount;
+    }
+
+    @Override
+    public String toString() {
+        return "UserSummary{userId=" + userId + ", username=" + username + ", role=" + role
+                + ", accountId=" + accountId + ", balance=" + Money.format(balance)
+                + ", transactionCount=" + transactionCount + "}";
+    }
+}
@@ -0,0 +1,96 @@
+package repository;
+
+import model.Account;
+import util.CacheStats;
+import util.LruCache;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Process-wide cache of accounts, looked up by accountId or by owning userId.
+// Entries are copied in and out so callers can never modify a cached Account.
+public class AccountCache {
+    private static final AccountCache INSTANCE = new AccountCache(
+            Integer.getInteger("bank.cache.accounts.maxSize", 10_000),
+            Long.getLong("bank.cache.accounts.ttlMs", 30_000));
+
+    private final LruCache<Integer, Account> accountsById;
+    // userId -> accountId; an account never changes owner, so this only needs bounding
+    private final LruCache<Integer, Integer> accountIdByUserId;
+    // Bumped on every invalidation so a load that raced with a write is not cached
+    private final AtomicLong invalidations = new AtomicLong();
+    private final int maxSize;
+
+    public AccountCache(int maxSize, long ttlMillis) {
+        this.maxSize = maxSize;
+        this.accountsById = new LruCache<>(maxSize, ttlMillis, TimeUnit.MILLISECONDS);
+        this.accountIdByUserId = new LruCache<>(maxSize, ttlMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public static AccountCache getInstance() {
+        return INSTANCE;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public Account getById(int accountId) {
+        return copy(accountsById.get(accountId));
+    }
+
+    public Account getByUserId(int userId) {
+        Integer accountId = accountIdByUserId.get(userId);
+        return accountId == null ? null : getById(accountId);
+    }
+
+    public void put(Account account) {
+        accountsById.put(account.getAccountId(), copy(account));
+        accountIdByUserId.put(account.getUserId(), account.getAccountId());
+    }
+
+    // Take a stamp before reading from the database and pass it to putIfUnchanged afterwards
+    public long stamp() {
+        return invalidations.get();
+    }
+
+    // Caches a freshly loaded account unless some entry was invalidated while it was being read,
+    // in which case the loaded value may predate a concurrent write
+    public void putIfUnchanged(Account account, long stamp) {
+        synchronized (this) {
+            if (invalidations.get() == stamp) {
+                put(account);
+            }
+        }
+    }
+
+    public void invalidate(int accountId) {
+        synchronized (this) {
+            invalidations.incrementAndGet();
+        }
+        accountsById.remove(accountId);
+    }
+
+    public void invalidateUser(int userId) {
+        synchronized (this) {
+            invalidations.incrementAndGet();
+        }
+        Integer accountId = accountIdByUserId.remove(userId);
+        if (accountId != null) {
+            accountsById.remove(accountId);
+        }
+    }
+
+    public void clear() {
+        accountsById.clear();
+        accountIdByUserId.clear();
+    }
+
+    public CacheStats getStats() {
+        return accountsById.getStats();
+    }
+
+    private static Account copy(Account account) {
+        return account == null ? null : new Account(account.getAccountId(), account.getUserId(), account.getBalance());
+    }
+}
@@ -1,69 +1,264 @@
 package repository;
 
+import metrics.Metrics;
+import metrics.SqlTimer;
 import model.Account;
+import model.Money;
+import util.CacheStats;
 import util.DBConnection;
+import util.IntObjectMap;
+import util.RowMapper;
+import util.TransactionManager;
 
 import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 
 public class AccountRepository {
+    private static final SqlTimer FIND_BY_USER_ID = Metrics.sql("account.findByUserId");
+    private static final SqlTimer FIND_BY_ID = Metrics.sql("account.findById");
+    private static final SqlTimer CREDIT = Metrics.sql("account.credit");
+    private static final SqlTimer DEBIT = Metrics.sql("account.debit");
+    private static final SqlTimer PROVISION = Metrics.sql("account.provision");
+    private static final SqlTimer FIND_BATCH = Metrics.sql("account.findBatch");
+
+    // Most ids per batch lookup statement
+    private static final int LOOKUP_BATCH = 1024;
+
+    // The userId is not in users: MySQL's ER_NO_REFERENCED_ROW_2, and H2's code for the same
+    // (the benchmarks run on H2 in MySQL mode, which accepts PROVISION_SQL as it is)
+    private static final int MYSQL_NO_REFERENCED_ROW = 1452;
+    private static final int H2_NO_REFERENCED_ROW = 23506;
+
+    // Columns in the order ACCOUNT_MAPPER reads them by index
+    static final String ACCOUNT_COLUMNS = "accountId, userId, balance";
+    static final RowMapper<Account> ACCOUNT_MAPPER = rs -> new Account(
+            rs.getInt(1),
+            rs.getInt(2),
+            Money.fromDecimal(rs.getBigDecimal(3)));
+
+    private static final String FIND_BY_USER_ID_SQL = "SELECT " + ACCOUNT_COLUMNS + " FROM accounts WHERE userId = ?";
+    private static final String FIND_BY_ID_SQL = "SELECT " + ACCOUNT_COLUMNS + " FROM accounts WHERE accountId = ?";
+    // Inserts the account or, thanks to uk_accounts_user, finds the existing one; either way
+    // LAST_INSERT_ID() (and so the generated key) is the user's accountId
+    private static final String PROVISION_SQL = "INSERT INTO accounts (userId, balance) VALUES (?, 0)"
+            + " ON DUPLICATE KEY UPDATE accountId = LAST_INSERT_ID(accountId)";
+
+    private final AccountCache cache = AccountCache.getInstance();
 
     public Account findByUserId(int userId) throws SQLException {
-        String sql = "SELECT * FROM accounts WHERE userId = ?";
-        try (Connection conn = DBConnection.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+        Account cached = cache.getByUserId(userId);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = cache.stamp();
+        try (Connection conn = FIND_BY_USER_ID.acquire()) {
+            Account account = findByUserId(conn, userId);
+            if (account != null) {
+                cache.putIfUnchanged(account, stamp);
+            }
+            return account;
+        }
+    }
+
+    // Always reads the database, so callers inside a transaction see their own uncommitted writes
+    public Account findByUserId(Connection conn, int userId) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(FIND_BY_USER_ID_SQL)) {
 
             stmt.setInt(1, userId);
+            long start = FIND_BY_USER_ID.start();
             ResultSet rs = stmt.executeQuery();
+            long executed = FIND_BY_USER_ID.executed(start);
 
-            if (rs.next()) {
-                return new Account(
-                        rs.getInt("accountId"),
-                        rs.getInt("userId"),
-                        rs.getDouble("balance"));
+            Account account = rs.next() ? ACCOUNT_MAPPER.map(rs) : null;
+            FIND_BY_USER_ID.fetched(executed);
+            return account;
+        }
+    }
+
+    public Account findById(int accountId) throws SQLException {
+        Account cached = cache.getById(accountId);
+        if (cached != null) {
+            return cached;
+        }
+        long stamp = cache.stamp();
+        try (Connection conn = FIND_BY_ID.acquire();
+                PreparedStatement stmt = conn.prepareStatement(FIND_BY_ID_SQL)) {
+
+            stmt.setInt(1, accountId);
+            long start = FIND_BY_ID.start();
+            ResultSet rs = stmt.executeQuery();
+            long executed = FIND_BY_ID.executed(start);
+
+            Account account = rs.next() ? ACCOUNT_MAPPER.map(rs) : null;
+            FIND_BY_ID.fetched(executed);
+            if (account != null) {
+                cache.putIfUnchanged(account, stamp);
             }
+            return account;
         }
-        return null;
     }
 
-    public void create(Account account) throws SQLException {
-        String sql = "INSERT INTO accounts (userId, balance) VALUES (?, ?)";
-        try (Connection conn = DBConnection.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+    // Adds to the balance in place so concurrent writers cannot overwrite each other.
+    // Returns false if the account does not exist.
+    public boolean credit(Connection conn, int accountId, long amount) throws SQLException {
+        String sql = "UPDATE accounts SET balance = balance + ? WHERE accountId = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setInt(1, account.getUserId());
-            stmt.setDouble(2, account.getBalance());
-            stmt.executeUpdate();
+            stmt.setBigDecimal(1, Money.toDecimal(amount));
+            stmt.setInt(2, accountId);
+            invalidateAround(accountId);
+            long start = CREDIT.start();
+            int updated = stmt.executeUpdate();
+            CREDIT.executed(start);
+            return updated == 1;
+        }
+    }
+
+    // Subtracts from the balance only if enough funds remain at the time of the update.
+    // Returns false if the account does not exist or the balance is too low.
+    public boolean debit(Connection conn, int accountId, long amount) throws SQLException {
+        String sql = "UPDATE accounts SET balance = balance - ? WHERE accountId = ? AND balance >= ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setBigDecimal(1, Money.toDecimal(amount));
+            stmt.setInt(2, accountId);
+            stmt.setBigDecimal(3, Money.toDecimal(amount));
+            invalidateAround(accountId);
+            long start = DEBIT.start();
+            int updated = stmt.executeUpdate();
+            DEBIT.executed(start);
+            return updated == 1;
         }
     }
 
-    public void updateBalance(int userId, double newBalance) throws SQLException {
-        String sql = "UPDATE accounts SET balance = ? WHERE userId = ?";
+    // The user's accountId, creating the account with a zero balance if the user has none,
+    // in one round trip. Returns 0 if there is no such user.
+    public int provision(int userId) throws SQLException {
+        try (Connection conn = PROVISION.acquire();
+                PreparedStatement stmt = conn.prepareStatement(PROVISION_SQL, Statement.RETURN_GENERATED_KEYS)) {
+
+            stmt.setInt(1, userId);
+            long start = PROVISION.start();
+            try {
+                stmt.executeUpdate();
+            } catch (SQLIntegrityConstraintViolationException e) {
+                if (e.getErrorCode() == MYSQL_NO_REFERENCED_ROW || e.getErrorCode() == H2_NO_REFERENCED_ROW) {
+                    return 0;
+                }
+                throw e;
+            }
+            PROVISION.executed(start);
+
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (rs.next()) {
+                    return rs.getInt(1);
+                }
+            }
+        }
+        // Drivers that report no key for the update branch
+        Account account = findByUserId(userId);
+        return account == null ? 0 : account.getAccountId();
+    }
+
+    public void updateBalance(int accountId, long newBalance) throws SQLException {
+        String sql = "UPDATE accounts SET balance = ? WHERE accountId = ?";
         try (Connection conn = DBConnection.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setDouble(1, newBalance);
-            stmt.setInt(2, userId);
+            stmt.setBigDecimal(1, Money.toDecimal(newBalance));
+            stmt.setInt(2, accountId);
             stmt.executeUpdate();
+        } finally {
+            cache.invalidate(accountId);
+        }
+    }
+
+    // The accounts with the given ids, keyed by accountId; ids with no account are left out.
+    // Cached accounts come from memory, the rest from one query per LOOKUP_BATCH ids.
+    public IntObjectMap<Account> findByIds(int[] accountIds) throws SQLException {
+        return findBatch(accountIds, false);
+    }
+
+    // The accounts of the given users, keyed by userId; users with no account are left out
+    public IntObjectMap<Account> findByUserIds(int[] userIds) throws SQLException {
+        return findBatch(userIds, true);
+    }
+
+    private IntObjectMap<Account> findBatch(int[] ids, boolean byUser) throws SQLException {
+        IntObjectMap<Account> found = new IntObjectMap<>(ids.length);
+        int[] missing = new int[ids.length];
+        int missingCount = 0;
+        for (int id : ids) {
+            Account cached = byUser ? cache.getByUserId(id) : cache.getById(id);
+            if (cached != null) {
+                found.put(id, cached);
+            } else {
+                missing[missingCount++] = id;
+            }
         }
+        if (missingCount == 0) {
+            return found;
+        }
+
+        long stamp = cache.stamp();
+        try (Connection conn = FIND_BATCH.acquire()) {
+            for (int from = 0; from < missingCount; from += LOOKUP_BATCH) {
+                int count = Math.min(LOOKUP_BATCH, missingCount - from);
+                // Padding the IN list to a power of two (repeating the last id) keeps the number of
+                // distinct statements small, so they stay in the connection's statement cache
+                int slots = count == 1 ? 1 : Integer.highestOneBit(count - 1) << 1;
+                try (PreparedStatement stmt = conn.prepareStatement(batchSql(byUser ? "userId" : "accountId", slots))) {
+                    for (int i = 0; i < slots; i++) {
+                        stmt.setInt(i + 1, missing[from + Math.min(i, count - 1)]);
+                    }
+                    long start = FIND_BATCH.start();
+                    ResultSet rs = stmt.executeQuery();
+                    long executed = FIND_BATCH.executed(start);
+                    while (rs.next()) {
+                        Account account = ACCOUNT_MAPPER.map(rs);
+                        found.put(byUser ? account.getUserId() : account.getAccountId(), account);
+                        cache.putIfUnchanged(account, stamp);
+                    }
+                    FIND_BATCH.fetched(executed);
+                }
+            }
+        }
+        return found;
+    }
+
+    private static String batchSql(String column, int count) {
+        StringBuilder sql = new StringBuilder("SELECT ").append(ACCOUNT_COLUMNS)
+                .append(" FROM accounts WHERE ").append(column).append(" IN (?");
+        for (int i = 1; i < count; i++) {
+            sql.append(", ?");
+        }
+        return sql.append(')').toString();
     }
 
     public List<Account> findAll() throws SQLException {
         List<Account> accounts = new ArrayList<>();
-        String sql = "SELECT * FROM accounts";
+        String sql = "SELECT " + ACCOUNT_COLUMNS + " FROM accounts";
 
         try (Connection conn = DBConnection.getConnection();
                 Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery(sql)) {
 
             while (rs.next()) {
-                accounts.add(new Account(
-                        rs.getInt("accountId"),
-                        rs.getInt("userId"),
-                        rs.getDouble("balance")));
+                accounts.add(ACCOUNT_MAPPER.map(rs));
             }
         }
         return accounts;
     }
-}
\ No newline at end of file
+
+    public static CacheStats getCacheStats() {
+        return AccountCache.getInstance().getStats();
+    }
+
+    // Drop the entry now and again once the surrounding transaction commits, so a reader that
+    // loaded the old balance in between cannot leave it cached
+    private void invalidateAround(int accountId) throws SQLException {
+        cache.invalidate(accountId);
+        TransactionManager.afterCommit(() -> cache.invalidate(accountId));
+    }
+}
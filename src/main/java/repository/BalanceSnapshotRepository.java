@@ -0,0 +1,280 @@
+package repository;
+
+import model.BalanceSnapshot;
+import model.Money;
+import util.DBConnection;
+import util.IntLongMap;
+import util.ResultSetStream;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+
+// Balance checkpoints and the replay queries that bring them forward. Methods that take a
+// Connection work on the caller's connection, so a snapshot can be read from one consistent view.
+public class BalanceSnapshotRepository {
+    // Effect of a row on its fromAccountId: deposits add, withdrawals and outgoing transfers subtract
+    private static final String FROM_DELTA = "CASE WHEN type = 'DEPOSIT' THEN amount ELSE -amount END";
+
+    // Rows a replay from snapshot ? must still apply: everything after it, plus the rows that
+    // were uncommitted when it was taken
+    private static final String AFTER_SNAPSHOT = "(transactionId > ? OR transactionId IN"
+            + " (SELECT transactionId FROM balance_snapshot_pending WHERE snapshotId = ?))";
+
+    // A transaction still open when a snapshot was taken is dated at most this long before it.
+    // Only bounds the index range of a replay; the exact cut is by transactionId.
+    private static final long PENDING_MARGIN_MINUTES = 10;
+
+    private static final String SNAPSHOT_COLUMNS = "snapshotId, takenAt, lastTransactionId, accountCount";
+
+    public interface BalanceVisitor {
+        void visit(int accountId, int userId, long balance) throws SQLException;
+    }
+
+    public int maxTransactionId(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT COALESCE(MAX(transactionId), 0) FROM transactions")) {
+            rs.next();
+            return rs.getInt(1);
+        }
+    }
+
+    // Ids in (from, to] with no visible row: still uncommitted, or rolled back and never coming
+    public int[] missingTransactionIds(Connection conn, int from, int to) throws SQLException {
+        String sql = "SELECT transactionId FROM transactions WHERE transactionId > ? AND transactionId <= ?"
+                + " ORDER BY transactionId";
+        int[] missing = new int[16];
+        int count = 0;
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, from);
+            stmt.setInt(2, to);
+            try (ResultSet rs = stmt.executeQuery()) {
+                int expected = from + 1;
+                while (true) {
+                    int next = rs.next() ? rs.getInt(1) : to + 1;
+                    for (; expected < next; expected++) {
+                        if (count == missing.length) {
+                            missing = Arrays.copyOf(missing, count * 2);
+                        }
+                        missing[count++] = expected;
+                    }
+                    if (next > to) {
+                        break;
+                    }
+                    expected = next + 1;
+                }
+            }
+        }
+        return Arrays.copyOf(missing, count);
+    }
+
+    // Streams every account's current balance as seen by the caller's transaction
+    public void readBalances(Connection conn, BalanceVisitor visitor) throws SQLException {
+        try (PreparedStatement stmt = ResultSetStream.prepareStreaming(conn,
+                "SELECT accountId, userId, balance FROM accounts");
+                ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                visitor.visit(rs.getInt(1), rs.getInt(2), Money.fromDecimal(rs.getBigDecimal(3)));
+            }
+        }
+    }
+
+    // Creates the (not yet complete) snapshot header with its pending ids and returns its id
+    public int insertSnapshot(Connection conn, LocalDateTime takenAt, int lastTransactionId, int[] pending)
+            throws SQLException {
+        String sql = "INSERT INTO balance_snapshots (takenAt, lastTransactionId) VALUES (?, ?)";
+        int snapshotId;
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(takenAt));
+            stmt.setInt(2, lastTransactionId);
+            stmt.executeUpdate();
+            try (ResultSet rs = stmt.getGeneratedKeys()) {
+                if (!rs.next()) {
+                    throw new SQLException("No id generated for the balance snapshot.");
+                }
+                snapshotId = rs.getInt(1);
+            }
+        }
+        if (pending.length > 0) {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "INSERT INTO balance_snapshot_pending (snapshotId, transactionId) VALUES (?, ?)")) {
+                for (int transactionId : pending) {
+                    stmt.setInt(1, snapshotId);
+                    stmt.setInt(2, transactionId);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+        }
+        return snapshotId;
+    }
+
+    public void insertCheckpoints(Connection conn, int snapshotId, int[] accountIds, int[] userIds, long[] balances,
+            int count) throws SQLException {
+        String sql = "INSERT INTO balance_checkpoints (snapshotId, accountId, userId, balance) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            for (int i = 0; i < count; i++) {
+                stmt.setInt(1, snapshotId);
+                stmt.setInt(2, accountIds[i]);
+                stmt.setInt(3, userIds[i]);
+                stmt.setBigDecimal(4, Money.toDecimal(balances[i]));
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+        }
+    }
+
+    public void markComplete(Connection conn, int snapshotId, int accountCount) throws SQLException {
+        String sql = "UPDATE balance_snapshots SET complete = TRUE, accountCount = ? WHERE snapshotId = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, accountCount);
+            stmt.setInt(2, snapshotId);
+            stmt.executeUpdate();
+        }
+    }
+
+    public BalanceSnapshot findLatest() throws SQLException {
+        return findOne("SELECT " + SNAPSHOT_COLUMNS + " FROM balance_snapshots WHERE complete"
+                + " ORDER BY takenAt DESC, snapshotId DESC LIMIT 1", null);
+    }
+
+    // The newest complete snapshot taken at or before the given time, or null
+    public BalanceSnapshot findLatestAtOrBefore(LocalDateTime time) throws SQLException {
+        return findOne("SELECT " + SNAPSHOT_COLUMNS + " FROM balance_snapshots WHERE complete AND takenAt <= ?"
+                + " ORDER BY takenAt DESC, snapshotId DESC LIMIT 1", time);
+    }
+
+    // The account's balance in the snapshot, or the given value if it was not in it
+    public long findCheckpoint(int snapshotId, int accountId, long missing) throws SQLException {
+        String sql = "SELECT balance FROM balance_checkpoints WHERE snapshotId = ? AND accountId = ?";
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, snapshotId);
+            stmt.setInt(2, accountId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? Money.fromDecimal(rs.getBigDecimal(1)) : missing;
+            }
+        }
+    }
+
+    // Net change to the account from transactions dated up to 'until' that the snapshot does not
+    // contain; with no snapshot, from every transaction. Two index range scans, as for history.
+    public long sumDelta(int accountId, BalanceSnapshot since, LocalDateTime until) throws SQLException {
+        String range = " AND dateTime <= ?" + (since == null ? "" : " AND dateTime >= ? AND " + AFTER_SNAPSHOT);
+        String sql = "SELECT COALESCE(SUM(delta), 0) FROM ("
+                + "SELECT " + FROM_DELTA + " AS delta FROM transactions WHERE fromAccountId = ?" + range
+                + " UNION ALL "
+                + "SELECT amount FROM transactions WHERE toAccountId = ? AND fromAccountId <> ?" + range
+                + ") deltas";
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            int index = 1;
+            stmt.setInt(index++, accountId);
+            index = bindRange(stmt, index, since, until);
+            stmt.setInt(index++, accountId);
+            stmt.setInt(index++, accountId);
+            bindRange(stmt, index, since, until);
+            try (ResultSet rs = stmt.executeQuery()) {
+                rs.next();
+                return Money.fromDecimal(rs.getBigDecimal(1));
+            }
+        }
+    }
+
+    // Net change per account from every transaction the snapshot does not contain
+    public IntLongMap sumDeltasSince(BalanceSnapshot since) throws SQLException {
+        // Rows after the snapshot by primary key range, plus its pending rows by key lookup
+        String rows = "(SELECT fromAccountId, toAccountId, amount, type FROM transactions WHERE transactionId > ?"
+                + " UNION ALL "
+                + "SELECT t.fromAccountId, t.toAccountId, t.amount, t.type FROM transactions t"
+                + " JOIN balance_snapshot_pending p ON p.transactionId = t.transactionId WHERE p.snapshotId = ?)";
+        String sql = "SELECT accountId, SUM(delta) FROM ("
+                + "SELECT fromAccountId AS accountId, " + FROM_DELTA + " AS delta FROM " + rows + " r1"
+                + " UNION ALL "
+                + "SELECT toAccountId, amount FROM " + rows + " r2 WHERE toAccountId <> fromAccountId"
+                + ") deltas GROUP BY accountId";
+        IntLongMap deltas = new IntLongMap();
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, since.getLastTransactionId());
+            stmt.setInt(2, since.getSnapshotId());
+            stmt.setInt(3, since.getLastTransactionId());
+            stmt.setInt(4, since.getSnapshotId());
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    deltas.put(rs.getInt(1), Money.fromDecimal(rs.getBigDecimal(2)));
+                }
+            }
+        }
+        return deltas;
+    }
+
+    // Streams up to 'limit' checkpoints of the snapshot
+    public void readCheckpoints(int snapshotId, int limit, BalanceVisitor visitor) throws SQLException {
+        String sql = "SELECT accountId, userId, balance FROM balance_checkpoints WHERE snapshotId = ? LIMIT ?";
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = ResultSetStream.prepareStreaming(conn, sql)) {
+            stmt.setInt(1, snapshotId);
+            stmt.setInt(2, limit);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    visitor.visit(rs.getInt(1), rs.getInt(2), Money.fromDecimal(rs.getBigDecimal(3)));
+                }
+            }
+        }
+    }
+
+    // Deletes everything but the newest 'keep' complete snapshots, including abandoned incomplete
+    // ones older than those. Checkpoints and pending ids go with them. Returns the snapshots deleted.
+    public int deleteAllButNewest(int keep) throws SQLException {
+        String find = "SELECT snapshotId FROM balance_snapshots WHERE complete ORDER BY snapshotId DESC LIMIT 1 OFFSET ?";
+        try (Connection conn = DBConnection.getConnection()) {
+            int oldestKept;
+            try (PreparedStatement stmt = conn.prepareStatement(find)) {
+                stmt.setInt(1, Math.max(0, keep - 1));
+                try (ResultSet rs = stmt.executeQuery()) {
+                    if (!rs.next()) {
+                        return 0;
+                    }
+                    oldestKept = rs.getInt(1);
+                }
+            }
+            try (PreparedStatement stmt = conn.prepareStatement("DELETE FROM balance_snapshots WHERE snapshotId < ?")) {
+                stmt.setInt(1, oldestKept);
+                return stmt.executeUpdate();
+            }
+        }
+    }
+
+    private static int bindRange(PreparedStatement stmt, int index, BalanceSnapshot since, LocalDateTime until)
+            throws SQLException {
+        stmt.setTimestamp(index++, Timestamp.valueOf(until));
+        if (since != null) {
+            stmt.setTimestamp(index++, Timestamp.valueOf(since.getTakenAt().minusMinutes(PENDING_MARGIN_MINUTES)));
+            stmt.setInt(index++, since.getLastTransactionId());
+            stmt.setInt(index++, since.getSnapshotId());
+        }
+        return index;
+    }
+
+    private static BalanceSnapshot findOne(String sql, LocalDateTime time) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            if (time != null) {
+                stmt.setTimestamp(1, Timestamp.valueOf(time));
+            }
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new BalanceSnapshot(rs.getInt(1), rs.getTimestamp(2).toLocalDateTime(), rs.getInt(3),
+                        rs.getInt(4));
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package repository;
+
+import model.Account;
+import model.Money;
+import model.User;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Batched inserts and lookups for bulk loading. Every method works on the caller's
+// connection so a whole chunk, including its progress row, commits as one transaction.
+// With rewriteBatchedStatements=true in the MySQL URL each batch is sent as multi-row INSERTs.
+public class BulkRepository {
+    // Bound on the number of placeholders in one IN (...) lookup
+    private static final int LOOKUP_BATCH = 1_000;
+
+    // Inserts the users with one batch and returns their new ids, in order
+    public int[] insertUsers(Connection conn, List<User> users) throws SQLException {
+        String sql = "INSERT INTO users (username, password, role) VALUES (?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (User user : users) {
+                stmt.setString(1, user.getUsername());
+                stmt.setString(2, user.getPassword());
+                stmt.setString(3, user.getRole());
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            int[] ids = generatedKeys(stmt, users.size());
+            if (ids != null) {
+                return ids;
+            }
+        }
+        // The driver did not hand back one key per row; look them up by username instead
+        String[] usernames = new String[users.size()];
+        for (int i = 0; i < usernames.length; i++) {
+            usernames[i] = users.get(i).getUsername();
+        }
+        return resolveUserIds(conn, usernames);
+    }
+
+    // Inserts the accounts (whose userId is already the new one) and returns their new ids, in order
+    public int[] insertAccounts(Connection conn, List<Account> accounts) throws SQLException {
+        String sql = "INSERT INTO accounts (userId, balance) VALUES (?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+            for (Account account : accounts) {
+                stmt.setInt(1, account.getUserId());
+                stmt.setBigDecimal(2, Money.toDecimal(account.getBalance()));
+                stmt.addBatch();
+            }
+            stmt.executeBatch();
+            int[] ids = generatedKeys(stmt, accounts.size());
+            if (ids != null) {
+                return ids;
+            }
+        }
+        int[] userIds = new int[accounts.size()];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = accounts.get(i).getUserId();
+        }
+        return resolveAccountIds(conn, userIds);
+    }
+
+    // Ids of existing users by username, in the given order; -1 where there is no such user
+    public int[] resolveUserIds(Connection conn, String[] usernames) throws SQLException {
+        Map<String, Integer> found = new HashMap<>();
+        for (int from = 0; from < usernames.length; from += LOOKUP_BATCH) {
+            int to = Math.min(usernames.length, from + LOOKUP_BATCH);
+            String sql = "SELECT userId, username FROM users WHERE username IN (" + placeholders(to - from) + ")";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = from; i < to; i++) {
+                    stmt.setString(i - from + 1, usernames[i]);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        found.put(rs.getString(2), rs.getInt(1));
+                    }
+                }
+            }
+        }
+        int[] ids = new int[usernames.length];
+        for (int i = 0; i < ids.length; i++) {
+            Integer id = found.get(usernames[i]);
+            ids[i] = id == null ? -1 : id;
+        }
+        return ids;
+    }
+
+    // Ids of existing accounts by owner, in the given order; -1 where the user has no account
+    public int[] resolveAccountIds(Connection conn, int[] userIds) throws SQLException {
+        Map<Integer, Integer> found = new HashMap<>();
+        for (int from = 0; from < userIds.length; from += LOOKUP_BATCH) {
+            int to = Math.min(userIds.length, from + LOOKUP_BATCH);
+            String sql = "SELECT accountId, userId FROM accounts WHERE userId IN (" + placeholders(to - from) + ")";
+            try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+                for (int i = from; i < to; i++) {
+                    stmt.setInt(i - from + 1, userIds[i]);
+                }
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        found.put(rs.getInt(2), rs.getInt(1));
+                    }
+                }
+            }
+        }
+        int[] ids = new int[userIds.length];
+        for (int i = 0; i < ids.length; i++) {
+            Integer id = found.get(userIds[i]);
+            ids[i] = id == null ? -1 : id;
+        }
+        return ids;
+    }
+
+    // Marks a chunk of an import job as loaded; call inside the chunk's own transaction
+    public void recordChunk(Connection conn, String jobId, String entity, int chunk, int rows) throws SQLException {
+        String sql = "INSERT INTO bulk_import_progress (jobId, entity, chunk, rowsLoaded, completedAt)"
+                + " VALUES (?, ?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, jobId);
+            stmt.setString(2, entity);
+            stmt.setInt(3, chunk);
+            stmt.setInt(4, rows);
+            stmt.setTimestamp(5, Timestamp.valueOf(LocalDateTime.now()));
+            stmt.executeUpdate();
+        }
+    }
+
+    public Set<Integer> completedChunks(Connection conn, String jobId, String entity) throws SQLException {
+        Set<Integer> chunks = new HashSet<>();
+        String sql = "SELECT chunk FROM bulk_import_progress WHERE jobId = ? AND entity = ?";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, jobId);
+            stmt.setString(2, entity);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    chunks.add(rs.getInt(1));
+                }
+            }
+        }
+        return chunks;
+    }
+
+    // One key per row, or null if the driver returned a different number of keys
+    private static int[] generatedKeys(PreparedStatement stmt, int rows) throws SQLException {
+        int[] ids = new int[rows];
+        int count = 0;
+        try (ResultSet keys = stmt.getGeneratedKeys()) {
+            while (keys.next()) {
+                if (count == rows) {
+                    return null;
+                }
+                ids[count++] = keys.getInt(1);
+            }
+        }
+        return count == rows ? ids : null;
+    }
+
+    private static String placeholders(int count) {
+        StringBuilder sql = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            sql.append(i == 0 ? "?" : ",?");
+        }
+        return sql.toString();
+    }
+}
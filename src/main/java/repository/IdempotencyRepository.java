@@ -0,0 +1,83 @@
+package repository;
+
+import model.IdempotencyRecord;
+import model.Money;
+import util.DBConnection;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+
+// Request keys of applied and rejected money movements in idempotency_keys
+public class IdempotencyRepository {
+    // MySQL error code for ER_DUP_ENTRY
+    private static final int MYSQL_DUPLICATE_KEY = 1062;
+
+    // Rows per purge statement, so the purge never holds locks on a large range
+    private static final int PURGE_BATCH = 10_000;
+
+    private static final String INSERT_SQL = "INSERT INTO idempotency_keys"
+            + " (accountId, requestKey, operation, toAccountId, amount, applied, createdAt) VALUES (?, ?, ?, ?, ?, ?, ?)";
+    private static final String FIND_SQL = "SELECT accountId, requestKey, operation, toAccountId, amount, applied,"
+            + " createdAt FROM idempotency_keys WHERE accountId = ? AND requestKey = ?";
+    private static final String PURGE_SQL = "DELETE FROM idempotency_keys WHERE createdAt < ? LIMIT " + PURGE_BATCH;
+
+    // Records the outcome on the caller's connection, in the same transaction as the movement.
+    // Fails with a duplicate key error if the key was already recorded (see isDuplicateKey).
+    public void insert(Connection conn, IdempotencyRecord record) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            stmt.setInt(1, record.getAccountId());
+            stmt.setString(2, record.getRequestKey());
+            stmt.setString(3, record.getOperation());
+            stmt.setInt(4, record.getToAccountId());
+            stmt.setBigDecimal(5, Money.toDecimal(record.getAmount()));
+            stmt.setBoolean(6, record.isApplied());
+            stmt.setTimestamp(7, Timestamp.valueOf(record.getCreatedAt()));
+            stmt.executeUpdate();
+        }
+    }
+
+    public IdempotencyRecord find(int accountId, String requestKey) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(FIND_SQL)) {
+            stmt.setInt(1, accountId);
+            stmt.setString(2, requestKey);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next()) {
+                    return null;
+                }
+                return new IdempotencyRecord(rs.getInt(1), rs.getString(2), rs.getString(3), rs.getInt(4),
+                        Money.fromDecimal(rs.getBigDecimal(5)), rs.getBoolean(6), rs.getTimestamp(7).toLocalDateTime());
+            }
+        }
+    }
+
+    // Deletes keys recorded before the given time, in batches; returns the number deleted
+    public int deleteOlderThan(LocalDateTime time) throws SQLException {
+        int deleted = 0;
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(PURGE_SQL)) {
+            stmt.setTimestamp(1, Timestamp.valueOf(time));
+            int batch;
+            do {
+                batch = stmt.executeUpdate();
+                deleted += batch;
+            } while (batch == PURGE_BATCH);
+        }
+        return deleted;
+    }
+
+    public static boolean isDuplicateKey(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            if (current instanceof SQLIntegrityConstraintViolationException
+                    || current.getErrorCode() == MYSQL_DUPLICATE_KEY) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,79 @@
+package repository;
+
+import model.Account;
+import model.Page;
+import model.RollupPeriod;
+import model.StatementTotal;
+import model.Transaction;
+import model.TransactionCursor;
+import util.IntLongMap;
+import util.IntObjectMap;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Where balances and transactions are kept. The services only talk to this interface,
+ * so the same code runs against MySQL (service.SqlLedgerStore) or the local
+ * memory-mapped ledger (ledger.LocalLedgerStore); see service.LedgerStores.
+ *
+ * Mutations are atomic: they either apply in full and return true, or change nothing
+ * and return false (insufficient funds, unknown account, non-positive amount).
+ *
+ * A mutation may carry a request key chosen by the client (null for none). Keys are scoped
+ * to the source account: repeating a key returns the first call's result without moving
+ * money again, and reusing one for a different movement throws RequestKeyConflictException.
+ */
+public interface LedgerStore {
+
+    Account findAccountByUserId(int userId) throws SQLException;
+
+    Account findAccountById(int accountId) throws SQLException;
+
+    // Batch lookups in as few round trips as the store allows; ids with no account are left out
+    IntObjectMap<Account> findAccountsByUserIds(int[] userIds) throws SQLException; // keyed by userId
+
+    IntObjectMap<Account> findAccountsByIds(int[] accountIds) throws SQLException; // keyed by accountId
+
+    // The id of the user's account, created with a zero balance if the user has none yet;
+    // 0 if there is no such user. Called on the write paths that may need a new account
+    // (a deposit, the recipient of a transfer); reads treat a missing account as empty.
+    int provisionAccount(int userId) throws SQLException;
+
+    // The balance after every transaction dated at or before the given time
+    long findBalanceAt(int accountId, LocalDateTime time) throws SQLException;
+
+    boolean deposit(int accountId, long amount, String requestKey) throws SQLException;
+
+    boolean withdraw(int accountId, long amount, String requestKey) throws SQLException;
+
+    boolean transfer(int fromAccountId, int toAccountId, long amount, String requestKey) throws SQLException;
+
+    // Newest first
+    List<Transaction> findTransactions(int accountId) throws SQLException;
+
+    Page<Transaction> findTransactionPage(int accountId, TransactionCursor cursor, int pageSize) throws SQLException;
+
+    // Newest first; the stream may hold resources until it is closed
+    Stream<Transaction> streamTransactions(int accountId) throws SQLException;
+
+    List<Transaction> findAllTransactions() throws SQLException;
+
+    Page<Transaction> findAllTransactionPage(TransactionCursor cursor, int pageSize) throws SQLException;
+
+    Stream<Transaction> streamAllTransactions() throws SQLException;
+
+    // The account's totals per period and kind for periods starting in [from, to), oldest first.
+    // from and to are period starts (see RollupPeriod.start).
+    List<StatementTotal> findStatementTotals(int accountId, RollupPeriod period, LocalDate from, LocalDate to)
+            throws SQLException;
+
+    // The same over every account, summed per period and kind, with accountId 0
+    List<StatementTotal> findBankTotals(RollupPeriod period, LocalDate from, LocalDate to) throws SQLException;
+
+    // Number of transactions touching each account, keyed by accountId; accounts with none are left out
+    IntLongMap countTransactions(int[] accountIds) throws SQLException;
+}
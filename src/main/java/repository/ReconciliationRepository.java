@@ -0,0 +1,68 @@
+package repository;
+
+import model.Money;
+import util.DBConnection;
+import util.ResultSetStream;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+// Reads for the ledger reconciliation, one accountId range at a time. Methods that take a
+// Connection work on the caller's transaction, so a range is read from one consistent view.
+public class ReconciliationRepository {
+    // Amounts come back as whole cents so the scan never builds a BigDecimal per row
+    private static final String FROM_SIDE_SQL = "SELECT fromAccountId,"
+            + " CAST(CASE WHEN type = 'DEPOSIT' THEN amount ELSE -amount END * 100 AS SIGNED)"
+            + " FROM transactions WHERE fromAccountId >= ? AND fromAccountId < ?";
+    private static final String TO_SIDE_SQL = "SELECT toAccountId, CAST(amount * 100 AS SIGNED)"
+            + " FROM transactions WHERE toAccountId >= ? AND toAccountId < ? AND toAccountId <> fromAccountId";
+
+    // Lowest and highest accountId, or null if there are no accounts
+    public int[] findAccountIdRange() throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT MIN(accountId), MAX(accountId) FROM accounts");
+                ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            int min = rs.getInt(1);
+            return rs.wasNull() ? null : new int[] { min, rs.getInt(2) };
+        }
+    }
+
+    // Adds the net effect of every transaction on accounts in [from, to) to net[accountId - from].
+    // Streams both sides of the history by index range; returns the number of rows read.
+    public long sumTransactions(Connection conn, int from, int to, long[] net) throws SQLException {
+        return addDeltas(conn, FROM_SIDE_SQL, from, to, net) + addDeltas(conn, TO_SIDE_SQL, from, to, net);
+    }
+
+    private static long addDeltas(Connection conn, String sql, int from, int to, long[] net) throws SQLException {
+        long rows = 0;
+        try (PreparedStatement stmt = ResultSetStream.prepareStreaming(conn, sql)) {
+            stmt.setInt(1, from);
+            stmt.setInt(2, to);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    net[rs.getInt(1) - from] += rs.getLong(2);
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Visits every account in [from, to) with its stored balance
+    public void readBalances(Connection conn, int from, int to, BalanceSnapshotRepository.BalanceVisitor visitor)
+            throws SQLException {
+        String sql = "SELECT accountId, userId, balance FROM accounts WHERE accountId >= ? AND accountId < ?";
+        try (PreparedStatement stmt = ResultSetStream.prepareStreaming(conn, sql)) {
+            stmt.setInt(1, from);
+            stmt.setInt(2, to);
+            try (ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    visitor.visit(rs.getInt(1), rs.getInt(2), Money.fromDecimal(rs.getBigDecimal(3)));
+                }
+            }
+        }
+    }
+}
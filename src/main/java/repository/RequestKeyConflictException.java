@@ -0,0 +1,12 @@
+package repository;
+
+import model.IdempotencyRecord;
+
+// Thrown when a request key is reused for a different movement than the one it first identified
+public class RequestKeyConflictException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public RequestKeyConflictException(IdempotencyRecord recorded) {
+        super("Request key " + recorded.getRequestKey() + " was already used for: " + recorded);
+    }
+}
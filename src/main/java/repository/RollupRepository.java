@@ -0,0 +1,242 @@
+package repository;
+
+import metrics.Metrics;
+import metrics.SqlTimer;
+import model.Money;
+import model.RollupPeriod;
+import model.StatementTotal;
+import model.Transaction;
+import util.DBConnection;
+import util.IntLongMap;
+import util.SchemaMigrator;
+import util.TransactionManager;
+
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Daily and monthly per-account totals in transaction_rollups, updated in the same database
+// transaction as the transaction rows they count (see TransactionRepository)
+public class RollupRepository {
+    private static final SqlTimer UPSERT = Metrics.sql("rollup.upsert");
+
+    // Rows per upsert statement
+    private static final int UPSERT_ROWS = 500;
+
+    // Accounts per count statement
+    private static final int COUNT_BATCH = 1024;
+
+    private static final String UPSERT_PREFIX = "INSERT INTO transaction_rollups"
+            + " (accountId, period, periodStart, kind, txCount, totalAmount, minAmount, maxAmount) VALUES ";
+    private static final String UPSERT_SUFFIX = " ON DUPLICATE KEY UPDATE"
+            + " txCount = txCount + VALUES(txCount),"
+            + " totalAmount = totalAmount + VALUES(totalAmount),"
+            + " minAmount = LEAST(minAmount, VALUES(minAmount)),"
+            + " maxAmount = GREATEST(maxAmount, VALUES(maxAmount))";
+
+    private static final String ROLLUP_COLUMNS = "accountId, periodStart, kind, txCount, totalAmount, minAmount, maxAmount";
+
+    // Daily rows for transactions dated in [?, ?), both sides of each transfer. The alias is not
+    // "day", which H2 reserves.
+    private static final String REBUILD_DAYS_SQL = "INSERT INTO transaction_rollups"
+            + " (accountId, period, periodStart, kind, txCount, totalAmount, minAmount, maxAmount)"
+            + " SELECT accountId, 'D', periodDay, kind, COUNT(*), SUM(amount), MIN(amount), MAX(amount) FROM ("
+            + "SELECT fromAccountId AS accountId, DATE(dateTime) AS periodDay, amount,"
+            + " CASE type WHEN 'DEPOSIT' THEN 'DEPOSIT' WHEN 'WITHDRAWAL' THEN 'WITHDRAWAL' ELSE 'TRANSFER_OUT' END AS kind"
+            + " FROM transactions WHERE dateTime >= ? AND dateTime < ?"
+            + " UNION ALL "
+            + "SELECT toAccountId, DATE(dateTime), amount, 'TRANSFER_IN'"
+            + " FROM transactions WHERE toAccountId <> fromAccountId AND dateTime >= ? AND dateTime < ?"
+            + ") sides GROUP BY accountId, periodDay, kind";
+
+    // First day of periodStart's month. H2 (the benchmark database) has no DATE_FORMAT; see
+    // also db/migration/h2/V7__transaction_rollups.sql.
+    private static final String MYSQL_MONTH_START = "DATE_FORMAT(periodStart, '%Y-%m-01')";
+    private static final String H2_MONTH_START = "DATE_TRUNC('MONTH', periodStart)";
+
+    // Adds the transactions to their accounts' daily and monthly rows on the caller's connection.
+    // Rows are written in primary key order so concurrent writers lock them in the same order.
+    public void apply(Connection conn, List<Transaction> transactions) throws SQLException {
+        StatementAggregator aggregator = new StatementAggregator(RollupPeriod.DAY, RollupPeriod.MONTH);
+        for (Transaction transaction : transactions) {
+            aggregator.add(transaction);
+        }
+        List<StatementTotal> rows = aggregator.totals();
+        for (int start = 0; start < rows.size(); start += UPSERT_ROWS) {
+            upsert(conn, rows.subList(start, Math.min(rows.size(), start + UPSERT_ROWS)));
+        }
+    }
+
+    private void upsert(Connection conn, List<StatementTotal> rows) throws SQLException {
+        StringBuilder sql = new StringBuilder(UPSERT_PREFIX);
+        for (int i = 0; i < rows.size(); i++) {
+            sql.append(i == 0 ? "" : ", ").append("(?, ?, ?, ?, ?, ?, ?, ?)");
+        }
+        sql.append(UPSERT_SUFFIX);
+
+        try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+            int index = 1;
+            for (StatementTotal row : rows) {
+                stmt.setInt(index++, row.getAccountId());
+                stmt.setString(index++, row.getPeriod().getCode());
+                stmt.setDate(index++, Date.valueOf(row.getPeriodStart()));
+                stmt.setString(index++, row.getKind());
+                stmt.setLong(index++, row.getCount());
+                stmt.setBigDecimal(index++, Money.toDecimal(row.getTotal()));
+                stmt.setBigDecimal(index++, Money.toDecimal(row.getMin()));
+                stmt.setBigDecimal(index++, Money.toDecimal(row.getMax()));
+            }
+            long start = UPSERT.start();
+            stmt.executeUpdate();
+            UPSERT.executed(start);
+        }
+    }
+
+    // The account's buckets with periodStart in [from, to), oldest first
+    public List<StatementTotal> findByAccount(int accountId, RollupPeriod period, LocalDate from, LocalDate to)
+            throws SQLException {
+        String sql = "SELECT " + ROLLUP_COLUMNS + " FROM transaction_rollups"
+                + " WHERE accountId = ? AND period = ? AND periodStart >= ? AND periodStart < ?"
+                + " ORDER BY periodStart, kind";
+
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, accountId);
+            stmt.setString(2, period.getCode());
+            stmt.setDate(3, Date.valueOf(from));
+            stmt.setDate(4, Date.valueOf(to));
+            return readTotals(stmt, period);
+        }
+    }
+
+    // Every account's buckets summed per periodStart and kind, as accountId 0
+    public List<StatementTotal> findBankWide(RollupPeriod period, LocalDate from, LocalDate to) throws SQLException {
+        String sql = "SELECT 0, periodStart, kind, SUM(txCount), SUM(totalAmount), MIN(minAmount), MAX(maxAmount)"
+                + " FROM transaction_rollups WHERE period = ? AND periodStart >= ? AND periodStart < ?"
+                + " GROUP BY periodStart, kind ORDER BY periodStart, kind";
+
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setString(1, period.getCode());
+            stmt.setDate(2, Date.valueOf(from));
+            stmt.setDate(3, Date.valueOf(to));
+            return readTotals(stmt, period);
+        }
+    }
+
+    // Number of transactions touching each account (both sides of a transfer count), from the
+    // monthly rows; accounts with no transactions are left out
+    public IntLongMap countByAccounts(int[] accountIds) throws SQLException {
+        IntLongMap counts = new IntLongMap(accountIds.length);
+        if (accountIds.length == 0) {
+            return counts;
+        }
+        try (Connection conn = DBConnection.getConnection()) {
+            for (int from = 0; from < accountIds.length; from += COUNT_BATCH) {
+                int count = Math.min(COUNT_BATCH, accountIds.length - from);
+                StringBuilder sql = new StringBuilder("SELECT accountId, SUM(txCount) FROM transaction_rollups"
+                        + " WHERE period = 'M' AND accountId IN (");
+                for (int i = 0; i < count; i++) {
+                    sql.append(i == 0 ? "?" : ", ?");
+                }
+                sql.append(") GROUP BY accountId");
+                try (PreparedStatement stmt = conn.prepareStatement(sql.toString())) {
+                    for (int i = 0; i < count; i++) {
+                        stmt.setInt(i + 1, accountIds[from + i]);
+                    }
+                    try (ResultSet rs = stmt.executeQuery()) {
+                        while (rs.next()) {
+                            counts.put(rs.getInt(1), rs.getLong(2));
+                        }
+                    }
+                }
+            }
+        }
+        return counts;
+    }
+
+    // Recomputes every bucket in [from, to) from the transactions table, in one transaction.
+    // Both dates must be first days of a month so the monthly rows cover whole months.
+    // Writers to the range wait for it to commit (or deadlock with it and retry). Returns the
+    // number of rows written.
+    public int rebuild(LocalDate from, LocalDate to) throws SQLException {
+        if (from.getDayOfMonth() != 1 || to.getDayOfMonth() != 1) {
+            throw new IllegalArgumentException("Rollups are rebuilt by whole months: " + from + " to " + to);
+        }
+        return TransactionManager.inTransaction(conn -> {
+            try (PreparedStatement stmt = conn.prepareStatement(
+                    "DELETE FROM transaction_rollups WHERE periodStart >= ? AND periodStart < ?")) {
+                stmt.setDate(1, Date.valueOf(from));
+                stmt.setDate(2, Date.valueOf(to));
+                stmt.executeUpdate();
+            }
+            int rows;
+            try (PreparedStatement stmt = conn.prepareStatement(REBUILD_DAYS_SQL)) {
+                Timestamp start = Timestamp.valueOf(from.atStartOfDay());
+                Timestamp end = Timestamp.valueOf(to.atStartOfDay());
+                stmt.setTimestamp(1, start);
+                stmt.setTimestamp(2, end);
+                stmt.setTimestamp(3, start);
+                stmt.setTimestamp(4, end);
+                rows = stmt.executeUpdate();
+            }
+            String monthStart = "h2".equals(SchemaMigrator.dialectOf(conn)) ? H2_MONTH_START : MYSQL_MONTH_START;
+            try (PreparedStatement stmt = conn.prepareStatement(rebuildMonthsSql(monthStart))) {
+                stmt.setDate(1, Date.valueOf(from));
+                stmt.setDate(2, Date.valueOf(to));
+                rows += stmt.executeUpdate();
+            }
+            return rows;
+        });
+    }
+
+    // Monthly rows from the daily rows with periodStart in [?, ?)
+    private static String rebuildMonthsSql(String monthStart) {
+        return "INSERT INTO transaction_rollups"
+                + " (accountId, period, periodStart, kind, txCount, totalAmount, minAmount, maxAmount)"
+                + " SELECT accountId, 'M', " + monthStart + ", kind,"
+                + " SUM(txCount), SUM(totalAmount), MIN(minAmount), MAX(maxAmount)"
+                + " FROM transaction_rollups WHERE period = 'D' AND periodStart >= ? AND periodStart < ?"
+                + " GROUP BY accountId, " + monthStart + ", kind";
+    }
+
+    // First and last day with transactions, or null if there are none
+    public LocalDate[] findTransactionDateRange() throws SQLException {
+        String sql = "SELECT MIN(dateTime), MAX(dateTime) FROM transactions";
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql);
+                ResultSet rs = stmt.executeQuery()) {
+            rs.next();
+            Timestamp first = rs.getTimestamp(1);
+            Timestamp last = rs.getTimestamp(2);
+            if (first == null) {
+                return null;
+            }
+            return new LocalDate[] { first.toLocalDateTime().toLocalDate(), last.toLocalDateTime().toLocalDate() };
+        }
+    }
+
+    private static List<StatementTotal> readTotals(PreparedStatement stmt, RollupPeriod period) throws SQLException {
+        List<StatementTotal> totals = new ArrayList<>();
+        try (ResultSet rs = stmt.executeQuery()) {
+            while (rs.next()) {
+                totals.add(new StatementTotal(
+                        rs.getInt(1),
+                        period,
+                        rs.getDate(2).toLocalDate(),
+                        rs.getString(3),
+                        rs.getLong(4),
+                        Money.fromDecimal(rs.getBigDecimal(5)),
+                        Money.fromDecimal(rs.getBigDecimal(6)),
+                        Money.fromDecimal(rs.getBigDecimal(7))));
+            }
+        }
+        return totals;
+    }
+}
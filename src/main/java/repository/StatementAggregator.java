@@ -0,0 +1,107 @@
+package repository;
+
+import model.RollupPeriod;
+import model.StatementTotal;
+import model.Transaction;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Folds transactions into per-account, per-period, per-kind totals. Results come out in
+// (accountId, period, periodStart, kind) order, the primary key order of transaction_rollups.
+public class StatementAggregator {
+    private final RollupPeriod[] periods;
+    private final Map<Key, StatementTotal> totals = new TreeMap<>();
+
+    public StatementAggregator(RollupPeriod... periods) {
+        this.periods = periods;
+    }
+
+    // Adds the transaction to each account it touches, once per period
+    public void add(Transaction transaction) {
+        LocalDate date = transaction.getDateTime().toLocalDate();
+        long amount = transaction.getAmount();
+        for (RollupPeriod period : periods) {
+            LocalDate start = period.start(date);
+            add(new StatementTotal(transaction.getFromAccountId(), period, start,
+                    StatementTotal.outgoingKind(transaction.getType()), 1, amount, amount, amount));
+            if (transaction.getToAccountId() != transaction.getFromAccountId()) {
+                add(new StatementTotal(transaction.getToAccountId(), period, start,
+                        StatementTotal.TRANSFER_IN, 1, amount, amount, amount));
+            }
+        }
+    }
+
+    public void add(StatementTotal total) {
+        Key key = new Key(total.getAccountId(), total.getPeriod(), total.getPeriodStart(), total.getKind());
+        totals.merge(key, total, StatementTotal::plus);
+    }
+
+    public boolean isEmpty() {
+        return totals.isEmpty();
+    }
+
+    public List<StatementTotal> totals() {
+        return new ArrayList<>(totals.values());
+    }
+
+    public List<StatementTotal> totalsFor(int accountId) {
+        List<StatementTotal> result = new ArrayList<>();
+        for (StatementTotal total : totals.values()) {
+            if (total.getAccountId() == accountId) {
+                result.add(total);
+            }
+        }
+        return result;
+    }
+
+    // Every account's totals summed per period and kind, as accountId 0
+    public List<StatementTotal> bankTotals() {
+        StatementAggregator bank = new StatementAggregator(periods);
+        for (StatementTotal total : totals.values()) {
+            bank.add(new StatementTotal(0, total.getPeriod(), total.getPeriodStart(), total.getKind(),
+                    total.getCount(), total.getTotal(), total.getMin(), total.getMax()));
+        }
+        return bank.totals();
+    }
+
+    private static final class Key implements Comparable<Key> {
+        final int accountId;
+        final RollupPeriod period;
+        final LocalDate periodStart;
+        final String kind;
+
+        Key(int accountId, RollupPeriod period, LocalDate periodStart, String kind) {
+            this.accountId = accountId;
+            this.period = period;
+            this.periodStart = periodStart;
+            this.kind = kind;
+        }
+
+        @Override
+        public int compareTo(Key other) {
+            int order = Integer.compare(accountId, other.accountId);
+            if (order == 0) {
+                // Sorts as the stored codes do, 'D' before 'M'
+                order = period.getCode().compareTo(other.period.getCode());
+            }
+            if (order == 0) {
+                order = periodStart.compareTo(other.periodStart);
+            }
+            return order != 0 ? order : kind.compareTo(other.kind);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && compareTo((Key) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((accountId * 31 + period.hashCode()) * 31 + periodStart.hashCode()) * 31 + kind.hashCode();
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package repository;
+
+import util.CommitHook;
+import util.DBConnection;
+import util.SqlWork;
+import util.TransactionManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Group commit for money movements. Each caller hands over its whole unit of work (balance
+ * updates, the transaction row and its rollups, its request key) and waits. A single writer
+ * runs the queued units one after another on one connection, each behind its own savepoint,
+ * and commits them together, so many movements share one commit and its log flush. A caller
+ * is answered only once the commit holding its unit has succeeded: balances and their ledger
+ * rows always commit together, and nothing acknowledged can be lost.
+ *
+ * A unit that fails is rolled back to its savepoint and only its caller gets the error. If
+ * the database aborts the shared transaction (deadlock with another process) or the commit
+ * fails, every unit of the group fails and nothing of it is committed; the callers' retry
+ * loops (see service.TransferEngine) run them again.
+ */
+public class TransactionJournal implements AutoCloseable {
+    private final BlockingQueue<Unit<?>> queue;
+    private final int batchSize;
+    private final long flushIntervalMillis;
+    private final long offerTimeoutMillis;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    private final LongAdder appendedCount = new LongAdder();
+    private final LongAdder writtenCount = new LongAdder();
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder failedCount = new LongAdder();
+
+    public TransactionJournal(int capacity, int batchSize, long flushIntervalMillis, long offerTimeoutMillis) {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.offerTimeoutMillis = offerTimeoutMillis;
+        this.writer = new Thread(this::runWriter, "transaction-journal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    // Runs the work in the next group and returns its result once the group has committed.
+    // The unit's commit hooks run on the calling thread after that.
+    public <T> T execute(SqlWork<T> work) throws SQLException {
+        Unit<T> unit = new Unit<>(work);
+        enqueue(unit);
+        T result = await(unit.done);
+        TransactionManager.runCommitHooks(unit.hooks);
+        return result;
+    }
+
+    private void enqueue(Unit<?> unit) throws SQLException {
+        if (closed) {
+            throw new SQLException("Transaction journal is closed.");
+        }
+        try {
+            // A full queue means the database is not keeping up; make the caller wait rather than grow without bound
+            if (!queue.offer(unit, offerTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new SQLException("Transaction journal is full (" + queue.size() + " units pending).");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while queueing a unit of work.", e);
+        }
+        appendedCount.increment();
+    }
+
+    // Waits without a timeout: once queued, a unit may still commit, so the caller must not
+    // give up and report a failure that did not happen
+    private static <T> T await(CompletableFuture<T> done) throws SQLException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return done.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException("Unit of work failed.", cause);
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void runWriter() {
+        List<Unit<?>> batch = new ArrayList<>(batchSize);
+        while (!closed || !queue.isEmpty()) {
+            try {
+                Unit<?> first = queue.poll(flushIntervalMillis, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // Wait briefly for more units to share the commit, unless the group is already full
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+                while (batch.size() < batchSize && !closed) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Unit<?> next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                queue.drainTo(batch, batchSize - batch.size());
+                commitGroup(batch);
+            } catch (InterruptedException e) {
+                // Only close() interrupts the writer, after the queue has drained or timed out
+                Thread.currentThread().interrupt();
+                failAll(batch, new SQLException("Transaction journal is closed."));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commitGroup(List<Unit<?>> batch) {
+        List<Unit<?>> succeeded = new ArrayList<>(batch.size());
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                for (Unit<?> unit : batch) {
+                    try {
+                        unit.run(conn);
+                        succeeded.add(unit);
+                    } catch (SQLException e) {
+                        if (abortsTransaction(e)) {
+                            // The database rolled the whole group back; every unit has to run again
+                            throw e;
+                        }
+                        unit.fail(e);
+                    } catch (RuntimeException e) {
+                        unit.fail(e);
+                    }
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rollbackFailure) {
+                    e.addSuppressed(rollbackFailure);
+                }
+                throw e;
+            }
+        } catch (SQLException e) {
+            // Nothing of this group committed, including the units that had run without error. A
+            // deadlock keeps its 40xxx state, so their callers retry them.
+            failAll(batch, e);
+            return;
+        }
+
+        for (Unit<?> unit : succeeded) {
+            unit.commit();
+        }
+        writtenCount.add(succeeded.size());
+        failedCount.add(batch.size() - succeeded.size());
+        batchCount.increment();
+    }
+
+    private void failAll(List<Unit<?>> batch, Exception failure) {
+        for (Unit<?> unit : batch) {
+            unit.fail(failure);
+        }
+        failedCount.add(batch.size());
+    }
+
+    // A deadlock or serialization failure rolls back the whole transaction, not just the statement
+    private static boolean abortsTransaction(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            String state = current.getSQLState();
+            if (current instanceof SQLTransactionRollbackException || (state != null && state.startsWith("40"))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Stops accepting units and waits for everything already queued to commit
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(30));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (writer.isAlive()) {
+            System.err.println("Transaction journal did not drain within 30 s; " + queue.size() + " units pending.");
+            writer.interrupt();
+            try {
+                writer.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Units still queued never ran, so their callers can safely retry them
+        List<Unit<?>> stranded = new ArrayList<>();
+        queue.drainTo(stranded);
+        failAll(stranded, new SQLException("Transaction journal is closed."));
+    }
+
+    public int getPendingCount() {
+        return queue.size();
+    }
+
+    public long getAppendedCount() {
+        return appendedCount.sum();
+    }
+
+    public long getWrittenCount() {
+        return writtenCount.sum();
+    }
+
+    public long getBatchCount() {
+        return batchCount.sum();
+    }
+
+    public long getFailedCount() {
+        return failedCount.sum();
+    }
+
+    private static final class Unit<T> {
+        final SqlWork<T> work;
+        final CompletableFuture<T> done = new CompletableFuture<>();
+        final List<CommitHook> hooks = new ArrayList<>();
+        T result;
+
+        Unit(SqlWork<T> work) {
+            this.work = work;
+        }
+
+        void run(Connection conn) throws SQLException {
+            result = TransactionManager.inSavepoint(conn, work, hooks);
+        }
+
+        void commit() {
+            done.complete(result);
+        }
+
+        void fail(Exception failure) {
+            done.completeExceptionally(failure);
+        }
+    }
+}
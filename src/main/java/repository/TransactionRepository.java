@@ -1,47 +1,159 @@
 package repository;
 
+import metrics.Metrics;
+import metrics.SqlTimer;
+import model.Money;
+import model.Page;
 import model.Transaction;
+import model.TransactionCursor;
 import util.DBConnection;
+import util.ResultSetStream;
+import util.RowMapper;
+import util.SqlWork;
+import util.TransactionManager;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.stream.Stream;
 
 public class TransactionRepository {
+    // Columns in the order TRANSACTION_MAPPER reads them by index
+    static final String TRANSACTION_COLUMNS = "transactionId, fromAccountId, toAccountId, amount, dateTime, type";
+    static final RowMapper<Transaction> TRANSACTION_MAPPER = rs -> new Transaction(
+            rs.getInt(1),
+            rs.getInt(2),
+            rs.getInt(3),
+            Money.fromDecimal(rs.getBigDecimal(4)),
+            rs.getTimestamp(5).toLocalDateTime(),
+            rs.getString(6));
+
+    // Rows strictly after the cursor in (dateTime DESC, transactionId DESC) order
+    private static final String KEYSET_CONDITION = "(dateTime < ? OR (dateTime = ? AND transactionId < ?))";
+    private static final String NEWEST_FIRST = " ORDER BY dateTime DESC, transactionId DESC";
+
+    // An account's history as two index range scans instead of an OR that defeats both indexes.
+    // Deposits and withdrawals have fromAccountId = toAccountId and come from the first side only.
+    private static final String HISTORY_SQL = "SELECT " + TRANSACTION_COLUMNS + " FROM transactions WHERE fromAccountId = ?"
+            + " UNION ALL "
+            + "SELECT " + TRANSACTION_COLUMNS + " FROM transactions WHERE toAccountId = ? AND fromAccountId <> ?";
+
+    // Built once so each variant is a single cached statement per connection
+    private static final String HISTORY_PAGE_SQL = historyPageSql("");
+    private static final String HISTORY_PAGE_AFTER_SQL = historyPageSql(" AND " + KEYSET_CONDITION);
+    private static final String PAGE_SQL = "SELECT " + TRANSACTION_COLUMNS + " FROM transactions"
+            + NEWEST_FIRST + " LIMIT ?";
+    private static final String PAGE_AFTER_SQL = "SELECT " + TRANSACTION_COLUMNS + " FROM transactions WHERE "
+            + KEYSET_CONDITION + NEWEST_FIRST + " LIMIT ?";
+
+    private static final SqlTimer INSERT = Metrics.sql("transaction.insert");
+    private static final SqlTimer INSERT_BATCH = Metrics.sql("transaction.insertBatch");
+    private static final SqlTimer HISTORY_PAGE = Metrics.sql("transaction.historyPage");
+    private static final SqlTimer PAGE = Metrics.sql("transaction.page");
+
+    private static final String INSERT_SQL =
+            "INSERT INTO transactions (fromAccountId, toAccountId, amount, dateTime, type) VALUES (?, ?, ?, ?, ?)";
+
+    // Group commit is off unless bank.journal.mode is set to group (see TransactionJournal)
+    private static final String JOURNAL_MODE = System.getProperty("bank.journal.mode", "off");
+    private static volatile TransactionJournal journal;
+
+    private final RollupRepository rollupRepository = new RollupRepository();
 
     public void create(Transaction transaction) throws SQLException {
-        String sql = "INSERT INTO transactions (fromAccountId, toAccountId, amount, dateTime, type) VALUES (?, ?, ?, ?, ?)";
-        try (Connection conn = DBConnection.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+        inUnitOfWork(conn -> {
+            insert(conn, transaction);
+            return null;
+        });
+    }
+
+    // Records the transaction as part of the caller's unit of work, so the row commits (or rolls
+    // back) together with the balance change it describes
+    public void create(Connection conn, Transaction transaction) throws SQLException {
+        insert(conn, transaction);
+    }
+
+    // Runs a money movement in its own database transaction, or as one unit of the next group
+    // commit when the journal is enabled. Either way it returns only once the work has committed.
+    public static <T> T inUnitOfWork(SqlWork<T> work) throws SQLException {
+        TransactionJournal current = getJournal();
+        return current == null ? TransactionManager.inTransaction(work) : current.execute(work);
+    }
 
-            stmt.setInt(1, transaction.getFromAccountId());
-            stmt.setInt(2, transaction.getToAccountId());
-            stmt.setDouble(3, transaction.getAmount());
-            stmt.setTimestamp(4, Timestamp.valueOf(transaction.getDateTime()));
-            stmt.setString(5, transaction.getType());
+    // The row and its rollups go in together, so the connection must not be in auto-commit
+    private void insert(Connection conn, Transaction transaction) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            bindInsert(stmt, transaction);
+            long start = INSERT.start();
             stmt.executeUpdate();
+            INSERT.executed(start);
         }
+        rollupRepository.apply(conn, Collections.singletonList(transaction));
+    }
+
+    // Inserts many records with one JDBC batch and updates their rollups; the caller controls the transaction
+    public void insertBatch(Connection conn, List<Transaction> transactions) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement(INSERT_SQL)) {
+            for (Transaction transaction : transactions) {
+                bindInsert(stmt, transaction);
+                stmt.addBatch();
+            }
+            long start = INSERT_BATCH.start();
+            stmt.executeBatch();
+            INSERT_BATCH.executed(start);
+        }
+        rollupRepository.apply(conn, transactions);
+    }
+
+    private static void bindInsert(PreparedStatement stmt, Transaction transaction) throws SQLException {
+        stmt.setInt(1, transaction.getFromAccountId());
+        stmt.setInt(2, transaction.getToAccountId());
+        stmt.setBigDecimal(3, Money.toDecimal(transaction.getAmount()));
+        stmt.setTimestamp(4, Timestamp.valueOf(transaction.getDateTime()));
+        stmt.setString(5, transaction.getType());
+    }
+
+    public static TransactionJournal getJournal() {
+        if ("off".equalsIgnoreCase(JOURNAL_MODE)) {
+            return null;
+        }
+        TransactionJournal current = journal;
+        if (current == null) {
+            synchronized (TransactionRepository.class) {
+                current = journal;
+                if (current == null) {
+                    // "durable" is the former name of group commit. The former "async" mode
+                    // acknowledged movements before their rows were written and is gone.
+                    if (!"group".equalsIgnoreCase(JOURNAL_MODE) && !"durable".equalsIgnoreCase(JOURNAL_MODE)) {
+                        throw new IllegalArgumentException("Unknown bank.journal.mode: " + JOURNAL_MODE
+                                + " (use off or group)");
+                    }
+                    current = new TransactionJournal(
+                            Integer.getInteger("bank.journal.capacity", 10_000),
+                            Integer.getInteger("bank.journal.batchSize", 500),
+                            Long.getLong("bank.journal.flushIntervalMs", 20),
+                            Long.getLong("bank.journal.offerTimeoutMs", 5_000));
+                    DBConnection.beforeShutdown(current::close);
+                    journal = current;
+                }
+            }
+        }
+        return current;
     }
 
     public List<Transaction> findByAccountId(int accountId) throws SQLException {
         List<Transaction> transactions = new ArrayList<>();
-        String sql = "SELECT * FROM transactions WHERE fromAccountId = ? OR toAccountId = ? ORDER BY dateTime DESC";
+        String sql = HISTORY_SQL + NEWEST_FIRST;
 
         try (Connection conn = DBConnection.getConnection();
                 PreparedStatement stmt = conn.prepareStatement(sql)) {
 
-            stmt.setInt(1, accountId);
-            stmt.setInt(2, accountId);
+            bindHistory(stmt, accountId);
             ResultSet rs = stmt.executeQuery();
 
             while (rs.next()) {
-                transactions.add(new Transaction(
-                        rs.getInt("transactionId"),
-                        rs.getInt("fromAccountId"),
-                        rs.getInt("toAccountId"),
-                        rs.getDouble("amount"),
-                        rs.getTimestamp("dateTime").toLocalDateTime(),
-                        rs.getString("type")));
+                transactions.add(TRANSACTION_MAPPER.map(rs));
             }
         }
         return transactions;
@@ -49,22 +161,136 @@ public class TransactionRepository {
 
     public List<Transaction> findAll() throws SQLException {
         List<Transaction> transactions = new ArrayList<>();
-        String sql = "SELECT * FROM transactions ORDER BY dateTime DESC";
+        String sql = "SELECT " + TRANSACTION_COLUMNS + " FROM transactions ORDER BY dateTime DESC";
 
         try (Connection conn = DBConnection.getConnection();
                 Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery(sql)) {
 
             while (rs.next()) {
-                transactions.add(new Transaction(
-                        rs.getInt("transactionId"),
-                        rs.getInt("fromAccountId"),
-                        rs.getInt("toAccountId"),
-                        rs.getDouble("amount"),
-                        rs.getTimestamp("dateTime").toLocalDateTime(),
-                        rs.getString("type")));
+                transactions.add(TRANSACTION_MAPPER.map(rs));
             }
         }
         return transactions;
     }
-}
\ No newline at end of file
+
+    // Newest-first page of an account's history, starting after the cursor (or from the newest row if null)
+    public Page<Transaction> findPageByAccountId(int accountId, TransactionCursor cursor, int pageSize)
+            throws SQLException {
+        try (Connection conn = HISTORY_PAGE.acquire();
+                PreparedStatement stmt = conn.prepareStatement(cursor == null ? HISTORY_PAGE_SQL : HISTORY_PAGE_AFTER_SQL)) {
+
+            int index = 1;
+            stmt.setInt(index++, accountId);
+            index = bindCursor(stmt, index, cursor);
+            stmt.setInt(index++, pageSize + 1);
+            stmt.setInt(index++, accountId);
+            stmt.setInt(index++, accountId);
+            index = bindCursor(stmt, index, cursor);
+            stmt.setInt(index++, pageSize + 1);
+            stmt.setInt(index, pageSize + 1);
+            return readPage(stmt, pageSize, HISTORY_PAGE);
+        }
+    }
+
+    public Page<Transaction> findPage(TransactionCursor cursor, int pageSize) throws SQLException {
+        try (Connection conn = PAGE.acquire();
+                PreparedStatement stmt = conn.prepareStatement(cursor == null ? PAGE_SQL : PAGE_AFTER_SQL)) {
+
+            int index = bindCursor(stmt, 1, cursor);
+            stmt.setInt(index, pageSize + 1);
+            return readPage(stmt, pageSize, PAGE);
+        }
+    }
+
+    // Lazily streams an account's full history, newest first. The stream holds a pooled
+    // connection until it is closed, so always use it in try-with-resources.
+    public Stream<Transaction> streamByAccountId(int accountId) throws SQLException {
+        String sql = HISTORY_SQL + NEWEST_FIRST;
+        Connection conn = DBConnection.getConnection();
+        PreparedStatement stmt = null;
+        try {
+            stmt = ResultSetStream.prepareStreaming(conn, sql);
+            bindHistory(stmt, accountId);
+        } catch (SQLException e) {
+            closeOnFailure(conn, stmt, e);
+            throw e;
+        }
+        return ResultSetStream.of(conn, stmt, TRANSACTION_MAPPER);
+    }
+
+    public Stream<Transaction> streamAll() throws SQLException {
+        String sql = "SELECT " + TRANSACTION_COLUMNS + " FROM transactions" + NEWEST_FIRST;
+        Connection conn = DBConnection.getConnection();
+        PreparedStatement stmt;
+        try {
+            stmt = ResultSetStream.prepareStreaming(conn, sql);
+        } catch (SQLException e) {
+            closeOnFailure(conn, null, e);
+            throw e;
+        }
+        return ResultSetStream.of(conn, stmt, TRANSACTION_MAPPER);
+    }
+
+    private static void bindHistory(PreparedStatement stmt, int accountId) throws SQLException {
+        stmt.setInt(1, accountId);
+        stmt.setInt(2, accountId);
+        stmt.setInt(3, accountId);
+    }
+
+    private static int bindCursor(PreparedStatement stmt, int index, TransactionCursor cursor) throws SQLException {
+        if (cursor == null) {
+            return index;
+        }
+        Timestamp dateTime = Timestamp.valueOf(cursor.getDateTime());
+        stmt.setTimestamp(index++, dateTime);
+        stmt.setTimestamp(index++, dateTime);
+        stmt.setInt(index++, cursor.getTransactionId());
+        return index;
+    }
+
+    // The query asked for one row more than the page size; its presence means there is a next page
+    private static Page<Transaction> readPage(PreparedStatement stmt, int pageSize, SqlTimer timer)
+            throws SQLException {
+        List<Transaction> transactions = new ArrayList<>(pageSize);
+        boolean hasMore = false;
+        long start = timer.start();
+        try (ResultSet rs = stmt.executeQuery()) {
+            long executed = timer.executed(start);
+            while (rs.next()) {
+                if (transactions.size() == pageSize) {
+                    hasMore = true;
+                    break;
+                }
+                transactions.add(TRANSACTION_MAPPER.map(rs));
+            }
+            timer.fetched(executed);
+        }
+        TransactionCursor next = hasMore ? TransactionCursor.after(transactions.get(transactions.size() - 1)) : null;
+        return new Page<>(transactions, next);
+    }
+
+    // Each side of the UNION is limited on its own, so both index scans stop after one page
+    private static String historyPageSql(String keyset) {
+        return "(SELECT " + TRANSACTION_COLUMNS + " FROM transactions WHERE fromAccountId = ?" + keyset
+                + NEWEST_FIRST + " LIMIT ?)"
+                + " UNION ALL "
+                + "(SELECT " + TRANSACTION_COLUMNS + " FROM transactions WHERE toAccountId = ? AND fromAccountId <> ?"
+                + keyset + NEWEST_FIRST + " LIMIT ?)"
+                + NEWEST_FIRST + " LIMIT ?";
+    }
+
+    private static void closeOnFailure(Connection conn, PreparedStatement stmt, SQLException cause) {
+        try {
+            try {
+                if (stmt != null) {
+                    stmt.close();
+                }
+            } finally {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+}
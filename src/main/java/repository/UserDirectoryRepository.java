@@ -0,0 +1,203 @@
+package repository;
+
+import metrics.Metrics;
+import metrics.SqlTimer;
+import model.DirectoryCursor;
+import model.DirectoryPage;
+import model.DirectoryQuery;
+import model.Money;
+import model.UserSort;
+import model.UserSummary;
+import util.DBConnection;
+import util.ResultSetStream;
+import util.RowMapper;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The admin user directory: users joined with their account's balance and transaction count,
+ * filtered, sorted and paged in the database so a listing never loads the whole user table.
+ * Transaction counts are summed from the monthly rows of transaction_rollups (both sides of
+ * a transfer are counted there), a primary key range per account instead of a scan of its history.
+ *
+ * With joinAccounts false only the users table is read and the account columns come back as
+ * zero; the caller fills them in from a ledger that does not live in MySQL.
+ */
+public class UserDirectoryRepository {
+    private static final SqlTimer PAGE = Metrics.sql("user.directoryPage");
+
+    private static final String SELECT_JOINED = "SELECT u.userId, u.username, u.role,"
+            + " COALESCE(a.accountId, 0), COALESCE(a.balance, 0),"
+            + " COALESCE((SELECT SUM(r.txCount) FROM transaction_rollups r"
+            + " WHERE r.accountId = a.accountId AND r.period = 'M'), 0)"
+            + " FROM users u LEFT JOIN accounts a ON a.userId = u.userId";
+    private static final String SELECT_USERS = "SELECT u.userId, u.username, u.role, 0, 0, 0 FROM users u";
+    private static final String BALANCE = "COALESCE(a.balance, 0)";
+
+    // LIKE wildcards in a prefix are matched literally, escaped with this character
+    private static final char LIKE_ESCAPE = '!';
+
+    private static final RowMapper<UserSummary> SUMMARY_MAPPER = rs -> new UserSummary(
+            rs.getInt(1),
+            rs.getString(2),
+            rs.getString(3),
+            rs.getInt(4),
+            Money.fromDecimal(rs.getBigDecimal(5)),
+            rs.getLong(6));
+
+    private final boolean joinAccounts;
+
+    public UserDirectoryRepository(boolean joinAccounts) {
+        this.joinAccounts = joinAccounts;
+    }
+
+    // One page in the query's order, starting after the cursor (or from the first row if null)
+    public DirectoryPage findPage(DirectoryQuery query, DirectoryCursor cursor, int pageSize) throws SQLException {
+        try (Connection conn = PAGE.acquire();
+                PreparedStatement stmt = conn.prepareStatement(sql(query, cursor) + " LIMIT ?")) {
+
+            int index = bind(stmt, query, cursor);
+            stmt.setInt(index, pageSize + 1);
+
+            // The query asked for one row more than the page size; its presence means there is a next page
+            List<UserSummary> users = new ArrayList<>(pageSize);
+            boolean hasMore = false;
+            long start = PAGE.start();
+            try (ResultSet rs = stmt.executeQuery()) {
+                long executed = PAGE.executed(start);
+                while (rs.next()) {
+                    if (users.size() == pageSize) {
+                        hasMore = true;
+                        break;
+                    }
+                    users.add(SUMMARY_MAPPER.map(rs));
+                }
+                PAGE.fetched(executed);
+            }
+            DirectoryCursor next = hasMore ? DirectoryCursor.after(users.get(users.size() - 1)) : null;
+            return new DirectoryPage(users, next);
+        }
+    }
+
+    // Lazily streams every matching user in the query's order. The stream holds a pooled
+    // connection until it is closed, so always use it in try-with-resources.
+    public Stream<UserSummary> stream(DirectoryQuery query) throws SQLException {
+        Connection conn = DBConnection.getConnection();
+        PreparedStatement stmt = null;
+        try {
+            stmt = ResultSetStream.prepareStreaming(conn, sql(query, null));
+            bind(stmt, query, null);
+        } catch (SQLException e) {
+            closeOnFailure(conn, stmt, e);
+            throw e;
+        }
+        return ResultSetStream.of(conn, stmt, SUMMARY_MAPPER);
+    }
+
+    // A handful of distinct texts (sort x filters x cursor), so they stay in the statement cache
+    private String sql(DirectoryQuery query, DirectoryCursor cursor) {
+        StringBuilder sql = new StringBuilder(joinAccounts ? SELECT_JOINED : SELECT_USERS);
+        List<String> conditions = new ArrayList<>(3);
+        if (query.getUsernamePrefix() != null) {
+            conditions.add("u.username LIKE ? ESCAPE '" + LIKE_ESCAPE + "'");
+        }
+        if (query.getRole() != null) {
+            conditions.add("u.role = ?");
+        }
+        if (cursor != null) {
+            conditions.add(keyset(query.getSort()));
+        }
+        for (int i = 0; i < conditions.size(); i++) {
+            sql.append(i == 0 ? " WHERE " : " AND ").append(conditions.get(i));
+        }
+        return sql.append(orderBy(query.getSort())).toString();
+    }
+
+    private String keyset(UserSort sort) {
+        switch (sort) {
+            case USERNAME:
+                return "u.username > ?";
+            case USER_ID:
+                return "u.userId > ?";
+            default:
+                return "(" + balance() + " < ? OR (" + balance() + " = ? AND u.userId > ?))";
+        }
+    }
+
+    // Username and userId orders are read off the users indexes; the balance order is computed
+    // over the outer join, so it sorts every matching user
+    private String orderBy(UserSort sort) {
+        switch (sort) {
+            case USERNAME:
+                return " ORDER BY u.username";
+            case USER_ID:
+                return " ORDER BY u.userId";
+            default:
+                return " ORDER BY " + balance() + " DESC, u.userId";
+        }
+    }
+
+    private String balance() {
+        if (!joinAccounts) {
+            throw new IllegalArgumentException("Sorting by balance needs the accounts table (bank.storage=mysql)");
+        }
+        return BALANCE;
+    }
+
+    private static int bind(PreparedStatement stmt, DirectoryQuery query, DirectoryCursor cursor) throws SQLException {
+        int index = 1;
+        if (query.getUsernamePrefix() != null) {
+            stmt.setString(index++, escapeLike(query.getUsernamePrefix()) + "%");
+        }
+        if (query.getRole() != null) {
+            stmt.setString(index++, query.getRole());
+        }
+        if (cursor != null) {
+            switch (query.getSort()) {
+                case USERNAME:
+                    stmt.setString(index++, cursor.getUsername());
+                    break;
+                case USER_ID:
+                    stmt.setInt(index++, cursor.getUserId());
+                    break;
+                default:
+                    stmt.setBigDecimal(index++, Money.toDecimal(cursor.getBalance()));
+                    stmt.setBigDecimal(index++, Money.toDecimal(cursor.getBalance()));
+                    stmt.setInt(index++, cursor.getUserId());
+            }
+        }
+        return index;
+    }
+
+    static String escapeLike(String text) {
+        StringBuilder escaped = new StringBuilder(text.length() + 4);
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private static void closeOnFailure(Connection conn, PreparedStatement stmt, SQLException cause) {
+        try {
+            try {
+                if (stmt != null) {
+                    stmt.close();
+                }
+            } finally {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+}
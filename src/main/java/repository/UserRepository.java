@@ -1,31 +1,45 @@
 package repository;
 
+import metrics.Metrics;
+import metrics.SqlTimer;
 import model.User;
 import util.DBConnection;
+import util.ResultSetStream;
+import util.RowMapper;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 public class UserRepository {
+    private static final SqlTimer FIND_BY_USERNAME = Metrics.sql("user.findByUsername");
+
+    private static final UsernameIndex INDEX = UsernameIndex.getInstance();
+
+    // Columns in the order USER_MAPPER reads them by index
+    static final String USER_COLUMNS = "userId, username, password, role";
+    static final RowMapper<User> USER_MAPPER = rs -> new User(
+            rs.getInt(1),
+            rs.getString(2),
+            rs.getString(3),
+            rs.getString(4));
+
+    private static final String FIND_BY_USERNAME_SQL = "SELECT " + USER_COLUMNS + " FROM users WHERE username = ?";
 
     public User findByUsername(String username) throws SQLException {
-        String sql = "SELECT * FROM users WHERE username = ?";
-        try (Connection conn = DBConnection.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(sql)) {
+        try (Connection conn = FIND_BY_USERNAME.acquire();
+                PreparedStatement stmt = conn.prepareStatement(FIND_BY_USERNAME_SQL)) {
 
             stmt.setString(1, username);
+            long start = FIND_BY_USERNAME.start();
             ResultSet rs = stmt.executeQuery();
+            long executed = FIND_BY_USERNAME.executed(start);
 
-            if (rs.next()) {
-                return new User(
-                        rs.getInt("userId"),
-                        rs.getString("username"),
-                        rs.getString("password"),
-                        rs.getString("role"));
-            }
+            User user = rs.next() ? USER_MAPPER.map(rs) : null;
+            FIND_BY_USERNAME.fetched(executed);
+            return user;
         }
-        return null;
     }
 
     public int create(User user) throws SQLException {
@@ -41,12 +55,25 @@ public class UserRepository {
             // Get the generated user ID
             ResultSet rs = stmt.getGeneratedKeys();
             if (rs.next()) {
-                return rs.getInt(1);
+                int userId = rs.getInt(1);
+                INDEX.put(userId, user.getUsername());
+                return userId;
             }
         }
         return -1; // Return -1 if no ID was generated (should not happen)
     }
 
+    public boolean exists(int userId) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT 1 FROM users WHERE userId = ?")) {
+
+            stmt.setInt(1, userId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
     public void update(User user) throws SQLException {
         String sql = "UPDATE users SET username = ?, password = ?, role = ? WHERE userId = ?";
         try (Connection conn = DBConnection.getConnection();
@@ -56,7 +83,23 @@ public class UserRepository {
             stmt.setString(2, user.getPassword());
             stmt.setString(3, user.getRole());
             stmt.setInt(4, user.getUserId());
-            stmt.executeUpdate();
+            if (stmt.executeUpdate() == 1) {
+                INDEX.put(user.getUserId(), user.getUsername());
+            }
+        }
+    }
+
+    // Replaces the stored hash only if it is still the one that was verified, so a rehash
+    // at login cannot overwrite a password that was changed in the meantime
+    public boolean updatePassword(int userId, String oldPassword, String newPassword) throws SQLException {
+        String sql = "UPDATE users SET password = ? WHERE userId = ? AND password = ?";
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)) {
+
+            stmt.setString(1, newPassword);
+            stmt.setInt(2, userId);
+            stmt.setString(3, oldPassword);
+            return stmt.executeUpdate() == 1;
         }
     }
 
@@ -68,24 +111,67 @@ public class UserRepository {
             stmt.setInt(1, userId);
             stmt.executeUpdate();
         }
+        INDEX.remove(userId);
     }
 
     public List<User> findAll() throws SQLException {
         List<User> users = new ArrayList<>();
-        String sql = "SELECT * FROM users";
+        String sql = "SELECT " + USER_COLUMNS + " FROM users";
 
         try (Connection conn = DBConnection.getConnection();
                 Statement stmt = conn.createStatement();
                 ResultSet rs = stmt.executeQuery(sql)) {
 
             while (rs.next()) {
-                users.add(new User(
-                        rs.getInt("userId"),
-                        rs.getString("username"),
-                        rs.getString("password"),
-                        rs.getString("role")));
+                users.add(USER_MAPPER.map(rs));
             }
         }
         return users;
     }
-}
\ No newline at end of file
+
+    // The id of the user with this username from the in-memory index, or 0; no database access
+    // once the index is loaded
+    public int findUserId(String username) throws SQLException {
+        ensureIndexLoaded();
+        return INDEX.find(username);
+    }
+
+    // Up to limit usernames starting with prefix, in order, from the in-memory index
+    public List<String> completeUsername(String prefix, int limit) throws SQLException {
+        ensureIndexLoaded();
+        return INDEX.complete(prefix, limit);
+    }
+
+    private static void ensureIndexLoaded() throws SQLException {
+        if (!INDEX.isLoaded()) {
+            synchronized (INDEX) {
+                if (!INDEX.isLoaded()) {
+                    loadIndex();
+                }
+            }
+        }
+    }
+
+    // (Re)loads the username index from the users table, streaming the rows. Holds the index's
+    // lock throughout, so a user written meanwhile is applied to the index after the load.
+    public static void loadIndex() throws SQLException {
+        synchronized (INDEX) {
+            String[] usernames = new String[1024];
+            int[] userIds = new int[1024];
+            int count = 0;
+            try (Connection conn = DBConnection.getConnection();
+                    PreparedStatement stmt = ResultSetStream.prepareStreaming(conn, "SELECT userId, username FROM users");
+                    ResultSet rs = stmt.executeQuery()) {
+                while (rs.next()) {
+                    if (count == userIds.length) {
+                        usernames = Arrays.copyOf(usernames, count << 1);
+                        userIds = Arrays.copyOf(userIds, count << 1);
+                    }
+                    userIds[count] = rs.getInt(1);
+                    usernames[count++] = rs.getString(2);
+                }
+            }
+            INDEX.load(Arrays.copyOf(usernames, count), Arrays.copyOf(userIds, count));
+        }
+    }
+}
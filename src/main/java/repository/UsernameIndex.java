@@ -0,0 +1,233 @@
+package repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Process-wide in-memory index of usernames to userIds, for exact lookups and prefix search
+ * without a database round trip. Kept in sync by UserRepository's create, update and delete
+ * and loaded from the users table on first use (see UserRepository.loadIndex).
+ *
+ * The index is an immutable snapshot of three packed arrays: every username's UTF-8 bytes
+ * concatenated in sorted order, the start offset of each, and the userIds. With n users whose
+ * names average L bytes that is n * (L + 8) bytes plus three array headers, no object per
+ * user: about 18 MB per million users of 10 characters. Readers binary search whichever
+ * snapshot is current without locking. A write copies the arrays into a new snapshot and
+ * publishes it (copy-on-write), so it costs O(n) and briefly holds two snapshots; users are
+ * added far less often than they are looked up.
+ *
+ * Names are ordered and matched ignoring ASCII case, as the users.username column does.
+ * Changes made by other processes (another server, tools.BulkLoad) are only seen after the
+ * index is loaded again.
+ */
+public class UsernameIndex {
+    private static final UsernameIndex INSTANCE = new UsernameIndex();
+
+    private static final Snapshot EMPTY = new Snapshot(new byte[0], new int[1], new int[0]);
+
+    private volatile Snapshot snapshot = EMPTY;
+    private volatile boolean loaded;
+
+    public static UsernameIndex getInstance() {
+        return INSTANCE;
+    }
+
+    // The user with exactly this username (ignoring ASCII case), or 0
+    public int find(String username) {
+        Snapshot current = snapshot;
+        int i = current.search(encode(username));
+        return i >= 0 ? current.userIds[i] : 0;
+    }
+
+    // Up to limit usernames starting with prefix (ignoring ASCII case), in order
+    public List<String> complete(String prefix, int limit) {
+        Snapshot current = snapshot;
+        byte[] key = encode(prefix);
+        int i = current.search(key);
+        List<String> names = new ArrayList<>(Math.min(limit, 16));
+        for (i = i >= 0 ? i : -i - 1; i < current.size() && names.size() < limit && current.startsWith(i, key); i++) {
+            names.add(current.name(i));
+        }
+        return names;
+    }
+
+    public int size() {
+        return snapshot.size();
+    }
+
+    // Bytes held by the current snapshot's arrays
+    public long memoryBytes() {
+        Snapshot current = snapshot;
+        return current.names.length + 4L * (current.offsets.length + current.userIds.length);
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    // Replaces the whole index; names and userIds are parallel arrays in any order
+    public synchronized void load(String[] usernames, int[] userIds) {
+        Integer[] order = new Integer[usernames.length];
+        byte[][] encoded = new byte[usernames.length][];
+        int totalBytes = 0;
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+            encoded[i] = encode(usernames[i]);
+            totalBytes += encoded[i].length;
+        }
+        Arrays.sort(order, (a, b) -> compare(encoded[a], 0, encoded[a].length, encoded[b]));
+
+        byte[] names = new byte[totalBytes];
+        int[] offsets = new int[order.length + 1];
+        int[] ids = new int[order.length];
+        int position = 0;
+        for (int i = 0; i < order.length; i++) {
+            byte[] name = encoded[order[i]];
+            System.arraycopy(name, 0, names, position, name.length);
+            offsets[i] = position;
+            ids[i] = userIds[order[i]];
+            position += name.length;
+        }
+        offsets[order.length] = position;
+        snapshot = new Snapshot(names, offsets, ids);
+        loaded = true;
+    }
+
+    // Adds the user, or moves it to its new username. Ignored until the index is loaded,
+    // since the load reads every committed user anyway.
+    public synchronized void put(int userId, String username) {
+        if (!loaded) {
+            return;
+        }
+        Snapshot current = without(snapshot, userId);
+        byte[] key = encode(username);
+        int i = current.search(key);
+        if (i >= 0) {
+            // The name belonged to a user deleted or renamed elsewhere
+            current = current.remove(i);
+            i = current.search(key);
+        }
+        snapshot = current.insert(-i - 1, key, userId);
+    }
+
+    public synchronized void remove(int userId) {
+        if (loaded) {
+            snapshot = without(snapshot, userId);
+        }
+    }
+
+    private static Snapshot without(Snapshot current, int userId) {
+        for (int i = 0; i < current.size(); i++) {
+            if (current.userIds[i] == userId) {
+                return current.remove(i);
+            }
+        }
+        return current;
+    }
+
+    private static byte[] encode(String username) {
+        return username.getBytes(StandardCharsets.UTF_8);
+    }
+
+    // Compares bytes [from, to) of a with all of b, folding ASCII upper case to lower case
+    private static int compare(byte[] a, int from, int to, byte[] b) {
+        int length = Math.min(to - from, b.length);
+        for (int i = 0; i < length; i++) {
+            int x = fold(a[from + i]);
+            int y = fold(b[i]);
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return (to - from) - b.length;
+    }
+
+    private static int fold(byte b) {
+        int c = b & 0xFF;
+        return c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c;
+    }
+
+    private static final class Snapshot {
+        final byte[] names;
+        final int[] offsets; // one more than there are users; the last is names.length
+        final int[] userIds;
+
+        Snapshot(byte[] names, int[] offsets, int[] userIds) {
+            this.names = names;
+            this.offsets = offsets;
+            this.userIds = userIds;
+        }
+
+        int size() {
+            return userIds.length;
+        }
+
+        String name(int i) {
+            return new String(names, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8);
+        }
+
+        boolean startsWith(int i, byte[] prefix) {
+            int length = offsets[i + 1] - offsets[i];
+            return length >= prefix.length && compare(names, offsets[i], offsets[i] + prefix.length, prefix) == 0;
+        }
+
+        // Index of the key, or -(insertion point) - 1 as in Arrays.binarySearch
+        int search(byte[] key) {
+            int low = 0;
+            int high = size() - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                int cmp = compare(names, offsets[mid], offsets[mid + 1], key);
+                if (cmp < 0) {
+                    low = mid + 1;
+                } else if (cmp > 0) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -(low + 1);
+        }
+
+        Snapshot insert(int at, byte[] name, int userId) {
+            int start = offsets[at];
+            byte[] newNames = new byte[names.length + name.length];
+            System.arraycopy(names, 0, newNames, 0, start);
+            System.arraycopy(name, 0, newNames, start, name.length);
+            System.arraycopy(names, start, newNames, start + name.length, names.length - start);
+
+            int[] newOffsets = new int[offsets.length + 1];
+            System.arraycopy(offsets, 0, newOffsets, 0, at + 1);
+            for (int i = at; i < offsets.length; i++) {
+                newOffsets[i + 1] = offsets[i] + name.length;
+            }
+
+            int[] newIds = new int[userIds.length + 1];
+            System.arraycopy(userIds, 0, newIds, 0, at);
+            newIds[at] = userId;
+            System.arraycopy(userIds, at, newIds, at + 1, userIds.length - at);
+            return new Snapshot(newNames, newOffsets, newIds);
+        }
+
+        Snapshot remove(int at) {
+            int start = offsets[at];
+            int length = offsets[at + 1] - start;
+            byte[] newNames = new byte[names.length - length];
+            System.arraycopy(names, 0, newNames, 0, start);
+            System.arraycopy(names, start + length, newNames, start, names.length - start - length);
+
+            int[] newOffsets = new int[offsets.length - 1];
+            System.arraycopy(offsets, 0, newOffsets, 0, at);
+            for (int i = at + 1; i < offsets.length; i++) {
+                newOffsets[i - 1] = offsets[i] - length;
+            }
+
+            int[] newIds = new int[userIds.length - 1];
+            System.arraycopy(userIds, 0, newIds, 0, at);
+            System.arraycopy(userIds, at + 1, newIds, at, userIds.length - at - 1);
+            return new Snapshot(newNames, newOffsets, newIds);
+        }
+    }
+}
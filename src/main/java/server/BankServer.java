@@ -0,0 +1,434 @@
+package server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import metrics.Metrics;
+import model.Account;
+import model.Dashboard;
+import model.IdempotencyRecord;
+import model.Money;
+import model.Page;
+import model.Transaction;
+import model.TransactionCursor;
+import model.Session;
+import repository.RequestKeyConflictException;
+import service.AccountService;
+import service.AsyncAccountService;
+import service.AsyncExecutor;
+import service.AuthService;
+import service.LoginThrottledException;
+import service.UserService;
+import util.Futures;
+import util.Json;
+import util.ThreadPools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * HTTP front end over the existing services. The JDK server accepts connections on a
+ * single NIO selector thread and hands each request to a worker: a virtual thread
+ * per request on Java 21+, a fixed pool of platform threads otherwise.
+ *
+ * All endpoints live under /api and answer JSON, except /metrics (Prometheus text, admins only). Request parameters are sent as a
+ * form-encoded body (or query string for GET). Every endpoint except login expects
+ * an "Authorization: Bearer token" header. Amounts are decimal strings such as "12.50".
+ */
+public class BankServer {
+    private static final int MAX_BODY_BYTES = 16 * 1024;
+    private static final int DEFAULT_PAGE_SIZE = 20;
+    private static final int MAX_PAGE_SIZE = 200;
+    private static final int DEFAULT_DASHBOARD_SIZE = 5;
+    private static final int DEFAULT_COMPLETIONS = 10;
+
+    private final HttpServer httpServer;
+    private final ExecutorService executor;
+    private final AuthService authService = new AuthService();
+    private final AccountService accountService = new AccountService();
+    private final UserService userService = new UserService();
+    private final AsyncAccountService asyncAccountService =
+            new AsyncAccountService(accountService, AsyncExecutor.shared());
+
+    public BankServer(int port) throws IOException {
+        this.httpServer = HttpServer.create(new InetSocketAddress(port), Integer.getInteger("bank.server.backlog", 1024));
+        this.executor = ThreadPools.newTaskExecutor("bank-server", Integer.getInteger("bank.server.threads", 200));
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/api/", this::handle);
+        httpServer.createContext("/metrics", this::metrics);
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    public void stop() {
+        httpServer.stop(1);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return httpServer.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> params = readParams(exchange);
+            switch (path) {
+                case "/api/login":
+                    requirePost(exchange);
+                    login(exchange, params);
+                    break;
+                case "/api/logout":
+                    requirePost(exchange);
+                    logout(exchange);
+                    break;
+                case "/api/balance":
+                    balance(exchange, authenticate(exchange), params);
+                    break;
+                case "/api/deposit":
+                    requirePost(exchange);
+                    applied(exchange, accountService.deposit(authenticate(exchange).getUserId(), amount(params),
+                            requestKey(exchange)));
+                    break;
+                case "/api/withdraw":
+                    requirePost(exchange);
+                    applied(exchange, accountService.withdraw(authenticate(exchange).getUserId(), amount(params),
+                            requestKey(exchange)));
+                    break;
+                case "/api/transfer":
+                    requirePost(exchange);
+                    Session session = authenticate(exchange);
+                    int toUserId = intParam(params, "toUserId");
+                    applied(exchange, accountService.transfer(session.getUserId(), toUserId, amount(params),
+                            requestKey(exchange)));
+                    break;
+                case "/api/history":
+                    history(exchange, authenticate(exchange), params);
+                    break;
+                case "/api/dashboard":
+                    dashboard(exchange, authenticate(exchange), params);
+                    break;
+                case "/api/users/complete":
+                    authenticate(exchange, Session.ROLE_ADMIN);
+                    completeUsername(exchange, params);
+                    break;
+                default:
+                    throw new ApiException(404, "Unknown endpoint: " + path);
+            }
+        } catch (ApiException e) {
+            send(exchange, e.status, "{\"error\":" + Json.quote(e.getMessage()) + "}");
+        } catch (RequestKeyConflictException e) {
+            send(exchange, 422, "{\"error\":" + Json.quote(e.getMessage()) + "}");
+        } catch (LoginThrottledException e) {
+            send(exchange, 503, "{\"error\":" + Json.quote(e.getMessage()) + "}");
+        } catch (SQLTimeoutException e) {
+            sendFailure(exchange, 504, "Request timed out", e);
+        } catch (SQLException e) {
+            sendFailure(exchange, 500, "Database error", e);
+        } catch (RuntimeException e) {
+            sendFailure(exchange, 500, "Internal error", e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Driver messages and exception names describe SQL, schema and classes, so the client only
+    // gets a generic message and an id to quote; the details go to the server log under that id
+    private static void sendFailure(HttpExchange exchange, int status, String message, Exception e) throws IOException {
+        String errorId = UUID.randomUUID().toString();
+        System.err.println("Request " + exchange.getRequestMethod() + " " + exchange.getRequestURI().getPath()
+                + " failed (error " + errorId + "): " + e);
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            System.err.println("  caused by: " + cause);
+        }
+        send(exchange, status, "{\"error\":" + Json.quote(message) + ",\"errorId\":" + Json.quote(errorId) + "}");
+    }
+
+    // Prometheus text format, for scrapers holding an admin session (bearer token): the
+    // operation counts and latencies are not for every client to see
+    private void metrics(HttpExchange exchange) throws IOException {
+        try {
+            try {
+                authenticate(exchange, Session.ROLE_ADMIN);
+            } catch (ApiException e) {
+                send(exchange, e.status, "{\"error\":" + Json.quote(e.getMessage()) + "}");
+                return;
+            }
+            byte[] bytes = Metrics.prometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void login(HttpExchange exchange, Map<String, String> params) throws IOException, SQLException {
+        Session session = authService.login(requiredParam(params, "username"), requiredParam(params, "password"));
+        if (session == null) {
+            throw new ApiException(401, "Invalid credentials");
+        }
+        send(exchange, 200, "{\"token\":" + Json.quote(session.getToken())
+                + ",\"userId\":" + session.getUserId()
+                + ",\"role\":" + Json.quote(session.getRole()) + "}");
+    }
+
+    private void logout(HttpExchange exchange) throws IOException {
+        authService.logout(bearerToken(exchange));
+        send(exchange, 200, "{\"loggedOut\":true}");
+    }
+
+    // With at=yyyy-MM-ddTHH:mm[:ss], the balance as it was at that time. A user whose account
+    // is not open yet (no deposit or incoming transfer) gets accountId 0 and a zero balance.
+    private void balance(HttpExchange exchange, Session session, Map<String, String> params)
+            throws IOException, SQLException {
+        Account account = accountService.getAccountByUserId(session.getUserId());
+        int accountId = account == null ? 0 : account.getAccountId();
+        String at = params.get("at");
+        if (at == null || at.isEmpty()) {
+            send(exchange, 200, "{\"accountId\":" + accountId
+                    + ",\"balance\":" + Json.quote(Money.format(account == null ? 0 : account.getBalance())) + "}");
+            return;
+        }
+        LocalDateTime time;
+        try {
+            time = LocalDateTime.parse(at);
+        } catch (DateTimeParseException e) {
+            throw new ApiException(400, "Invalid at: " + at);
+        }
+        Long balance = accountService.getBalanceAt(session.getUserId(), time);
+        send(exchange, 200, "{\"accountId\":" + accountId
+                + ",\"at\":" + Json.quote(time.toString())
+                + ",\"balance\":" + Json.quote(Money.format(balance == null ? 0 : balance)) + "}");
+    }
+
+    private void history(HttpExchange exchange, Session session, Map<String, String> params) throws IOException, SQLException {
+        String cursorToken = params.get("cursor");
+        TransactionCursor cursor;
+        try {
+            cursor = cursorToken == null || cursorToken.isEmpty() ? null : TransactionCursor.fromToken(cursorToken);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, e.getMessage());
+        }
+        int pageSize = params.containsKey("size") ? intParam(params, "size") : DEFAULT_PAGE_SIZE;
+        if (pageSize <= 0 || pageSize > MAX_PAGE_SIZE) {
+            throw new ApiException(400, "size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+
+        Page<Transaction> page = accountService.getTransactionHistory(session.getUserId(), cursor, pageSize);
+        StringBuilder body = new StringBuilder("{\"transactions\":");
+        appendTransactions(body, page.getItems());
+        body.append(",\"nextCursor\":")
+                .append(page.hasMore() ? Json.quote(page.getNextCursor().toToken()) : "null")
+                .append('}');
+        send(exchange, 200, body.toString());
+    }
+
+    // Balance and the newest transactions (size, default 5), read concurrently
+    private void dashboard(HttpExchange exchange, Session session, Map<String, String> params)
+            throws IOException, SQLException {
+        int size = params.containsKey("size") ? intParam(params, "size") : DEFAULT_DASHBOARD_SIZE;
+        if (size <= 0 || size > MAX_PAGE_SIZE) {
+            throw new ApiException(400, "size must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        Dashboard dashboard = Futures.await(
+                asyncAccountService.getDashboard(session.getUserId(), size, AsyncExecutor.defaultDeadline()));
+        StringBuilder body = new StringBuilder("{\"accountId\":")
+                .append(dashboard.getAccount() == null ? 0 : dashboard.getAccount().getAccountId())
+                .append(",\"balance\":").append(Json.quote(Money.format(dashboard.getBalance())))
+                .append(",\"transactions\":");
+        appendTransactions(body, dashboard.getRecentTransactions());
+        body.append(",\"moreHistory\":").append(dashboard.hasMoreHistory()).append('}');
+        send(exchange, 200, body.toString());
+    }
+
+    // Admin autocomplete: usernames starting with prefix, from the in-memory index
+    private void completeUsername(HttpExchange exchange, Map<String, String> params) throws IOException, SQLException {
+        int limit = params.containsKey("limit") ? intParam(params, "limit") : DEFAULT_COMPLETIONS;
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ApiException(400, "limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        StringBuilder body = new StringBuilder("{\"usernames\":[");
+        boolean first = true;
+        for (String username : userService.completeUsername(requiredParam(params, "prefix"), limit)) {
+            if (!first) {
+                body.append(',');
+            }
+            first = false;
+            body.append(Json.quote(username));
+        }
+        send(exchange, 200, body.append("]}").toString());
+    }
+
+    private static void appendTransactions(StringBuilder body, List<Transaction> transactions) {
+        body.append('[');
+        boolean first = true;
+        for (Transaction transaction : transactions) {
+            if (!first) {
+                body.append(',');
+            }
+            first = false;
+            body.append("{\"transactionId\":").append(transaction.getTransactionId())
+                    .append(",\"fromAccountId\":").append(transaction.getFromAccountId())
+                    .append(",\"toAccountId\":").append(transaction.getToAccountId())
+                    .append(",\"amount\":").append(Json.quote(Money.format(transaction.getAmount())))
+                    .append(",\"dateTime\":").append(Json.quote(transaction.getDateTime().toString()))
+                    .append(",\"type\":").append(Json.quote(transaction.getType()))
+                    .append('}');
+        }
+        body.append(']');
+    }
+
+    private void applied(HttpExchange exchange, boolean applied) throws IOException {
+        send(exchange, 200, "{\"applied\":" + applied + "}");
+    }
+
+    // Customer operations; admins hold the USER role as well
+    private Session authenticate(HttpExchange exchange) {
+        return authenticate(exchange, Session.ROLE_USER);
+    }
+
+    private Session authenticate(HttpExchange exchange, int role) {
+        Session session = authService.getSession(bearerToken(exchange));
+        if (session == null) {
+            throw new ApiException(401, "Not logged in");
+        }
+        if (!session.hasRole(role)) {
+            throw new ApiException(403, "Not allowed");
+        }
+        return session;
+    }
+
+    private static String bearerToken(HttpExchange exchange) {
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        if (header == null || !header.startsWith("Bearer ")) {
+            return null;
+        }
+        return header.substring("Bearer ".length()).trim();
+    }
+
+    // Optional Idempotency-Key header: a retry with the same key gets the first result back
+    private static String requestKey(HttpExchange exchange) {
+        String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+        if (key == null) {
+            return null;
+        }
+        try {
+            return IdempotencyRecord.checkKey(key);
+        } catch (IllegalArgumentException e) {
+            throw new ApiException(400, "Invalid Idempotency-Key: " + e.getMessage());
+        }
+    }
+
+    private static void requirePost(HttpExchange exchange) {
+        if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            throw new ApiException(405, "Use POST");
+        }
+    }
+
+    private static long amount(Map<String, String> params) {
+        try {
+            long amount = Money.parse(requiredParam(params, "amount"));
+            if (!Money.isPositive(amount)) {
+                throw new ApiException(400, "amount must be positive");
+            }
+            return amount;
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new ApiException(400, "Invalid amount: " + e.getMessage());
+        }
+    }
+
+    private static int intParam(Map<String, String> params, String name) {
+        try {
+            return Integer.parseInt(requiredParam(params, name));
+        } catch (NumberFormatException e) {
+            throw new ApiException(400, name + " must be a number");
+        }
+    }
+
+    private static String requiredParam(Map<String, String> params, String name) {
+        String value = params.get(name);
+        if (value == null) {
+            throw new ApiException(400, "Missing parameter: " + name);
+        }
+        return value;
+    }
+
+    private static Map<String, String> readParams(HttpExchange exchange) throws IOException {
+        Map<String, String> params = new HashMap<>();
+        parseForm(exchange.getRequestURI().getRawQuery(), params);
+        if ("POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+            parseForm(readBody(exchange), params);
+        }
+        return params;
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                if (out.size() > MAX_BODY_BYTES) {
+                    throw new ApiException(413, "Request body too large");
+                }
+            }
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static void parseForm(String form, Map<String, String> params) throws UnsupportedEncodingException {
+        if (form == null || form.isEmpty()) {
+            return;
+        }
+        for (String pair : form.split("&")) {
+            int eq = pair.indexOf('=');
+            String key = eq < 0 ? pair : pair.substring(0, eq);
+            String value = eq < 0 ? "" : pair.substring(eq + 1);
+            try {
+                params.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            } catch (IllegalArgumentException e) {
+                // A malformed %-escape is the client's mistake, not a server error
+                throw new ApiException(400, "Malformed form encoding");
+            }
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static final class ApiException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        final int status;
+
+        ApiException(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+}
@@ -1,104 +1,170 @@
 package service;
 
+import metrics.Metrics;
+import metrics.OperationTimer;
 import model.Account;
+import model.Money;
+import model.Page;
 import model.Transaction;
-import repository.AccountRepository;
-import repository.TransactionRepository;
+import model.TransactionCursor;
+import repository.LedgerStore;
+import util.IntObjectMap;
 
 import java.sql.SQLException;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Stream;
 
 public class AccountService {
-    private final AccountRepository accountRepository;
-    private final TransactionRepository transactionRepository;
+    private static final OperationTimer DEPOSIT = Metrics.operation("account.deposit");
+    private static final OperationTimer WITHDRAW = Metrics.operation("account.withdraw");
+    private static final OperationTimer TRANSFER = Metrics.operation("account.transfer");
+
+    private final LedgerStore store;
 
     public AccountService() {
-        this.accountRepository = new AccountRepository();
-        this.transactionRepository = new TransactionRepository();
+        this(LedgerStores.get());
+    }
+
+    public AccountService(LedgerStore store) {
+        this.store = store;
     }
 
     public Account getAccountByUserId(int userId) throws SQLException {
-        return accountRepository.findByUserId(userId);
+        return store.findAccountByUserId(userId);
     }
 
-    public void deposit(int userId, double amount) throws SQLException {
-        Account account = accountRepository.findByUserId(userId);
-        if (account != null) {
-            double newBalance = account.getBalance() + amount;
-            accountRepository.updateBalance(userId, newBalance);
-
-            Transaction transaction = new Transaction(
-                    0, // ID will be set by the database
-                    account.getAccountId(),
-                    account.getAccountId(),
-                    amount,
-                    LocalDateTime.now(),
-                    "DEPOSIT");
-            transactionRepository.create(transaction);
+    // The accounts of the given users, keyed by userId, in one round trip; users without an
+    // account are left out
+    public IntObjectMap<Account> getAccountsByUserIds(int[] userIds) throws SQLException {
+        return store.findAccountsByUserIds(userIds);
+    }
+
+    public IntObjectMap<Account> getAccountsByIds(int[] accountIds) throws SQLException {
+        return store.findAccountsByIds(accountIds);
+    }
+
+    // The user's balance as it was at the given time; null if the user has no account
+    public Long getBalanceAt(int userId, LocalDateTime time) throws SQLException {
+        Account account = store.findAccountByUserId(userId);
+        return account == null ? null : store.findBalanceAt(account.getAccountId(), time);
+    }
+
+    public boolean deposit(int userId, long amount) throws SQLException {
+        return deposit(userId, amount, null);
+    }
+
+    // With a request key (see LedgerStore), a retried call returns the first call's result
+    // instead of moving the money again
+    public boolean deposit(int userId, long amount, String requestKey) throws SQLException {
+        long start = DEPOSIT.start();
+        try {
+            if (!Money.isPositive(amount)) {
+                return false;
+            }
+            // Only the accountId is needed here, which the store can answer from memory (cache or local
+            // ledger); a user's first deposit opens the account
+            int accountId = store.provisionAccount(userId);
+            if (accountId == 0) {
+                return false;
+            }
+            return store.deposit(accountId, amount, requestKey);
+        } catch (SQLException | RuntimeException e) {
+            DEPOSIT.error();
+            throw e;
+        } finally {
+            DEPOSIT.stop(start);
         }
     }
 
-    public void withdraw(int userId, double amount) throws SQLException {
-        Account account = accountRepository.findByUserId(userId);
-        if (account != null && account.getBalance() >= amount) {
-            double newBalance = account.getBalance() - amount;
-            accountRepository.updateBalance(userId, newBalance);
-
-            Transaction transaction = new Transaction(
-                    0, // ID will be set by the database
-                    account.getAccountId(),
-                    account.getAccountId(),
-                    amount,
-                    LocalDateTime.now(),
-                    "WITHDRAWAL");
-            transactionRepository.create(transaction);
+    public boolean withdraw(int userId, long amount) throws SQLException {
+        return withdraw(userId, amount, null);
+    }
+
+    public boolean withdraw(int userId, long amount, String requestKey) throws SQLException {
+        long start = WITHDRAW.start();
+        try {
+            if (!Money.isPositive(amount)) {
+                return false;
+            }
+            Account account = store.findAccountByUserId(userId);
+            if (account == null) {
+                return false;
+            }
+            return store.withdraw(account.getAccountId(), amount, requestKey);
+        } catch (SQLException | RuntimeException e) {
+            WITHDRAW.error();
+            throw e;
+        } finally {
+            WITHDRAW.stop(start);
         }
     }
 
-    public void transfer(int fromUserId, int toUserId, double amount) throws SQLException {
-        Account fromAccount = accountRepository.findByUserId(fromUserId);
-        Account toAccount = accountRepository.findByUserId(toUserId);
-
-        if (fromAccount != null && toAccount != null && fromAccount.getBalance() >= amount) {
-            // Update source account
-            double newFromBalance = fromAccount.getBalance() - amount;
-            accountRepository.updateBalance(fromUserId, newFromBalance);
-
-            // Update destination account
-            double newToBalance = toAccount.getBalance() + amount;
-            accountRepository.updateBalance(toUserId, newToBalance);
-
-            // Create transaction record
-            Transaction transaction = new Transaction(
-                    0, // ID will be set by the database
-                    fromAccount.getAccountId(),
-                    toAccount.getAccountId(),
-                    amount,
-                    LocalDateTime.now(),
-                    "TRANSFER");
-            transactionRepository.create(transaction);
+    public boolean transfer(int fromUserId, int toUserId, long amount) throws SQLException {
+        return transfer(fromUserId, toUserId, amount, null);
+    }
+
+    public boolean transfer(int fromUserId, int toUserId, long amount, String requestKey) throws SQLException {
+        long start = TRANSFER.start();
+        try {
+            // Both sides in one lookup. A sender without an account has nothing to send; a recipient
+            // without one gets it opened.
+            IntObjectMap<Account> accounts = store.findAccountsByUserIds(new int[] { fromUserId, toUserId });
+            Account fromAccount = accounts.get(fromUserId);
+            if (fromAccount == null) {
+                return false;
+            }
+            Account toAccount = accounts.get(toUserId);
+            int toAccountId = toAccount != null ? toAccount.getAccountId() : store.provisionAccount(toUserId);
+            if (toAccountId == 0) {
+                return false;
+            }
+            return store.transfer(fromAccount.getAccountId(), toAccountId, amount, requestKey);
+        } catch (SQLException | RuntimeException e) {
+            TRANSFER.error();
+            throw e;
+        } finally {
+            TRANSFER.stop(start);
         }
     }
 
     public List<Transaction> getTransactionHistory(int userId) throws SQLException {
-        Account account = accountRepository.findByUserId(userId);
+        Account account = store.findAccountByUserId(userId);
         if (account != null) {
-            return transactionRepository.findByAccountId(account.getAccountId());
+            return store.findTransactions(account.getAccountId());
         }
         return new ArrayList<>();
     }
 
-    public List<Transaction> getAllTransactions() throws SQLException {
-        return transactionRepository.findAll();
+    public Page<Transaction> getTransactionHistory(int userId, TransactionCursor cursor, int pageSize)
+            throws SQLException {
+        Account account = store.findAccountByUserId(userId);
+        if (account != null) {
+            return store.findTransactionPage(account.getAccountId(), cursor, pageSize);
+        }
+        return new Page<>(new ArrayList<>(), null);
     }
 
-    public void createAccountIfNotExists(int userId) throws SQLException {
-        Account account = accountRepository.findByUserId(userId);
-        if (account == null) {
-            Account newAccount = new Account(0, userId, 0.0);
-            accountRepository.create(newAccount);
+    // The stream may hold a database connection until closed; use it in try-with-resources
+    public Stream<Transaction> streamTransactionHistory(int userId) throws SQLException {
+        Account account = store.findAccountByUserId(userId);
+        if (account != null) {
+            return store.streamTransactions(account.getAccountId());
         }
+        return Stream.empty();
+    }
+
+    public List<Transaction> getAllTransactions() throws SQLException {
+        return store.findAllTransactions();
+    }
+
+    public Page<Transaction> getAllTransactions(TransactionCursor cursor, int pageSize) throws SQLException {
+        return store.findAllTransactionPage(cursor, pageSize);
+    }
+
+    // The stream may hold a database connection until closed; use it in try-with-resources
+    public Stream<Transaction> streamAllTransactions() throws SQLException {
+        return store.streamAllTransactions();
     }
-}
\ No newline at end of file
+}
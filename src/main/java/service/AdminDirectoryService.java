@@ -0,0 +1,93 @@
+package service;
+
+import model.Account;
+import model.DirectoryCursor;
+import model.DirectoryPage;
+import model.DirectoryQuery;
+import model.UserSummary;
+import repository.LedgerStore;
+import repository.UserDirectoryRepository;
+import util.IntLongMap;
+import util.IntObjectMap;
+import util.UncheckedSQLException;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * The admin user directory (see UserDirectoryRepository). With MySQL storage a page is one
+ * query joining users, accounts and rollups. With the local ledger the users come from MySQL
+ * and each page's accounts and transaction counts from the ledger in one batch each; sorting
+ * by balance is only available with MySQL storage.
+ */
+public class AdminDirectoryService {
+    private final LedgerStore store;
+    private final boolean accountsInDatabase;
+    private final UserDirectoryRepository repository;
+
+    public AdminDirectoryService() {
+        this(LedgerStores.get());
+    }
+
+    public AdminDirectoryService(LedgerStore store) {
+        this.store = store;
+        this.accountsInDatabase = store instanceof SqlLedgerStore;
+        this.repository = new UserDirectoryRepository(accountsInDatabase);
+    }
+
+    public DirectoryPage getPage(DirectoryQuery query, DirectoryCursor cursor, int pageSize) throws SQLException {
+        DirectoryPage page = repository.findPage(query, cursor, pageSize);
+        if (accountsInDatabase || page.getItems().isEmpty()) {
+            return page;
+        }
+        List<UserSummary> users = withAccounts(page.getItems());
+        DirectoryCursor next = page.hasMore() ? DirectoryCursor.after(users.get(users.size() - 1)) : null;
+        return new DirectoryPage(users, next);
+    }
+
+    // Every matching user in the query's order, read lazily; close the stream when done
+    public Stream<UserSummary> stream(DirectoryQuery query) throws SQLException {
+        Stream<UserSummary> users = repository.stream(query);
+        if (accountsInDatabase) {
+            return users;
+        }
+        return users.map(user -> {
+            try {
+                return withAccount(user);
+            } catch (SQLException e) {
+                throw new UncheckedSQLException(e);
+            }
+        });
+    }
+
+    private List<UserSummary> withAccounts(List<UserSummary> users) throws SQLException {
+        int[] userIds = new int[users.size()];
+        for (int i = 0; i < userIds.length; i++) {
+            userIds[i] = users.get(i).getUserId();
+        }
+        IntObjectMap<Account> accounts = store.findAccountsByUserIds(userIds);
+        int[] accountIds = new int[accounts.size()];
+        int[] next = new int[1];
+        accounts.forEach((userId, account) -> accountIds[next[0]++] = account.getAccountId());
+        IntLongMap counts = store.countTransactions(accountIds);
+
+        List<UserSummary> filled = new ArrayList<>(users.size());
+        for (UserSummary user : users) {
+            Account account = accounts.get(user.getUserId());
+            filled.add(account == null ? user : user.withAccount(account.getAccountId(), account.getBalance(),
+                    counts.get(account.getAccountId(), 0)));
+        }
+        return filled;
+    }
+
+    private UserSummary withAccount(UserSummary user) throws SQLException {
+        Account account = store.findAccountByUserId(user.getUserId());
+        if (account == null) {
+            return user;
+        }
+        long count = store.countTransactions(new int[] { account.getAccountId() }).get(account.getAccountId(), 0);
+        return user.withAccount(account.getAccountId(), account.getBalance(), count);
+    }
+}
@@ -0,0 +1,87 @@
+package service;
+
+import model.Account;
+import model.Dashboard;
+import model.Page;
+import model.Transaction;
+import model.TransactionCursor;
+import util.Deadline;
+import util.IntObjectMap;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// AccountService calls run on an AsyncExecutor. A failed future holds the SQLException (or
+// SQLTimeoutException once the deadline passed); Futures.await rethrows it. Deposits,
+// withdrawals and transfers only time out before they start (see AsyncExecutor.mutate). The
+// history streams stay synchronous: they hold a connection until the caller closes them.
+public class AsyncAccountService {
+    private final AccountService accountService;
+    private final AsyncExecutor executor;
+
+    public AsyncAccountService() {
+        this(new AccountService(), AsyncExecutor.shared());
+    }
+
+    public AsyncAccountService(AccountService accountService, AsyncExecutor executor) {
+        this.accountService = accountService;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Account> getAccountByUserId(int userId, Deadline deadline) {
+        return executor.supply(() -> accountService.getAccountByUserId(userId), deadline);
+    }
+
+    public CompletableFuture<IntObjectMap<Account>> getAccountsByUserIds(int[] userIds, Deadline deadline) {
+        return executor.supply(() -> accountService.getAccountsByUserIds(userIds), deadline);
+    }
+
+    public CompletableFuture<IntObjectMap<Account>> getAccountsByIds(int[] accountIds, Deadline deadline) {
+        return executor.supply(() -> accountService.getAccountsByIds(accountIds), deadline);
+    }
+
+    public CompletableFuture<Long> getBalanceAt(int userId, LocalDateTime time, Deadline deadline) {
+        return executor.supply(() -> accountService.getBalanceAt(userId, time), deadline);
+    }
+
+    // requestKey may be null; see AccountService.deposit
+    public CompletableFuture<Boolean> deposit(int userId, long amount, String requestKey, Deadline deadline) {
+        return executor.mutate(() -> accountService.deposit(userId, amount, requestKey), deadline);
+    }
+
+    public CompletableFuture<Boolean> withdraw(int userId, long amount, String requestKey, Deadline deadline) {
+        return executor.mutate(() -> accountService.withdraw(userId, amount, requestKey), deadline);
+    }
+
+    public CompletableFuture<Boolean> transfer(int fromUserId, int toUserId, long amount, String requestKey,
+            Deadline deadline) {
+        return executor.mutate(() -> accountService.transfer(fromUserId, toUserId, amount, requestKey), deadline);
+    }
+
+    public CompletableFuture<List<Transaction>> getTransactionHistory(int userId, Deadline deadline) {
+        return executor.supply(() -> accountService.getTransactionHistory(userId), deadline);
+    }
+
+    public CompletableFuture<Page<Transaction>> getTransactionHistory(int userId, TransactionCursor cursor,
+            int pageSize, Deadline deadline) {
+        return executor.supply(() -> accountService.getTransactionHistory(userId, cursor, pageSize), deadline);
+    }
+
+    public CompletableFuture<List<Transaction>> getAllTransactions(Deadline deadline) {
+        return executor.supply(accountService::getAllTransactions, deadline);
+    }
+
+    public CompletableFuture<Page<Transaction>> getAllTransactions(TransactionCursor cursor, int pageSize,
+            Deadline deadline) {
+        return executor.supply(() -> accountService.getAllTransactions(cursor, pageSize), deadline);
+    }
+
+    // The balance and the newest transactions, fetched at the same time
+    public CompletableFuture<Dashboard> getDashboard(int userId, int recentCount, Deadline deadline) {
+        CompletableFuture<Account> account = getAccountByUserId(userId, deadline);
+        CompletableFuture<Page<Transaction>> recent = getTransactionHistory(userId, null, recentCount, deadline);
+        return account.thenCombine(recent,
+                (found, page) -> new Dashboard(userId, found, page.getItems(), page.hasMore()));
+    }
+}
@@ -0,0 +1,33 @@
+package service;
+
+import model.Session;
+import model.User;
+import util.Deadline;
+
+import java.util.concurrent.CompletableFuture;
+
+// The AuthService calls that block (the user lookup and password hashing) run on an
+// AsyncExecutor; session lookups are in memory and stay on AuthService. A login refused
+// because the hashing pool is full fails with LoginThrottledException.
+public class AsyncAuthService {
+    private final AuthService authService;
+    private final AsyncExecutor executor;
+
+    public AsyncAuthService() {
+        this(new AuthService(), AsyncExecutor.shared());
+    }
+
+    public AsyncAuthService(AuthService authService, AsyncExecutor executor) {
+        this.authService = authService;
+        this.executor = executor;
+    }
+
+    // Completes with null for invalid credentials
+    public CompletableFuture<Session> login(String username, String password, Deadline deadline) {
+        return executor.supply(() -> authService.login(username, password), deadline);
+    }
+
+    public CompletableFuture<User> authenticate(String username, String password, Deadline deadline) {
+        return executor.supply(() -> authService.authenticate(username, password), deadline);
+    }
+}
@@ -0,0 +1,131 @@
+package service;
+
+import util.Deadline;
+import util.SqlCall;
+import util.ThreadPools;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs blocking service calls off the caller's thread and hands back a CompletableFuture.
+ * Calls run on virtual threads when the JVM has them (bank.async.virtual, Java 21+), else on
+ * a pool of bank.async.threads platform threads.
+ *
+ * Each call has a deadline. It is the current Deadline while the call runs, so the connection
+ * pool gives up waiting once it passes, and a call still queued by then never starts. A read
+ * (supply) fails with SQLTimeoutException at the deadline even if it is still running. A
+ * change (mutate) only times out while queued: once started it may commit, so its future
+ * waits for the real outcome rather than report a failure that did not happen.
+ */
+public class AsyncExecutor {
+    private static volatile AsyncExecutor shared;
+
+    // One thread fires every deadline; its tasks are short and removed when their call completes
+    private static final ScheduledExecutorService TIMER = newTimer();
+
+    private final ExecutorService executor;
+
+    public AsyncExecutor(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    public static AsyncExecutor shared() {
+        AsyncExecutor current = shared;
+        if (current == null) {
+            synchronized (AsyncExecutor.class) {
+                current = shared;
+                if (current == null) {
+                    int threads = Integer.getInteger("bank.async.threads", 64);
+                    boolean virtual = Boolean.parseBoolean(System.getProperty("bank.async.virtual", "true"));
+                    current = new AsyncExecutor(virtual
+                            ? ThreadPools.newTaskExecutor("async", threads)
+                            : ThreadPools.newFixedPool("async", threads));
+                    shared = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // bank.async.timeoutMs (default 5 s) from now
+    public static Deadline defaultDeadline() {
+        return Deadline.after(Long.getLong("bank.async.timeoutMs", 5000), TimeUnit.MILLISECONDS);
+    }
+
+    public <T> CompletableFuture<T> supply(SqlCall<T> call, Deadline deadline) {
+        return submit(call, deadline, true);
+    }
+
+    // For calls that change data: the deadline only applies until the call starts
+    public <T> CompletableFuture<T> mutate(SqlCall<T> call, Deadline deadline) {
+        return submit(call, deadline, false);
+    }
+
+    private <T> CompletableFuture<T> submit(SqlCall<T> call, Deadline deadline, boolean abandonRunning) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        if (deadline.isExpired()) {
+            result.completeExceptionally(expired());
+            return result;
+        }
+
+        // Set by whichever comes first, the call starting or the deadline firing while it is queued
+        AtomicBoolean claimed = new AtomicBoolean();
+        Future<?> task;
+        try {
+            task = executor.submit(() -> {
+                if (!claimed.compareAndSet(false, true)) {
+                    return; // the deadline passed while queued
+                }
+                Deadline previous = Deadline.install(deadline);
+                try {
+                    result.complete(call.call());
+                } catch (SQLException | RuntimeException | Error e) {
+                    result.completeExceptionally(e);
+                } finally {
+                    Deadline.install(previous);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        if (deadline.isBounded()) {
+            // Running calls are not interrupted: JDBC drivers may drop the connection when they are
+            ScheduledFuture<?> timer = TIMER.schedule(() -> {
+                if (claimed.compareAndSet(false, true)) {
+                    result.completeExceptionally(expired());
+                    task.cancel(false);
+                } else if (abandonRunning) {
+                    result.completeExceptionally(expired());
+                }
+            }, deadline.remainingNanos(), TimeUnit.NANOSECONDS);
+            result.whenComplete((value, failure) -> timer.cancel(false));
+        }
+        return result;
+    }
+
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    private static SQLTimeoutException expired() {
+        return new SQLTimeoutException("Deadline passed before the call completed.");
+    }
+
+    private static ScheduledExecutorService newTimer() {
+        ScheduledThreadPoolExecutor timer = new ScheduledThreadPoolExecutor(1, ThreadPools.daemonThreads("async-deadline"));
+        timer.setRemoveOnCancelPolicy(true);
+        return timer;
+    }
+}
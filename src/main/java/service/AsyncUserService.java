@@ -0,0 +1,51 @@
+package service;
+
+import model.User;
+import util.Deadline;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+// UserService calls run on an AsyncExecutor; see AsyncAccountService
+public class AsyncUserService {
+    private final UserService userService;
+    private final AsyncExecutor executor;
+
+    public AsyncUserService() {
+        this(new UserService(), AsyncExecutor.shared());
+    }
+
+    public AsyncUserService(UserService userService, AsyncExecutor executor) {
+        this.userService = userService;
+        this.executor = executor;
+    }
+
+    public CompletableFuture<Void> createUser(String username, String password, String role, Deadline deadline) {
+        return executor.mutate(() -> {
+            userService.createUser(username, password, role);
+            return null;
+        }, deadline);
+    }
+
+    public CompletableFuture<Void> updateUser(User user, Deadline deadline) {
+        return executor.mutate(() -> {
+            userService.updateUser(user);
+            return null;
+        }, deadline);
+    }
+
+    public CompletableFuture<Void> deleteUser(int userId, Deadline deadline) {
+        return executor.mutate(() -> {
+            userService.deleteUser(userId);
+            return null;
+        }, deadline);
+    }
+
+    public CompletableFuture<List<User>> getAllUsers(Deadline deadline) {
+        return executor.supply(userService::getAllUsers, deadline);
+    }
+
+    public CompletableFuture<User> getUserByUsername(String username, Deadline deadline) {
+        return executor.supply(() -> userService.getUserByUsername(username), deadline);
+    }
+}
@@ -1,41 +1,171 @@
 package service;
 
+import model.Session;
 import model.User;
 import repository.UserRepository;
+import util.CacheStats;
+import util.LruCache;
+import util.PasswordHasher;
+import util.ThreadPools;
 
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
 import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+// Stateless: who is logged in lives in the SessionRegistry, keyed by session token,
+// so one instance can serve any number of users from any number of threads
 public class AuthService {
+    private static final PasswordHasher DEFAULT_HASHER =
+            new PasswordHasher(Integer.getInteger("bank.password.iterations", 310_000));
+
+    // Password hashing is deliberately slow, so it gets its own small pool with a bounded queue:
+    // a burst of logins is turned away instead of taking every CPU from transfers
+    private static final ThreadPoolExecutor HASHING = new ThreadPoolExecutor(
+            Integer.getInteger("bank.password.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+            Integer.getInteger("bank.password.threads", Math.max(1, Runtime.getRuntime().availableProcessors() / 2)),
+            60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(Integer.getInteger("bank.password.queueSize", 100)),
+            ThreadPools.daemonThreads("password-hash"));
+
+    // Recent successful logins: username -> user row and a keyed MAC of the password. A repeated
+    // login with the same password is checked against the MAC without a query or a PBKDF2 run;
+    // anything else, including a wrong password, still takes the full path.
+    private static final LruCache<String, VerifiedLogin> VERIFIED = new LruCache<>(
+            Integer.getInteger("bank.password.cacheMaxSize", 10_000),
+            Long.getLong("bank.password.cacheTtlMs", 300_000), TimeUnit.MILLISECONDS);
+    private static final byte[] MAC_KEY = new byte[32];
+
+    static {
+        HASHING.allowCoreThreadTimeOut(true);
+        new SecureRandom().nextBytes(MAC_KEY);
+    }
+
     private final UserRepository userRepository;
-    private User currentUser;
+    private final SessionRegistry sessions;
+    private final PasswordHasher hasher;
 
     public AuthService() {
+        this(DEFAULT_HASHER);
+    }
+
+    public AuthService(PasswordHasher hasher) {
         this.userRepository = new UserRepository();
-        this.currentUser = null;
+        this.sessions = SessionRegistry.getInstance();
+        this.hasher = hasher;
+    }
+
+    // Returns a new session, or null if the credentials are wrong
+    public Session login(String username, String password) throws SQLException {
+        User user = authenticate(username, password);
+        return user == null ? null : sessions.create(user);
     }
 
-    public boolean login(String username, String password) throws SQLException {
+    // Checks the credentials without opening a session. Stored hashes made with another
+    // iteration count (or legacy plaintext) are replaced with a current hash on success.
+    public User authenticate(String username, String password) throws SQLException {
+        byte[] mac = mac(username, password);
+        VerifiedLogin cached = VERIFIED.get(username);
+        if (cached != null && MessageDigest.isEqual(cached.mac, mac)) {
+            return copy(cached.user);
+        }
+
         User user = userRepository.findByUsername(username);
-        if (user != null && user.getPassword().equals(password)) {
-            this.currentUser = user;
-            return true;
+        String stored = user != null ? user.getPassword() : null;
+        String rehashed = runHashing(() -> {
+            if (!hasher.verify(password, stored)) {
+                return null;
+            }
+            return hasher.needsRehash(stored) ? hasher.hash(password) : stored;
+        });
+        if (user == null || rehashed == null) {
+            return null;
+        }
+
+        if (!rehashed.equals(stored) && userRepository.updatePassword(user.getUserId(), stored, rehashed)) {
+            user.setPassword(rehashed);
         }
-        return false;
+        VERIFIED.put(username, new VerifiedLogin(copy(user), mac));
+        return user;
+    }
+
+    // Hash for a new or changed password, computed on the hashing pool
+    public String hashPassword(String password) {
+        return runHashing(() -> hasher.hash(password));
     }
 
-    public void logout() {
-        this.currentUser = null;
+    // Call after a user's password, role or name changed or the user was deleted
+    public static void forgetVerifiedLogins() {
+        VERIFIED.clear();
     }
 
-    public User getCurrentUser() {
-        return currentUser;
+    public static CacheStats getVerificationCacheStats() {
+        return VERIFIED.getStats();
     }
 
-    public boolean isLoggedIn() {
-        return currentUser != null;
+    public void logout(String token) {
+        sessions.remove(token);
     }
 
-    public boolean isAdmin() {
-        return currentUser != null && "ADMIN".equals(currentUser.getRole());
+    // The live session for a token, or null if it is unknown or has expired
+    public Session getSession(String token) {
+        return sessions.get(token);
+    }
+
+    public boolean isLoggedIn(String token) {
+        return sessions.get(token) != null;
+    }
+
+    public boolean isAdmin(String token) {
+        Session session = sessions.get(token);
+        return session != null && session.isAdmin();
+    }
+
+    private static <T> T runHashing(Callable<T> task) {
+        try {
+            return HASHING.submit(task).get();
+        } catch (RejectedExecutionException e) {
+            throw new LoginThrottledException();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while hashing a password", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    private static byte[] mac(String username, String password) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(MAC_KEY, "HmacSHA256"));
+            mac.update(username.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            return mac.doFinal(password.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HmacSHA256 is not available", e);
+        }
+    }
+
+    private static User copy(User user) {
+        return new User(user.getUserId(), user.getUsername(), user.getPassword(), user.getRole());
+    }
+
+    private static final class VerifiedLogin {
+        final User user;
+        final byte[] mac;
+
+        VerifiedLogin(User user, byte[] mac) {
+            this.user = user;
+            this.mac = mac;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,140 @@
+package service;
+
+import model.Account;
+import model.BalanceSnapshot;
+import repository.AccountCache;
+import repository.BalanceSnapshotRepository;
+import util.DBConnection;
+import util.IntLongMap;
+import util.ThreadPools;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Periodic checkpoints of every account balance in MySQL, each tagged with the last
+ * transactionId it includes. A balance at time T is the newest checkpoint taken before T
+ * plus the transactions after it up to T, so the replay is bounded by the snapshot interval
+ * instead of covering the account's whole history. At startup the latest snapshot, brought
+ * forward the same way, fills the account cache.
+ *
+ * Balances and their transaction rows change in the same database transaction, with or
+ * without group commit (bank.journal.mode=group), so the two line up. A group holds at most
+ * bank.journal.batchSize uncommitted ids, well inside PENDING_WINDOW at the default of 500.
+ * Balances set without a transaction row (bulk imports) are only right from the next
+ * snapshot on.
+ */
+public class BalanceSnapshotService {
+    private static final int CHECKPOINT_BATCH = 5_000;
+    // Ids below the newest one that can still be uncommitted when a snapshot is taken
+    private static final int PENDING_WINDOW = 1_000;
+
+    private final BalanceSnapshotRepository repository;
+    private ScheduledExecutorService scheduler;
+
+    public BalanceSnapshotService() {
+        this.repository = new BalanceSnapshotRepository();
+    }
+
+    // Takes a snapshot every interval on a background thread, keeping the newest 'retain'
+    public synchronized void startPeriodic(long intervalMillis, int retain) {
+        if (scheduler != null || intervalMillis <= 0) {
+            return;
+        }
+        scheduler = Executors.newSingleThreadScheduledExecutor(ThreadPools.daemonThreads("balance-snapshots"));
+        scheduler.scheduleWithFixedDelay(() -> {
+            try {
+                takeSnapshot();
+                repository.deleteAllButNewest(retain);
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Balance snapshot failed: " + e.getMessage());
+            }
+        }, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+    }
+
+    // Reads every balance from one consistent view of the database and writes the checkpoints in
+    // batches on a second connection. Writers are never blocked; the snapshot is only used once complete.
+    public BalanceSnapshot takeSnapshot() throws SQLException {
+        try (Connection reader = DBConnection.getConnection();
+                Connection writer = DBConnection.getConnection()) {
+            int isolation = reader.getTransactionIsolation();
+            reader.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            reader.setAutoCommit(false);
+            reader.setReadOnly(true);
+            try {
+                // The first read fixes the view that every later read in this transaction sees,
+                // so the time is taken after it: everything in the snapshot is dated before takenAt
+                int lastTransactionId = repository.maxTransactionId(reader);
+                LocalDateTime takenAt = LocalDateTime.now().withNano(0);
+                int[] pending = repository.missingTransactionIds(reader,
+                        Math.max(0, lastTransactionId - PENDING_WINDOW), lastTransactionId);
+                int snapshotId = repository.insertSnapshot(writer, takenAt, lastTransactionId, pending);
+
+                int[] accountIds = new int[CHECKPOINT_BATCH];
+                int[] userIds = new int[CHECKPOINT_BATCH];
+                long[] balances = new long[CHECKPOINT_BATCH];
+                int[] counts = new int[2]; // in the current batch, in total
+                repository.readBalances(reader, (accountId, userId, balance) -> {
+                    int i = counts[0]++;
+                    accountIds[i] = accountId;
+                    userIds[i] = userId;
+                    balances[i] = balance;
+                    if (counts[0] == CHECKPOINT_BATCH) {
+                        repository.insertCheckpoints(writer, snapshotId, accountIds, userIds, balances, counts[0]);
+                        counts[1] += counts[0];
+                        counts[0] = 0;
+                    }
+                });
+                repository.insertCheckpoints(writer, snapshotId, accountIds, userIds, balances, counts[0]);
+                int accountCount = counts[1] + counts[0];
+                repository.markComplete(writer, snapshotId, accountCount);
+                return new BalanceSnapshot(snapshotId, takenAt, lastTransactionId, accountCount);
+            } finally {
+                reader.rollback();
+                reader.setTransactionIsolation(isolation);
+            }
+        }
+    }
+
+    // The account's balance as it was at the given time: the newest checkpoint before it
+    // plus the transactions between the two. Accounts created after the checkpoint start at 0.
+    public long getBalanceAt(int accountId, LocalDateTime time) throws SQLException {
+        BalanceSnapshot snapshot = repository.findLatestAtOrBefore(time);
+        long balance = snapshot == null ? 0 : repository.findCheckpoint(snapshot.getSnapshotId(), accountId, 0);
+        return balance + repository.sumDelta(accountId, snapshot, time);
+    }
+
+    public BalanceSnapshot getLatestSnapshot() throws SQLException {
+        return repository.findLatest();
+    }
+
+    // Fills the account cache from the latest snapshot plus one aggregate over the transactions
+    // after it, instead of a query per account. Returns the number of accounts cached.
+    public int warmAccountCache() throws SQLException {
+        BalanceSnapshot snapshot = repository.findLatest();
+        if (snapshot == null) {
+            return 0;
+        }
+        AccountCache cache = AccountCache.getInstance();
+        // Anything written while this runs invalidates the cache and stops the load from overwriting it
+        long stamp = cache.stamp();
+        IntLongMap deltas = repository.sumDeltasSince(snapshot);
+        int[] loaded = new int[1];
+        repository.readCheckpoints(snapshot.getSnapshotId(), cache.getMaxSize(), (accountId, userId, balance) -> {
+            cache.putIfUnchanged(new Account(accountId, userId, balance + deltas.get(accountId, 0)), stamp);
+            loaded[0]++;
+        });
+        return loaded[0];
+    }
+}
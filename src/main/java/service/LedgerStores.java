@@ -0,0 +1,85 @@
+package service;
+
+import ledger.LocalLedgerStore;
+import repository.LedgerStore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks the ledger backend from the bank.storage property: "mysql" (the default) keeps
+ * balances and transactions in the database, "local" in a memory-mapped log under
+ * bank.ledger.dir. Users, sessions and everything else stay in MySQL either way.
+ */
+public class LedgerStores {
+    private static final String STORAGE = System.getProperty("bank.storage", "mysql");
+
+    private static volatile LedgerStore store;
+
+    public static LedgerStore get() {
+        LedgerStore current = store;
+        if (current == null) {
+            synchronized (LedgerStores.class) {
+                current = store;
+                if (current == null) {
+                    current = open();
+                    store = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // Startup work that needs the migrated schema: with MySQL storage, warms the account cache
+    // from the latest balance snapshot and starts the periodic snapshots (see BalanceSnapshotService)
+    public static void warmUp() {
+        LedgerStore current = get();
+        if (current instanceof SqlLedgerStore) {
+            ((SqlLedgerStore) current).warmUp(
+                    Boolean.parseBoolean(System.getProperty("bank.snapshots.warmCache", "true")),
+                    Long.getLong("bank.snapshots.intervalMs", 3_600_000),
+                    Integer.getInteger("bank.snapshots.retain", 24));
+        }
+    }
+
+    private static LedgerStore open() {
+        int requestCacheSize = Integer.getInteger("bank.idempotency.cacheSize", 100_000);
+        long requestRetentionMillis = TimeUnit.HOURS.toMillis(Long.getLong("bank.idempotency.retentionHours", 24));
+        if ("mysql".equalsIgnoreCase(STORAGE)) {
+            return new SqlLedgerStore(requestCacheSize, requestRetentionMillis);
+        }
+        if (!"local".equalsIgnoreCase(STORAGE)) {
+            throw new IllegalArgumentException("Unknown bank.storage: " + STORAGE);
+        }
+
+        Path dir = Paths.get(System.getProperty("bank.ledger.dir", "data/ledger"));
+        String sync = System.getProperty("bank.ledger.sync", "group");
+        if (!"group".equals(sync) && !"async".equals(sync)) {
+            throw new IllegalArgumentException("Unknown bank.ledger.sync: " + sync);
+        }
+        LocalLedgerStore local;
+        try {
+            local = new LocalLedgerStore(dir,
+                    Integer.getInteger("bank.ledger.segmentBytes", 64 * 1024 * 1024),
+                    "group".equals(sync),
+                    Long.getLong("bank.ledger.flushIntervalMs", 50),
+                    Long.getLong("bank.ledger.snapshotIntervalMs", 300_000),
+                    requestCacheSize,
+                    requestRetentionMillis);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open the ledger in " + dir, e);
+        }
+        // Flushes the log and writes a snapshot so the next start does not replay everything
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                local.close();
+            } catch (IOException e) {
+                System.err.println("Could not close the ledger: " + e.getMessage());
+            }
+        }, "ledger-shutdown"));
+        return local;
+    }
+}
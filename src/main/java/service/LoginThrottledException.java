@@ -0,0 +1,10 @@
+package service;
+
+// Thrown when the password hashing pool is saturated; the caller should retry later
+public class LoginThrottledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public LoginThrottledException() {
+        super("Too many logins in progress, try again shortly");
+    }
+}
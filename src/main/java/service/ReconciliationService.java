@@ -0,0 +1,153 @@
+package service;
+
+import model.BalanceDiscrepancy;
+import model.ReconciliationReport;
+import repository.ReconciliationRepository;
+import util.DBConnection;
+import util.UncheckedSQLException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Checks that every accounts.balance equals the net of its transactions: deposits and
+ * incoming transfers add, withdrawals and outgoing transfers subtract.
+ *
+ * The accountId range is split in halves on a fork/join pool down to shards of at most
+ * shardSize ids. Each shard streams its two index ranges of transactions into a long[]
+ * indexed by accountId and then compares it with the shard's balances, all in one
+ * REPEATABLE READ transaction, so writes that happen meanwhile are either fully in the view
+ * or not at all. Shards share nothing, so throughput grows with the number of workers
+ * until the database is the limit; each worker holds one pooled connection.
+ *
+ * Only meaningful for MySQL storage. Balances and their transaction rows always commit
+ * together, with or without group commit (bank.journal.mode).
+ * Balances loaded by a bulk import are only right if the imported history is complete.
+ */
+public class ReconciliationService {
+    private final ReconciliationRepository repository;
+
+    public ReconciliationService() {
+        this.repository = new ReconciliationRepository();
+    }
+
+    // Runs on 'parallelism' workers, keeping the first maxReported discrepancies in the report
+    public ReconciliationReport reconcile(int parallelism, int shardSize, int maxReported) throws SQLException {
+        long start = System.nanoTime();
+        int[] range = repository.findAccountIdRange();
+        if (range == null) {
+            return new ReconciliationReport(0, 0, 0, new ArrayList<>(), 0, System.nanoTime() - start);
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ShardResult result;
+        try {
+            result = pool.invoke(new ShardTask(range[0], range[1] + 1, shardSize, maxReported));
+        } catch (UncheckedSQLException e) {
+            throw e.getCause();
+        } finally {
+            pool.shutdown();
+        }
+        return new ReconciliationReport(result.accounts, result.rows, result.discrepancyCount,
+                result.discrepancies, result.shards, System.nanoTime() - start);
+    }
+
+    private ShardResult reconcileShard(int from, int to, int maxReported) throws SQLException {
+        long[] net = new long[to - from];
+        ShardResult result = new ShardResult(maxReported);
+        result.shards = 1;
+        try (Connection conn = DBConnection.getConnection()) {
+            int isolation = conn.getTransactionIsolation();
+            conn.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            conn.setAutoCommit(false);
+            conn.setReadOnly(true);
+            try {
+                // The first read fixes the view; the balances below are read from the same one
+                result.rows = repository.sumTransactions(conn, from, to, net);
+                repository.readBalances(conn, from, to, (accountId, userId, balance) -> {
+                    result.accounts++;
+                    long expected = net[accountId - from];
+                    if (balance != expected) {
+                        result.add(new BalanceDiscrepancy(accountId, userId, balance, expected));
+                    }
+                });
+            } finally {
+                conn.rollback();
+                conn.setTransactionIsolation(isolation);
+            }
+        }
+        return result;
+    }
+
+    // Reconciles accountIds in [from, to), splitting in halves until a range fits in one shard
+    private final class ShardTask extends RecursiveTask<ShardResult> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from;
+        private final int to;
+        private final int shardSize;
+        private final int maxReported;
+
+        ShardTask(int from, int to, int shardSize, int maxReported) {
+            this.from = from;
+            this.to = to;
+            this.shardSize = shardSize;
+            this.maxReported = maxReported;
+        }
+
+        @Override
+        protected ShardResult compute() {
+            if (to - from <= shardSize) {
+                try {
+                    return reconcileShard(from, to, maxReported);
+                } catch (SQLException e) {
+                    throw new UncheckedSQLException(e);
+                }
+            }
+            int mid = from + (to - from) / 2;
+            ShardTask low = new ShardTask(from, mid, shardSize, maxReported);
+            low.fork();
+            ShardResult high = new ShardTask(mid, to, shardSize, maxReported).compute();
+            return low.join().merge(high);
+        }
+    }
+
+    private static final class ShardResult {
+        final int maxReported;
+        long accounts;
+        long rows;
+        long discrepancyCount;
+        int shards;
+        final List<BalanceDiscrepancy> discrepancies = new ArrayList<>();
+
+        ShardResult(int maxReported) {
+            this.maxReported = maxReported;
+        }
+
+        void add(BalanceDiscrepancy discrepancy) {
+            discrepancyCount++;
+            if (discrepancies.size() < maxReported) {
+                discrepancies.add(discrepancy);
+            }
+        }
+
+        // Adds the other, higher range to this one, keeping discrepancies in accountId order
+        ShardResult merge(ShardResult other) {
+            accounts += other.accounts;
+            rows += other.rows;
+            discrepancyCount += other.discrepancyCount;
+            shards += other.shards;
+            for (BalanceDiscrepancy discrepancy : other.discrepancies) {
+                if (discrepancies.size() == maxReported) {
+                    break;
+                }
+                discrepancies.add(discrepancy);
+            }
+            return this;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package service;
+
+import model.Account;
+import model.RollupPeriod;
+import model.StatementTotal;
+import repository.LedgerStore;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Statement totals (count, sum, min and max per kind of transaction) read from the daily and
+ * monthly rollups instead of the transactions themselves. A date range is answered with the
+ * monthly buckets of the whole months inside it and the daily buckets of the partial months at
+ * either end, so the cost grows with the number of buckets, not with the number of transactions.
+ */
+public class ReportingService {
+    private static final String[] KINDS = {
+            StatementTotal.DEPOSIT, StatementTotal.WITHDRAWAL, StatementTotal.TRANSFER_IN, StatementTotal.TRANSFER_OUT };
+
+    private final LedgerStore store;
+
+    public ReportingService() {
+        this(LedgerStores.get());
+    }
+
+    public ReportingService(LedgerStore store) {
+        this.store = store;
+    }
+
+    // The user's totals per kind for transactions dated from 'from' to 'to', both days included.
+    // Empty if the user has no account or nothing happened in the range.
+    public Map<String, StatementTotal> getStatement(int userId, LocalDate from, LocalDate to) throws SQLException {
+        Account account = store.findAccountByUserId(userId);
+        if (account == null) {
+            return Collections.emptyMap();
+        }
+        int accountId = account.getAccountId();
+        return combine(from, to, (period, start, end) -> store.findStatementTotals(accountId, period, start, end));
+    }
+
+    // The same over every account; a transfer counts once as TRANSFER_OUT and once as TRANSFER_IN
+    public Map<String, StatementTotal> getBankStatement(LocalDate from, LocalDate to) throws SQLException {
+        return combine(from, to, store::findBankTotals);
+    }
+
+    // The user's buckets of one period size covering 'from' to 'to', oldest first
+    public List<StatementTotal> getTotals(int userId, RollupPeriod period, LocalDate from, LocalDate to)
+            throws SQLException {
+        Account account = store.findAccountByUserId(userId);
+        if (account == null) {
+            return new ArrayList<>();
+        }
+        return store.findStatementTotals(account.getAccountId(), period, period.start(from),
+                period.next(period.start(to)));
+    }
+
+    private Map<String, StatementTotal> combine(LocalDate from, LocalDate to, BucketQuery query) throws SQLException {
+        LocalDate end = to.plusDays(1);
+        LocalDate firstWholeMonth = from.getDayOfMonth() == 1 ? from : from.withDayOfMonth(1).plusMonths(1);
+        LocalDate lastWholeMonthEnd = end.withDayOfMonth(1);
+
+        List<StatementTotal> buckets = new ArrayList<>();
+        if (firstWholeMonth.isBefore(lastWholeMonthEnd)) {
+            buckets.addAll(query.find(RollupPeriod.DAY, from, firstWholeMonth));
+            buckets.addAll(query.find(RollupPeriod.MONTH, firstWholeMonth, lastWholeMonthEnd));
+            buckets.addAll(query.find(RollupPeriod.DAY, lastWholeMonthEnd, end));
+        } else if (from.isBefore(end)) {
+            buckets.addAll(query.find(RollupPeriod.DAY, from, end));
+        }
+
+        Map<String, StatementTotal> byKind = new LinkedHashMap<>();
+        for (String kind : KINDS) {
+            for (StatementTotal bucket : buckets) {
+                if (kind.equals(bucket.getKind())) {
+                    StatementTotal total = byKind.get(kind);
+                    byKind.put(kind, total == null ? bucket : total.plus(bucket));
+                }
+            }
+        }
+        return byKind;
+    }
+
+    private interface BucketQuery {
+        List<StatementTotal> find(RollupPeriod period, LocalDate from, LocalDate to) throws SQLException;
+    }
+}
@@ -0,0 +1,100 @@
+package service;
+
+import model.IdempotencyRecord;
+import repository.IdempotencyRepository;
+import repository.RequestKeyConflictException;
+import util.LruCache;
+import util.ThreadPools;
+import util.TransactionManager;
+
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Applies keyed money movements at most once. The outcome of a keyed request is inserted into
+ * idempotency_keys inside the movement's own database transaction, so the two commit or roll
+ * back together, and the primary key turns any later or concurrent attempt with the same key
+ * into a duplicate key error: that attempt rolls back and answers with the recorded outcome.
+ *
+ * Recent outcomes are also kept in a bounded in-memory cache, so a retry of a request this
+ * process has seen is answered without touching the database. Keys are kept for the
+ * retention period; a request retried after that runs again.
+ */
+public class RequestDeduplicator {
+    private static final long PURGE_INTERVAL_MINUTES = 60;
+
+    private final IdempotencyRepository repository;
+    private final LruCache<String, IdempotencyRecord> recent;
+    private final long retentionMillis;
+    private ScheduledExecutorService purger;
+
+    // The movement, given the hook to run in its transaction (see TransferEngine.OutcomeHook)
+    public interface Movement {
+        boolean run(TransferEngine.OutcomeHook hook) throws SQLException;
+    }
+
+    public RequestDeduplicator(int cacheSize, long retentionMillis) {
+        this.repository = new IdempotencyRepository();
+        this.recent = new LruCache<>(cacheSize, retentionMillis, TimeUnit.MILLISECONDS);
+        this.retentionMillis = retentionMillis;
+    }
+
+    // Runs the movement unless the key was used before, in which case the first outcome is
+    // returned. A key reused for a different movement fails with RequestKeyConflictException.
+    public boolean execute(IdempotencyRecord request, Movement movement) throws SQLException {
+        IdempotencyRecord recorded = recent.get(request.cacheKey());
+        if (recorded != null) {
+            return replay(request, recorded);
+        }
+        try {
+            return movement.run((conn, applied) -> {
+                IdempotencyRecord outcome = request.withOutcome(applied, LocalDateTime.now().withNano(0));
+                repository.insert(conn, outcome);
+                TransactionManager.afterCommit(() -> recent.put(outcome.cacheKey(), outcome));
+            });
+        } catch (SQLException e) {
+            if (!IdempotencyRepository.isDuplicateKey(e)) {
+                throw e;
+            }
+            // Another attempt with this key committed first (possibly in another process)
+            recorded = repository.find(request.getAccountId(), request.getRequestKey());
+            if (recorded == null) {
+                throw e;
+            }
+            recent.put(recorded.cacheKey(), recorded);
+            return replay(request, recorded);
+        }
+    }
+
+    // Deletes keys older than the retention period every hour on a background thread
+    public synchronized void startPurging() {
+        if (purger != null) {
+            return;
+        }
+        purger = Executors.newSingleThreadScheduledExecutor(ThreadPools.daemonThreads("request-key-purge"));
+        purger.scheduleWithFixedDelay(() -> {
+            try {
+                repository.deleteOlderThan(LocalDateTime.now().minusNanos(retentionMillis * 1_000_000));
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Request key purge failed: " + e.getMessage());
+            }
+        }, PURGE_INTERVAL_MINUTES, PURGE_INTERVAL_MINUTES, TimeUnit.MINUTES);
+    }
+
+    public synchronized void stop() {
+        if (purger != null) {
+            purger.shutdownNow();
+            purger = null;
+        }
+    }
+
+    static boolean replay(IdempotencyRecord request, IdempotencyRecord recorded) {
+        if (!request.sameRequest(recorded)) {
+            throw new RequestKeyConflictException(recorded);
+        }
+        return recorded.isApplied();
+    }
+}
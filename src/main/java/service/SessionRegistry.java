@@ -0,0 +1,175 @@
+package service;
+
+import model.Session;
+import model.User;
+import util.ThreadPools;
+
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide table of logged-in sessions keyed by an opaque random token.
+ *
+ * Lookups are a ConcurrentHashMap get plus an expiry check on the session itself, so
+ * they never block each other. Idle sessions are reclaimed by a hashed timer wheel:
+ * each session sits in the slot of its deadline and is only looked at when that slot
+ * comes round. A session that was used in the meantime is simply moved to the slot of
+ * its new deadline, so request threads never touch the wheel and nothing scans the
+ * whole table.
+ */
+public class SessionRegistry {
+    private static final SessionRegistry INSTANCE = new SessionRegistry(
+            Long.getLong("bank.session.idleTimeoutMs", TimeUnit.MINUTES.toMillis(30)),
+            Long.getLong("bank.session.tickMs", 1000));
+
+    private static final int TOKEN_BYTES = 32;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+    private final long idleTimeoutNanos;
+    private final long tickNanos;
+    // Touching a session is skipped when it was already touched within this window,
+    // so a busy session does not write its cache line on every request
+    private final long touchGranularityNanos;
+
+    // Timer wheel; the slot count is a power of two covering at least one idle timeout
+    private final Queue<Session>[] wheel;
+    private final int wheelMask;
+    private final long originNanos = System.nanoTime();
+    // Last tick whose slot has been processed; only the wheel thread advances it
+    private volatile long processedTick;
+    private final ScheduledExecutorService ticker;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong expired = new AtomicLong();
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public SessionRegistry(long idleTimeoutMillis, long tickMillis) {
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this.touchGranularityNanos = Math.min(tickNanos, idleTimeoutNanos / 4);
+
+        int slots = Integer.highestOneBit((int) Math.min(1 << 20, idleTimeoutNanos / tickNanos + 1)) << 1;
+        this.wheel = new Queue[slots];
+        for (int i = 0; i < slots; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+        this.wheelMask = slots - 1;
+
+        this.ticker = Executors.newSingleThreadScheduledExecutor(ThreadPools.daemonThreads("session-wheel"));
+        ticker.scheduleWithFixedDelay(this::advance, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public static SessionRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    public Session create(User user) {
+        byte[] bytes = new byte[TOKEN_BYTES];
+        random.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        long now = System.nanoTime();
+        Session session = new Session(token, user, now);
+        sessions.put(token, session);
+        schedule(session, now + idleTimeoutNanos);
+        created.incrementAndGet();
+        return session;
+    }
+
+    // Returns the live session for the token and marks it as used, or null if unknown or idle too long
+    public Session get(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        long now = System.nanoTime();
+        long idle = now - session.getLastAccessNanos();
+        if (idle >= idleTimeoutNanos) {
+            // The wheel may not have reached it yet; expire it here so the timeout is exact
+            if (sessions.remove(token, session)) {
+                expired.incrementAndGet();
+            }
+            return null;
+        }
+        if (idle > touchGranularityNanos) {
+            session.touch(now);
+        }
+        return session;
+    }
+
+    public void remove(String token) {
+        if (token != null) {
+            sessions.remove(token);
+        }
+    }
+
+    // Ends every session of a user, e.g. after an admin changed their role or deleted them.
+    // This walks the table, which is fine for an occasional admin action.
+    public void removeUser(int userId) {
+        sessions.values().removeIf(session -> session.getUserId() == userId);
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    public String getStats() {
+        return String.format("active=%d, created=%d, expired=%d", sessions.size(), created.get(), expired.get());
+    }
+
+    public void shutdown() {
+        ticker.shutdownNow();
+    }
+
+    private long tickOf(long nanos) {
+        return (nanos - originNanos) / tickNanos;
+    }
+
+    // Deadlines beyond one revolution land in an earlier slot and are simply rescheduled when seen.
+    // A slot that is being processed concurrently may be missed for one revolution; get() still
+    // enforces the exact timeout, so that only delays reclaiming the memory.
+    private void schedule(Session session, long deadlineNanos) {
+        long tick = Math.max(tickOf(deadlineNanos), processedTick + 1);
+        tick = Math.min(tick, processedTick + wheel.length - 1);
+        wheel[(int) (tick & wheelMask)].add(session);
+    }
+
+    private void advance() {
+        long now = System.nanoTime();
+        long currentTick = tickOf(now);
+        while (processedTick < currentTick) {
+            long tick = processedTick + 1;
+            processedTick = tick;
+            Queue<Session> slot = wheel[(int) (tick & wheelMask)];
+            // Only drain what was there when we started so rescheduled entries are not revisited
+            for (int n = slot.size(); n > 0; n--) {
+                Session session = slot.poll();
+                if (session == null) {
+                    break;
+                }
+                if (sessions.get(session.getToken()) != session) {
+                    continue; // Logged out or already expired
+                }
+                long deadline = session.getLastAccessNanos() + idleTimeoutNanos;
+                if (deadline - now <= 0) {
+                    if (sessions.remove(session.getToken(), session)) {
+                        expired.incrementAndGet();
+                    }
+                } else {
+                    schedule(session, deadline);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,240 @@
+package service;
+
+import model.Account;
+import model.IdempotencyRecord;
+import model.Money;
+import model.Page;
+import model.RollupPeriod;
+import model.StatementTotal;
+import model.Transaction;
+import model.TransactionCursor;
+import repository.AccountRepository;
+import repository.LedgerStore;
+import repository.RollupRepository;
+import repository.TransactionRepository;
+import util.IdBitSet;
+import util.IntLongMap;
+import util.IntObjectMap;
+
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// Ledger kept in the MySQL accounts and transactions tables
+public class SqlLedgerStore implements LedgerStore {
+    private final AccountRepository accountRepository;
+    private final TransactionRepository transactionRepository;
+    private final TransferEngine transferEngine;
+    private final BalanceSnapshotService snapshots;
+    private final RollupRepository rollupRepository;
+    private final RequestDeduplicator requests;
+    // userIds known to have an account. Only a hint: a stale bit costs the lookup and then the upsert
+    private final IdBitSet provisioned = new IdBitSet();
+
+    public SqlLedgerStore() {
+        this(100_000, TimeUnit.HOURS.toMillis(24));
+    }
+
+    // Keyed requests are remembered in memory for up to requestCacheSize keys, and in the
+    // database for requestRetentionMillis
+    public SqlLedgerStore(int requestCacheSize, long requestRetentionMillis) {
+        this.accountRepository = new AccountRepository();
+        this.transactionRepository = new TransactionRepository();
+        this.transferEngine = new TransferEngine(accountRepository, transactionRepository);
+        this.snapshots = new BalanceSnapshotService();
+        this.rollupRepository = new RollupRepository();
+        this.requests = new RequestDeduplicator(requestCacheSize, requestRetentionMillis);
+    }
+
+    // Fills the account cache from the latest balance snapshot and starts taking new ones
+    // periodically, along with the purge of expired request keys. Call once at startup, after
+    // the schema is migrated.
+    public void warmUp(boolean warmCache, long snapshotIntervalMillis, int retainSnapshots) {
+        if (warmCache) {
+            try {
+                int accounts = snapshots.warmAccountCache();
+                if (accounts > 0) {
+                    System.out.println("Account cache warmed with " + accounts + " accounts from the latest balance snapshot.");
+                }
+            } catch (SQLException e) {
+                System.err.println("Could not warm the account cache: " + e.getMessage());
+            }
+        }
+        snapshots.startPeriodic(snapshotIntervalMillis, retainSnapshots);
+        requests.startPurging();
+    }
+
+    @Override
+    public Account findAccountByUserId(int userId) throws SQLException {
+        Account account = accountRepository.findByUserId(userId);
+        if (account != null) {
+            provisioned.set(userId);
+        }
+        return account;
+    }
+
+    @Override
+    public Account findAccountById(int accountId) throws SQLException {
+        return accountRepository.findById(accountId);
+    }
+
+    @Override
+    public IntObjectMap<Account> findAccountsByUserIds(int[] userIds) throws SQLException {
+        IntObjectMap<Account> accounts = accountRepository.findByUserIds(userIds);
+        accounts.forEach((userId, account) -> provisioned.set(userId));
+        return accounts;
+    }
+
+    @Override
+    public IntObjectMap<Account> findAccountsByIds(int[] accountIds) throws SQLException {
+        return accountRepository.findByIds(accountIds);
+    }
+
+    // Users already seen with an account are looked up (usually in the account cache); the
+    // others go straight to the upsert, which finds or creates the account in one statement
+    @Override
+    public int provisionAccount(int userId) throws SQLException {
+        if (provisioned.get(userId)) {
+            Account account = accountRepository.findByUserId(userId);
+            if (account != null) {
+                return account.getAccountId();
+            }
+        }
+        int accountId = accountRepository.provision(userId);
+        if (accountId != 0) {
+            provisioned.set(userId);
+        }
+        return accountId;
+    }
+
+    @Override
+    public long findBalanceAt(int accountId, LocalDateTime time) throws SQLException {
+        return snapshots.getBalanceAt(accountId, time);
+    }
+
+    @Override
+    public boolean deposit(int accountId, long amount, String requestKey) throws SQLException {
+        if (!Money.isPositive(amount)) {
+            return false;
+        }
+        if (requestKey == null) {
+            return deposit(accountId, amount, (TransferEngine.OutcomeHook) null);
+        }
+        return requests.execute(IdempotencyRecord.request(accountId, requestKey, "DEPOSIT", accountId, amount),
+                hook -> deposit(accountId, amount, hook));
+    }
+
+    private boolean deposit(int accountId, long amount, TransferEngine.OutcomeHook hook) throws SQLException {
+        return transferEngine.executeMovement(conn -> {
+            boolean applied = accountRepository.credit(conn, accountId, amount);
+            if (applied) {
+                Transaction transaction = new Transaction(
+                        0, // ID will be set by the database
+                        accountId,
+                        accountId,
+                        amount,
+                        LocalDateTime.now(),
+                        "DEPOSIT");
+                transactionRepository.create(conn, transaction);
+            }
+            if (hook != null) {
+                hook.record(conn, applied);
+            }
+            return applied;
+        });
+    }
+
+    @Override
+    public boolean withdraw(int accountId, long amount, String requestKey) throws SQLException {
+        if (!Money.isPositive(amount)) {
+            return false;
+        }
+        if (requestKey == null) {
+            return withdraw(accountId, amount, (TransferEngine.OutcomeHook) null);
+        }
+        return requests.execute(IdempotencyRecord.request(accountId, requestKey, "WITHDRAWAL", accountId, amount),
+                hook -> withdraw(accountId, amount, hook));
+    }
+
+    private boolean withdraw(int accountId, long amount, TransferEngine.OutcomeHook hook) throws SQLException {
+        return transferEngine.executeMovement(conn -> {
+            // The guarded debit checks the balance in the database; the cached balance may be stale
+            boolean applied = accountRepository.debit(conn, accountId, amount);
+            if (applied) {
+                Transaction transaction = new Transaction(
+                        0, // ID will be set by the database
+                        accountId,
+                        accountId,
+                        amount,
+                        LocalDateTime.now(),
+                        "WITHDRAWAL");
+                transactionRepository.create(conn, transaction);
+            }
+            if (hook != null) {
+                hook.record(conn, applied);
+            }
+            return applied;
+        });
+    }
+
+    @Override
+    public boolean transfer(int fromAccountId, int toAccountId, long amount, String requestKey) throws SQLException {
+        if (requestKey == null || fromAccountId == toAccountId || !Money.isPositive(amount)) {
+            return transferEngine.transfer(fromAccountId, toAccountId, amount);
+        }
+        return requests.execute(IdempotencyRecord.request(fromAccountId, requestKey, "TRANSFER", toAccountId, amount),
+                hook -> transferEngine.transfer(fromAccountId, toAccountId, amount, hook));
+    }
+
+    @Override
+    public List<Transaction> findTransactions(int accountId) throws SQLException {
+        return transactionRepository.findByAccountId(accountId);
+    }
+
+    @Override
+    public Page<Transaction> findTransactionPage(int accountId, TransactionCursor cursor, int pageSize)
+            throws SQLException {
+        return transactionRepository.findPageByAccountId(accountId, cursor, pageSize);
+    }
+
+    // The stream holds a database connection until closed
+    @Override
+    public Stream<Transaction> streamTransactions(int accountId) throws SQLException {
+        return transactionRepository.streamByAccountId(accountId);
+    }
+
+    @Override
+    public List<Transaction> findAllTransactions() throws SQLException {
+        return transactionRepository.findAll();
+    }
+
+    @Override
+    public Page<Transaction> findAllTransactionPage(TransactionCursor cursor, int pageSize) throws SQLException {
+        return transactionRepository.findPage(cursor, pageSize);
+    }
+
+    @Override
+    public Stream<Transaction> streamAllTransactions() throws SQLException {
+        return transactionRepository.streamAll();
+    }
+
+    // Read from transaction_rollups, one row per bucket and kind
+    @Override
+    public List<StatementTotal> findStatementTotals(int accountId, RollupPeriod period, LocalDate from, LocalDate to)
+            throws SQLException {
+        return rollupRepository.findByAccount(accountId, period, from, to);
+    }
+
+    @Override
+    public List<StatementTotal> findBankTotals(RollupPeriod period, LocalDate from, LocalDate to) throws SQLException {
+        return rollupRepository.findBankWide(period, from, to);
+    }
+
+    @Override
+    public IntLongMap countTransactions(int[] accountIds) throws SQLException {
+        return rollupRepository.countByAccounts(accountIds);
+    }
+}
@@ -0,0 +1,189 @@
+package service;
+
+import model.Money;
+import model.Transaction;
+import repository.AccountRepository;
+import repository.TransactionRepository;
+import util.SqlCall;
+import util.SqlWork;
+import util.TransactionManager;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransactionRollbackException;
+import java.time.LocalDateTime;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Moves money between accounts from many threads at once. Each account maps to one
+ * of a fixed set of lock stripes and a transfer always takes its two stripes in
+ * ascending order, so opposite transfers can never deadlock in the JVM. Row updates
+ * inside the database follow the same accountId order, and transactions the database
+ * still aborts (deadlock with another process, lock wait timeout) are retried with
+ * exponential backoff.
+ */
+public class TransferEngine {
+    private static final int DEFAULT_STRIPES = 1024;
+    private static final int DEFAULT_MAX_ATTEMPTS = 5;
+    private static final long BASE_BACKOFF_MILLIS = 5;
+    private static final long MAX_BACKOFF_MILLIS = 500;
+
+    // MySQL error codes for ER_LOCK_DEADLOCK and ER_LOCK_WAIT_TIMEOUT
+    private static final int MYSQL_DEADLOCK = 1213;
+    private static final int MYSQL_LOCK_WAIT_TIMEOUT = 1205;
+
+    private final AccountRepository accountRepository;
+    private final TransactionRepository transactionRepository;
+    private final ReentrantLock[] stripes;
+    private final int stripeMask;
+    private final int maxAttempts;
+
+    public TransferEngine(AccountRepository accountRepository, TransactionRepository transactionRepository) {
+        this(accountRepository, transactionRepository, DEFAULT_STRIPES, DEFAULT_MAX_ATTEMPTS);
+    }
+
+    public TransferEngine(AccountRepository accountRepository, TransactionRepository transactionRepository,
+            int stripeCount, int maxAttempts) {
+        if (stripeCount <= 0 || Integer.bitCount(stripeCount) != 1) {
+            throw new IllegalArgumentException("Stripe count must be a power of two: " + stripeCount);
+        }
+        this.accountRepository = accountRepository;
+        this.transactionRepository = transactionRepository;
+        this.stripes = new ReentrantLock[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+        this.stripeMask = stripeCount - 1;
+        this.maxAttempts = maxAttempts;
+    }
+
+    // Runs inside a money movement's database transaction once its outcome is known, so whatever
+    // it writes commits or rolls back together with the movement
+    public interface OutcomeHook {
+        void record(Connection conn, boolean applied) throws SQLException;
+    }
+
+    public boolean transfer(int fromAccountId, int toAccountId, long amount) throws SQLException {
+        return transfer(fromAccountId, toAccountId, amount, null);
+    }
+
+    // The hook, if any, also runs when the transfer is refused for lack of funds
+    public boolean transfer(int fromAccountId, int toAccountId, long amount, OutcomeHook hook) throws SQLException {
+        if (fromAccountId == toAccountId || !Money.isPositive(amount)) {
+            return false;
+        }
+
+        // Always lock the lower stripe first, whichever direction the money moves
+        int first = stripeFor(fromAccountId);
+        int second = stripeFor(toAccountId);
+        if (first > second) {
+            int tmp = first;
+            first = second;
+            second = tmp;
+        }
+
+        stripes[first].lock();
+        try {
+            if (second != first) {
+                stripes[second].lock();
+            }
+            try {
+                return executeMovement(conn -> {
+                    // Touch rows in accountId order so concurrent transactions lock them in the same order
+                    boolean applied;
+                    if (fromAccountId < toAccountId) {
+                        applied = accountRepository.debit(conn, fromAccountId, amount)
+                                && accountRepository.credit(conn, toAccountId, amount);
+                    } else {
+                        applied = accountRepository.credit(conn, toAccountId, amount)
+                                && accountRepository.debit(conn, fromAccountId, amount);
+                    }
+                    if (!applied) {
+                        TransactionManager.rollback(conn);
+                        if (hook != null) {
+                            hook.record(conn, false);
+                        }
+                        return false;
+                    }
+
+                    Transaction transaction = new Transaction(
+                            0, // ID will be set by the database
+                            fromAccountId,
+                            toAccountId,
+                            amount,
+                            LocalDateTime.now(),
+                            "TRANSFER");
+                    transactionRepository.create(conn, transaction);
+                    if (hook != null) {
+                        hook.record(conn, true);
+                    }
+                    return true;
+                });
+            } finally {
+                if (second != first) {
+                    stripes[second].unlock();
+                }
+            }
+        } finally {
+            stripes[first].unlock();
+        }
+    }
+
+    // Runs the work in its own database transaction, retrying if the database aborts it
+    // because of a deadlock, a serialization failure or a lock wait timeout.
+    public <T> T executeWithRetry(SqlWork<T> work) throws SQLException {
+        return withRetry(() -> TransactionManager.inTransaction(work));
+    }
+
+    // The same for a money movement, which joins the next group commit when the journal is
+    // enabled (see TransactionRepository.inUnitOfWork). Commit hooks run after the work has
+    // committed and never throw, so a committed movement is never retried.
+    public <T> T executeMovement(SqlWork<T> work) throws SQLException {
+        return withRetry(() -> TransactionRepository.inUnitOfWork(work));
+    }
+
+    private <T> T withRetry(SqlCall<T> call) throws SQLException {
+        for (int attempt = 1;; attempt++) {
+            try {
+                return call.call();
+            } catch (SQLException e) {
+                if (attempt >= maxAttempts || !isRetryable(e)) {
+                    throw e;
+                }
+                backoff(attempt);
+            }
+        }
+    }
+
+    private int stripeFor(int accountId) {
+        // Spread sequential ids so neighbouring accounts do not share a stripe
+        int h = accountId * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & stripeMask;
+    }
+
+    static boolean isRetryable(SQLException e) {
+        for (SQLException current = e; current != null; current = current.getNextException()) {
+            String state = current.getSQLState();
+            if (current instanceof SQLTransactionRollbackException
+                    || (state != null && state.startsWith("40"))
+                    || current.getErrorCode() == MYSQL_DEADLOCK
+                    || current.getErrorCode() == MYSQL_LOCK_WAIT_TIMEOUT) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void backoff(int attempt) throws SQLException {
+        long ceiling = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << (attempt - 1));
+        // Full jitter keeps retrying transactions from colliding again in lockstep
+        long sleep = ThreadLocalRandom.current().nextLong(ceiling + 1);
+        try {
+            Thread.sleep(sleep);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while backing off before retry.", e);
+        }
+    }
+}
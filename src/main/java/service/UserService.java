@@ -1,8 +1,7 @@
 package service;
 
-import model.Account;
 import model.User;
-import repository.AccountRepository;
+import repository.LedgerStore;
 import repository.UserRepository;
 
 import java.sql.SQLException;
@@ -10,29 +9,37 @@ import java.util.List;
 
 public class UserService {
     private final UserRepository userRepository;
-    private final AccountRepository accountRepository;
+    private final LedgerStore ledgerStore;
+    private final AuthService authService;
 
     public UserService() {
         this.userRepository = new UserRepository();
-        this.accountRepository = new AccountRepository();
+        this.ledgerStore = LedgerStores.get();
+        this.authService = new AuthService();
     }
 
     public void createUser(String username, String password, String role) throws SQLException {
-        // Create user
-        User user = new User(0, username, password, role);
+        // Create user; only the password hash is stored
+        User user = new User(0, username, authService.hashPassword(password), role);
         int userId = userRepository.create(user);
 
         // Create account for the user with initial balance of 0
-        Account account = new Account(0, userId, 0.0);
-        accountRepository.create(account);
+        ledgerStore.provisionAccount(userId);
     }
 
+    // The password in the given user is plaintext and is hashed before it is stored
     public void updateUser(User user) throws SQLException {
-        userRepository.update(user);
+        userRepository.update(new User(user.getUserId(), user.getUsername(),
+                authService.hashPassword(user.getPassword()), user.getRole()));
+        // Sessions cache the role, so make the user log in again
+        SessionRegistry.getInstance().removeUser(user.getUserId());
+        AuthService.forgetVerifiedLogins();
     }
 
     public void deleteUser(int userId) throws SQLException {
         userRepository.delete(userId);
+        SessionRegistry.getInstance().removeUser(userId);
+        AuthService.forgetVerifiedLogins();
     }
 
     public List<User> getAllUsers() throws SQLException {
@@ -42,4 +49,14 @@ public class UserService {
     public User getUserByUsername(String username) throws SQLException {
         return userRepository.findByUsername(username);
     }
+
+    // The id of the user with this username, or 0, answered from memory (see UsernameIndex)
+    public int findUserId(String username) throws SQLException {
+        return userRepository.findUserId(username);
+    }
+
+    // Usernames starting with prefix, for autocomplete in admin tools; answered from memory
+    public List<String> completeUsername(String prefix, int limit) throws SQLException {
+        return userRepository.completeUsername(prefix, limit);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,67 @@
+package tools;
+
+import bulk.BulkExporter;
+import bulk.BulkFormat;
+import bulk.BulkImporter;
+import bulk.BulkReport;
+import service.BalanceSnapshotService;
+import util.DBConnection;
+import util.SchemaMigrator;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Bulk export and import of users, accounts and transactions.
+ *
+ * Usage:
+ *   java tools.BulkLoad export DIR [csv|bin]
+ *   java tools.BulkLoad import DIR [csv|bin] [jobId] [chunkSize] [writers]
+ *
+ * An import that fails part way can be run again with the same jobId; chunks that were
+ * already committed are skipped. The jobId defaults to the directory name.
+ */
+public class BulkLoad {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("Usage: java tools.BulkLoad export DIR [csv|bin]");
+            System.out.println("       java tools.BulkLoad import DIR [csv|bin] [jobId] [chunkSize] [writers]");
+            System.exit(2);
+        }
+        Path dir = Paths.get(args[1]);
+        BulkFormat format = args.length > 2 ? BulkFormat.fromName(args[2]) : BulkFormat.CSV;
+
+        List<BulkReport> reports;
+        try {
+            SchemaMigrator.migrate();
+            if ("export".equals(args[0])) {
+                reports = new BulkExporter(dir, format).run();
+            } else if ("import".equals(args[0])) {
+                String jobId = args.length > 3 ? args[3] : dir.toAbsolutePath().normalize().getFileName().toString();
+                int chunkSize = args.length > 4 ? Integer.parseInt(args[4]) : 5_000;
+                int writers = args.length > 5 ? Integer.parseInt(args[5]) : 4;
+                System.out.printf("Importing %s as job '%s', %,d rows per chunk, %d writers%n",
+                        dir, jobId, chunkSize, writers);
+                reports = new BulkImporter(dir, format, jobId, chunkSize, writers).run();
+                // Imported balances have no transaction rows behind them; checkpoint them so
+                // point-in-time balances are right from here on
+                System.out.println("Balance snapshot " + new BalanceSnapshotService().takeSnapshot());
+            } else {
+                throw new IllegalArgumentException("Unknown command: " + args[0]);
+            }
+        } finally {
+            DBConnection.shutdown();
+        }
+
+        long rows = 0;
+        long nanos = 0;
+        for (BulkReport report : reports) {
+            System.out.println(report);
+            rows += report.getRows();
+            nanos += report.getElapsedNanos();
+        }
+        System.out.printf("Total: %,d rows (%,.0f rows/s)%n", rows, nanos == 0 ? 0 : rows * 1e9 / nanos);
+    }
+}
@@ -0,0 +1,163 @@
+package tools;
+
+import util.DBConnection;
+import util.SchemaMigrator;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Prints the execution plan and latency of the hot queries. With --apply, pending
+ * schema migrations are applied after the first round and the report is repeated,
+ * giving a before/after comparison on the same data.
+ *
+ * Usage: java tools.QueryPlanReport [--apply] [accountId] [iterations]
+ */
+public class QueryPlanReport {
+    private static final int WARMUP = 20;
+
+    public static void main(String[] args) throws SQLException {
+        List<String> rest = new ArrayList<>(Arrays.asList(args));
+        boolean apply = rest.remove("--apply");
+        int accountId = rest.size() > 0 ? Integer.parseInt(rest.get(0)) : busiestAccount();
+        int iterations = rest.size() > 1 ? Integer.parseInt(rest.get(1)) : 200;
+        int userId = ownerOf(accountId);
+
+        List<QueryCase> cases = new ArrayList<>();
+        cases.add(new QueryCase("account by user",
+                "SELECT * FROM accounts WHERE userId = ?", userId));
+        cases.add(new QueryCase("history (old OR form, full)",
+                "SELECT * FROM transactions WHERE fromAccountId = ? OR toAccountId = ? ORDER BY dateTime DESC",
+                accountId, accountId));
+        cases.add(new QueryCase("history (UNION form, full)",
+                "SELECT * FROM transactions WHERE fromAccountId = ?"
+                        + " UNION ALL SELECT * FROM transactions WHERE toAccountId = ? AND fromAccountId <> ?"
+                        + " ORDER BY dateTime DESC, transactionId DESC",
+                accountId, accountId, accountId));
+        cases.add(new QueryCase("history first page (old OR form)",
+                "SELECT * FROM transactions WHERE (fromAccountId = ? OR toAccountId = ?)"
+                        + " ORDER BY dateTime DESC, transactionId DESC LIMIT 21",
+                accountId, accountId));
+        cases.add(new QueryCase("history first page (UNION form)",
+                "(SELECT * FROM transactions WHERE fromAccountId = ? ORDER BY dateTime DESC, transactionId DESC LIMIT 21)"
+                        + " UNION ALL (SELECT * FROM transactions WHERE toAccountId = ? AND fromAccountId <> ?"
+                        + " ORDER BY dateTime DESC, transactionId DESC LIMIT 21)"
+                        + " ORDER BY dateTime DESC, transactionId DESC LIMIT 21",
+                accountId, accountId, accountId));
+        cases.add(new QueryCase("all transactions first page",
+                "SELECT * FROM transactions ORDER BY dateTime DESC, transactionId DESC LIMIT 21"));
+
+        System.out.println("Account " + accountId + " (user " + userId + "), " + iterations + " iterations per query");
+        List<String> pending = SchemaMigrator.pendingScripts();
+        report(pending.isEmpty() ? "Current schema" : "Before " + pending, cases, iterations);
+
+        if (apply && !pending.isEmpty()) {
+            SchemaMigrator.migrate();
+            report("After " + pending, cases, iterations);
+        }
+    }
+
+    private static void report(String title, List<QueryCase> cases, int iterations) throws SQLException {
+        System.out.println("\n=== " + title + " ===");
+        try (Connection conn = DBConnection.getConnection()) {
+            for (QueryCase queryCase : cases) {
+                System.out.println("\n-- " + queryCase.name);
+                printPlan(conn, queryCase);
+                long[] nanos = time(conn, queryCase, iterations);
+                Arrays.sort(nanos);
+                System.out.printf("latency: p50=%.3f ms, p95=%.3f ms, p99=%.3f ms, max=%.3f ms%n",
+                        percentile(nanos, 0.50), percentile(nanos, 0.95), percentile(nanos, 0.99),
+                        nanos[nanos.length - 1] / 1e6);
+            }
+        }
+    }
+
+    private static void printPlan(Connection conn, QueryCase queryCase) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("EXPLAIN " + queryCase.sql)) {
+            queryCase.bind(stmt);
+            try (ResultSet rs = stmt.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                while (rs.next()) {
+                    StringBuilder row = new StringBuilder("plan:");
+                    for (int i = 1; i <= meta.getColumnCount(); i++) {
+                        Object value = rs.getObject(i);
+                        if (value != null) {
+                            row.append(' ').append(meta.getColumnLabel(i)).append('=').append(value);
+                        }
+                    }
+                    System.out.println(row);
+                }
+            }
+        } catch (SQLException e) {
+            System.out.println("plan: unavailable (" + e.getMessage() + ")");
+        }
+    }
+
+    private static long[] time(Connection conn, QueryCase queryCase, int iterations) throws SQLException {
+        long[] nanos = new long[iterations];
+        try (PreparedStatement stmt = conn.prepareStatement(queryCase.sql)) {
+            queryCase.bind(stmt);
+            for (int i = -WARMUP; i < iterations; i++) {
+                long start = System.nanoTime();
+                try (ResultSet rs = stmt.executeQuery()) {
+                    while (rs.next()) {
+                        // Fetch every row so the timing includes transfer, not just execution
+                    }
+                }
+                if (i >= 0) {
+                    nanos[i] = System.nanoTime() - start;
+                }
+            }
+        }
+        return nanos;
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static int busiestAccount() throws SQLException {
+        String sql = "SELECT fromAccountId, COUNT(*) AS n FROM transactions GROUP BY fromAccountId ORDER BY n DESC LIMIT 1";
+        try (Connection conn = DBConnection.getConnection();
+                Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery(sql)) {
+            return rs.next() ? rs.getInt(1) : 1;
+        }
+    }
+
+    private static int ownerOf(int accountId) throws SQLException {
+        try (Connection conn = DBConnection.getConnection();
+                PreparedStatement stmt = conn.prepareStatement("SELECT userId FROM accounts WHERE accountId = ?")) {
+            stmt.setInt(1, accountId);
+            try (ResultSet rs = stmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 1;
+            }
+        }
+    }
+
+    private static final class QueryCase {
+        final String name;
+        final String sql;
+        final Object[] params;
+
+        QueryCase(String name, String sql, Object... params) {
+            this.name = name;
+            this.sql = sql;
+            this.params = params;
+        }
+
+        void bind(PreparedStatement stmt) throws SQLException {
+            for (int i = 0; i < params.length; i++) {
+                stmt.setObject(i + 1, params[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package tools;
+
+import repository.RollupRepository;
+import util.DBConnection;
+import util.SchemaMigrator;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+
+/**
+ * Recomputes the daily and monthly transaction rollups from the transactions table, e.g. after
+ * rows were loaded or corrected outside the application. Each month is rebuilt in its own
+ * database transaction.
+ *
+ * Usage:
+ *   java tools.RebuildRollups [fromMonth] [toMonth]
+ *
+ * Months are written as 2024-05 and both are included; without them every month that has
+ * transactions is rebuilt.
+ */
+public class RebuildRollups {
+
+    public static void main(String[] args) throws Exception {
+        RollupRepository repository = new RollupRepository();
+        try {
+            SchemaMigrator.migrate();
+            YearMonth from;
+            YearMonth to;
+            if (args.length > 0) {
+                from = YearMonth.parse(args[0]);
+                to = args.length > 1 ? YearMonth.parse(args[1]) : from;
+            } else {
+                LocalDate[] range = repository.findTransactionDateRange();
+                if (range == null) {
+                    System.out.println("No transactions, nothing to rebuild.");
+                    return;
+                }
+                from = YearMonth.from(range[0]);
+                to = YearMonth.from(range[1]);
+            }
+
+            long start = System.nanoTime();
+            long rows = 0;
+            for (YearMonth month = from; !month.isAfter(to); month = month.plusMonths(1)) {
+                int written = repository.rebuild(month.atDay(1), month.plusMonths(1).atDay(1));
+                System.out.printf("%s: %,d rollup rows%n", month, written);
+                rows += written;
+            }
+            System.out.printf("Rebuilt %s to %s: %,d rows in %.1f s%n", from, to, rows,
+                    (System.nanoTime() - start) / 1e9);
+        } finally {
+            DBConnection.shutdown();
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package tools;
+
+import model.BalanceDiscrepancy;
+import model.ReconciliationReport;
+import service.ReconciliationService;
+import util.DBConnection;
+import util.SchemaMigrator;
+
+/**
+ * Checks every account balance against the net of its transactions and lists the accounts
+ * that do not match. Exits with status 1 if any do.
+ *
+ * Usage: java tools.Reconcile [threads] [shardSize] [maxReported]
+ *
+ * Each thread holds a pooled connection, so threads should not exceed bank.pool.maxSize.
+ */
+public class Reconcile {
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0])
+                : Math.min(Runtime.getRuntime().availableProcessors(), Integer.getInteger("bank.pool.maxSize", 10));
+        int shardSize = args.length > 1 ? Integer.parseInt(args[1]) : 100_000;
+        int maxReported = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+
+        ReconciliationReport report;
+        try {
+            SchemaMigrator.migrate();
+            System.out.printf("Reconciling with %d threads, %,d accounts per shard%n", threads, shardSize);
+            report = new ReconciliationService().reconcile(threads, shardSize, maxReported);
+        } finally {
+            DBConnection.shutdown();
+        }
+
+        for (BalanceDiscrepancy discrepancy : report.getDiscrepancies()) {
+            System.out.println(discrepancy);
+        }
+        if (report.getDiscrepancyCount() > report.getDiscrepancies().size()) {
+            System.out.printf("... and %,d more%n", report.getDiscrepancyCount() - report.getDiscrepancies().size());
+        }
+        System.out.println(report);
+        if (!report.isBalanced()) {
+            System.exit(1);
+        }
+    }
+}
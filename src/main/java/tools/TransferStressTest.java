@@ -0,0 +1,120 @@
+package tools;
+
+import model.Account;
+import model.Money;
+import model.User;
+import service.AccountService;
+import service.UserService;
+import util.DBConnection;
+import util.IntObjectMap;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs random transfers between a small set of fresh accounts from many threads and
+ * checks that no money was created or destroyed and that no balance went negative.
+ *
+ * Usage: java tools.TransferStressTest [threads] [accounts] [transfersPerThread]
+ */
+public class TransferStressTest {
+    private static final long INITIAL_BALANCE = Money.ofUnits(1000);
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+        int accounts = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        int transfersPerThread = args.length > 2 ? Integer.parseInt(args[2]) : 500;
+
+        AccountService accountService = new AccountService();
+        UserService userService = new UserService();
+
+        // Few accounts and many threads so transfers constantly overlap in both directions
+        String prefix = "stress-" + System.currentTimeMillis() + "-";
+        List<Integer> userIds = new ArrayList<>();
+        for (int i = 0; i < accounts; i++) {
+            userService.createUser(prefix + i, "stress", "USER");
+            User user = userService.getUserByUsername(prefix + i);
+            userIds.add(user.getUserId());
+            accountService.deposit(user.getUserId(), INITIAL_BALANCE);
+        }
+
+        long totalBefore = totalBalance(accountService, userIds);
+        System.out.printf("Running %d threads x %d transfers over %d accounts, total $%s%n",
+                threads, transfersPerThread, accounts, Money.format(totalBefore));
+
+        AtomicInteger applied = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int i = 0; i < transfersPerThread; i++) {
+                        int from = userIds.get(random.nextInt(accounts));
+                        int to = userIds.get(random.nextInt(accounts));
+                        long amount = random.nextInt(1, 5000);
+                        if (accountService.transfer(from, to, amount)) {
+                            applied.incrementAndGet();
+                        } else {
+                            rejected.incrementAndGet();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    done.countDown();
+                }
+            }, "stress-" + t);
+            worker.start();
+        }
+
+        long startNanos = System.nanoTime();
+        start.countDown();
+        done.await();
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+
+        long totalAfter = totalBalance(accountService, userIds);
+        boolean negative = false;
+        IntObjectMap<Account> balances = accountService.getAccountsByUserIds(toArray(userIds));
+        for (int userId : userIds) {
+            negative |= balances.get(userId).getBalance() < 0;
+        }
+
+        System.out.printf("Applied %d, rejected %d in %.2f s (%.0f transfers/s)%n",
+                applied.get(), rejected.get(), seconds, (applied.get() + rejected.get()) / seconds);
+        System.out.printf("Total before $%s, after $%s%n", Money.format(totalBefore), Money.format(totalAfter));
+        System.out.println("Pool: " + DBConnection.getPoolStats());
+
+        boolean ok = failure.get() == null && !negative && totalAfter == totalBefore;
+        if (failure.get() != null) {
+            failure.get().printStackTrace();
+        }
+        if (negative) {
+            System.out.println("FAILED: an account balance went negative");
+        }
+        System.out.println(ok ? "PASSED: money conserved" : "FAILED: money not conserved");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static long totalBalance(AccountService accountService, List<Integer> userIds) throws SQLException {
+        IntObjectMap<Account> accounts = accountService.getAccountsByUserIds(toArray(userIds));
+        long total = 0;
+        for (int userId : userIds) {
+            total = Money.add(total, accounts.get(userId).getBalance());
+        }
+        return total;
+    }
+
+    private static int[] toArray(List<Integer> ids) {
+        return ids.stream().mapToInt(Integer::intValue).toArray();
+    }
+}
@@ -1,5 +1,7 @@
 package util;
 
+import model.Money;
+
 import java.util.Scanner;
 
 public class ConsoleInput {
@@ -21,13 +23,14 @@ public class ConsoleInput {
         }
     }
 
-    public static double readDouble(String prompt) {
+    // Reads an amount such as 12.50 and returns it in cents
+    public static long readAmount(String prompt) {
         while (true) {
             try {
                 System.out.print(prompt);
-                return Double.parseDouble(scanner.nextLine());
-            } catch (NumberFormatException e) {
-                System.out.println("Please enter a valid number.");
+                return Money.parse(scanner.nextLine());
+            } catch (NumberFormatException | ArithmeticException e) {
+                System.out.println("Please enter a valid amount (at most two decimals).");
             }
         }
     }
@@ -1,20 +1,102 @@
 package util;
 
 import java.sql.Connection;
-import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
 
 public class DBConnection {
-    private static final String URL = "jdbc:mysql://localhost:3306/bank";
-    private static final String USER = "root";
-    private static final String PASSWORD = "";
+    private static final String URL = System.getProperty("bank.db.url", "jdbc:mysql://localhost:3306/bank");
+    private static final String USER = System.getProperty("bank.db.user", "root");
+    private static final String PASSWORD = System.getProperty("bank.db.password", "");
+    private static final String DRIVER = System.getProperty("bank.db.driver",
+            URL.startsWith("jdbc:mysql:") ? "com.mysql.cj.jdbc.Driver" : "");
+
+    private static final int POOL_MIN_SIZE = Integer.getInteger("bank.pool.minSize", 2);
+    private static final int POOL_MAX_SIZE = Integer.getInteger("bank.pool.maxSize", 10);
+    private static final long BORROW_TIMEOUT_MS = Long.getLong("bank.pool.borrowTimeoutMs", 5_000);
+    private static final long IDLE_TIMEOUT_MS = Long.getLong("bank.pool.idleTimeoutMs", 600_000);
+    private static final long LEAK_THRESHOLD_MS = Long.getLong("bank.pool.leakThresholdMs", 60_000);
+    private static final boolean LEAK_TRACE = Boolean.getBoolean("bank.pool.leakTrace");
+    private static final int STATEMENT_CACHE_SIZE = Integer.getInteger("bank.pool.statementCacheSize", 64);
+
+    // Connector/J prepares statements on the client unless told otherwise; server-side prepares
+    // let a statement kept in the pool's cache skip parsing on the server as well
+    private static final boolean SERVER_PREPARE = Boolean.parseBoolean(System.getProperty("bank.db.serverPrepare", "true"));
+
+    // Connector/J only streams rows one by one with a fetch size of Integer.MIN_VALUE
+    // (unless useCursorFetch is set); other drivers take a plain row count
+    private static final int STREAMING_FETCH_SIZE = Integer.getInteger("bank.db.fetchSize",
+            URL.startsWith("jdbc:mysql:") && !URL.contains("useCursorFetch=true") ? Integer.MIN_VALUE : 500);
+
+    private static volatile ConnectionPool pool;
+    private static final Deque<Runnable> shutdownTasks = new ArrayDeque<>();
 
     public static Connection getConnection() throws SQLException {
+        return getPool().getConnection();
+    }
+
+    public static ConnectionPool getPool() throws SQLException {
+        ConnectionPool current = pool;
+        if (current == null) {
+            synchronized (DBConnection.class) {
+                current = pool;
+                if (current == null) {
+                    loadDriver();
+                    current = new ConnectionPool(connectionUrl(), USER, PASSWORD, POOL_MIN_SIZE, POOL_MAX_SIZE,
+                            BORROW_TIMEOUT_MS, IDLE_TIMEOUT_MS, LEAK_THRESHOLD_MS, LEAK_TRACE, STATEMENT_CACHE_SIZE);
+                    Runtime.getRuntime().addShutdownHook(new Thread(DBConnection::shutdown, "connection-pool-shutdown"));
+                    pool = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    // bank.db.url plus useServerPrepStmts for MySQL, unless the URL already sets it
+    private static String connectionUrl() {
+        if (!SERVER_PREPARE || !URL.startsWith("jdbc:mysql:") || URL.contains("useServerPrepStmts=")) {
+            return URL;
+        }
+        return URL + (URL.contains("?") ? "&" : "?") + "useServerPrepStmts=true";
+    }
+
+    public static int getStreamingFetchSize() {
+        return STREAMING_FETCH_SIZE;
+    }
+
+    public static PoolStats getPoolStats() throws SQLException {
+        return getPool().getStats();
+    }
+
+    // Registers work that still needs the pool (such as draining queued writes) to run before
+    // the pool closes at shutdown. Tasks run in reverse order of registration.
+    public static synchronized void beforeShutdown(Runnable task) {
+        shutdownTasks.push(task);
+    }
+
+    public static synchronized void shutdown() {
+        while (!shutdownTasks.isEmpty()) {
+            try {
+                shutdownTasks.pop().run();
+            } catch (RuntimeException e) {
+                System.err.println("Shutdown task failed: " + e.getMessage());
+            }
+        }
+        if (pool != null) {
+            pool.close();
+            pool = null;
+        }
+    }
+
+    private static void loadDriver() throws SQLException {
+        if (DRIVER.isEmpty()) {
+            return; // JDBC 4 drivers register themselves
+        }
         try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            return DriverManager.getConnection(URL, USER, PASSWORD);
+            Class.forName(DRIVER);
         } catch (ClassNotFoundException e) {
-            throw new SQLException("MySQL JDBC Driver not found.", e);
+            throw new SQLException("JDBC Driver not found: " + DRIVER, e);
         }
     }
-}
\ No newline at end of file
+}
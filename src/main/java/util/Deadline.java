@@ -0,0 +1,81 @@
+package util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A point in time by which a piece of work must be done. An async call carries its deadline into
+ * the thread that runs it (see service.AsyncExecutor), where it is the current deadline for
+ * everything that thread does: nested async calls can pass Deadline.current() on, and the
+ * connection pool stops waiting for a connection once it has passed.
+ */
+public final class Deadline {
+    private static final Deadline NONE = new Deadline(false, 0);
+    private static final ThreadLocal<Deadline> CURRENT = new ThreadLocal<>();
+
+    private final boolean bounded;
+    private final long atNanos; // System.nanoTime() at the deadline
+
+    private Deadline(boolean bounded, long atNanos) {
+        this.bounded = bounded;
+        this.atNanos = atNanos;
+    }
+
+    public static Deadline after(long timeout, TimeUnit unit) {
+        return new Deadline(true, System.nanoTime() + unit.toNanos(timeout));
+    }
+
+    public static Deadline none() {
+        return NONE;
+    }
+
+    // The deadline of the work running on this thread, or none
+    public static Deadline current() {
+        Deadline current = CURRENT.get();
+        return current == null ? NONE : current;
+    }
+
+    // Makes the deadline current on this thread and returns the one it replaces, to be
+    // installed again when the work is done
+    public static Deadline install(Deadline deadline) {
+        Deadline previous = CURRENT.get();
+        if (deadline == NONE) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(deadline);
+        }
+        return previous == null ? NONE : previous;
+    }
+
+    public boolean isBounded() {
+        return bounded;
+    }
+
+    // Long.MAX_VALUE without a deadline; zero or less once it has passed
+    public long remainingNanos() {
+        return bounded ? atNanos - System.nanoTime() : Long.MAX_VALUE;
+    }
+
+    public long remainingMillis() {
+        return bounded ? TimeUnit.NANOSECONDS.toMillis(remainingNanos()) : Long.MAX_VALUE;
+    }
+
+    public boolean isExpired() {
+        return bounded && remainingNanos() <= 0;
+    }
+
+    // Whichever of the two comes first
+    public Deadline earliest(Deadline other) {
+        if (!other.bounded) {
+            return this;
+        }
+        if (!bounded) {
+            return other;
+        }
+        return other.atNanos - atNanos < 0 ? other : this;
+    }
+
+    @Override
+    public String toString() {
+        return bounded ? "Deadline in " + remainingMillis() + " ms" : "No deadline";
+    }
+}
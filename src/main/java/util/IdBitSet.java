@@ -0,0 +1,70 @@
+package util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+// Set of non-negative int ids, one bit each, in pages of 65,536 ids allocated on first use. Dense
+// auto-increment ids cost 1 bit apiece: a million ids take 128 KB. Bits are only ever set, never
+// cleared. Thread-safe; reads take no lock.
+public class IdBitSet {
+    private static final int PAGE_BITS = 16;
+    private static final int WORDS_PER_PAGE = (1 << PAGE_BITS) / 64;
+
+    private volatile AtomicLongArray[] pages = new AtomicLongArray[16];
+
+    public boolean get(int id) {
+        if (id < 0) {
+            return false;
+        }
+        AtomicLongArray[] current = pages;
+        int page = id >>> PAGE_BITS;
+        if (page >= current.length || current[page] == null) {
+            return false;
+        }
+        return (current[page].get(wordIndex(id)) & bit(id)) != 0;
+    }
+
+    public void set(int id) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative id: " + id);
+        }
+        AtomicLongArray words = page(id >>> PAGE_BITS);
+        int index = wordIndex(id);
+        long mask = bit(id);
+        long word;
+        do {
+            word = words.get(index);
+            if ((word & mask) != 0) {
+                return;
+            }
+        } while (!words.compareAndSet(index, word, word | mask));
+    }
+
+    private AtomicLongArray page(int page) {
+        AtomicLongArray[] current = pages;
+        if (page < current.length && current[page] != null) {
+            return current[page];
+        }
+        synchronized (this) {
+            current = pages;
+            if (page >= current.length) {
+                AtomicLongArray[] grown = new AtomicLongArray[Math.max(page + 1, current.length * 2)];
+                System.arraycopy(current, 0, grown, 0, current.length);
+                current = grown;
+            }
+            if (current[page] == null) {
+                // Readers see the page once the directory is published again below
+                current[page] = new AtomicLongArray(WORDS_PER_PAGE);
+            }
+            pages = current;
+            return current[page];
+        }
+    }
+
+    private static int wordIndex(int id) {
+        return (id >>> 6) & (WORDS_PER_PAGE - 1);
+    }
+
+    private static long bit(int id) {
+        return 1L << (id & 63);
+    }
+}
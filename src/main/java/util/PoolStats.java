@@ -0,0 +1,110 @@
+package util;
+
+public class PoolStats {
+    private final int active;
+    private final int idle;
+    private final int total;
+    private final int waiting;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowCount;
+    private final long averageWaitNanos;
+    private final long maxWaitNanos;
+    private final long timeoutCount;
+    private final long createdCount;
+    private final long destroyedCount;
+    private final long leakCount;
+    private final long statementHits;
+    private final long statementMisses;
+
+    public PoolStats(int active, int idle, int total, int waiting, int minSize, int maxSize, long borrowCount,
+            long averageWaitNanos, long maxWaitNanos, long timeoutCount, long createdCount, long destroyedCount,
+            long leakCount, long statementHits, long statementMisses) {
+        this.active = active;
+        this.idle = idle;
+        this.total = total;
+        this.waiting = waiting;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.borrowCount = borrowCount;
+        this.averageWaitNanos = averageWaitNanos;
+        this.maxWaitNanos = maxWaitNanos;
+        this.timeoutCount = timeoutCount;
+        this.createdCount = createdCount;
+        this.destroyedCount = destroyedCount;
+        this.leakCount = leakCount;
+        this.statementHits = statementHits;
+        this.statementMisses = statementMisses;
+    }
+
+    // Getters
+    public int getActive() {
+        return active;
+    }
+
+    public int getIdle() {
+        return idle;
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public int getWaiting() {
+        return waiting;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public long getBorrowCount() {
+        return borrowCount;
+    }
+
+    public long getAverageWaitNanos() {
+        return averageWaitNanos;
+    }
+
+    public long getMaxWaitNanos() {
+        return maxWaitNanos;
+    }
+
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public long getCreatedCount() {
+        return createdCount;
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount;
+    }
+
+    public long getLeakCount() {
+        return leakCount;
+    }
+
+    public long getStatementHits() {
+        return statementHits;
+    }
+
+    public long getStatementMisses() {
+        return statementMisses;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("active=%d, idle=%d, total=%d/%d (min %d), waiting=%d, borrows=%d, "
+                + "avgWait=%.3f ms, maxWait=%.3f ms, timeouts=%d, created=%d, destroyed=%d, leaks=%d, "
+                + "statementCache=%d hits/%d misses",
+                active, idle, total, maxSize, minSize, waiting, borrowCount,
+                averageWaitNanos / 1_000_000.0, maxWaitNanos / 1_000_000.0,
+                timeoutCount, createdCount, destroyedCount, leakCount, statementHits, statementMisses);
+    }
+}
@@ -0,0 +1,89 @@
+package util;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+public class ResultSetStream {
+
+    // Wraps an open query in a lazy Stream. Rows are mapped one at a time as the stream is
+    // consumed, so only the driver's fetch buffer is ever held in memory. The statement and
+    // connection are released when the stream is closed or fully consumed; callers should
+    // still use try-with-resources in case they stop early.
+    public static <T> Stream<T> of(Connection conn, PreparedStatement stmt, RowMapper<T> mapper) throws SQLException {
+        ResultSet rs;
+        try {
+            rs = stmt.executeQuery();
+        } catch (SQLException e) {
+            closeQuietly(conn, stmt, e);
+            throw e;
+        }
+
+        // Each close runs even if an earlier one throws, so the connection always goes back to the pool
+        Runnable release = () -> {
+            try {
+                try {
+                    try {
+                        rs.close();
+                    } finally {
+                        stmt.close();
+                    }
+                } finally {
+                    conn.close();
+                }
+            } catch (SQLException e) {
+                throw new UncheckedSQLException(e);
+            }
+        };
+
+        Spliterator<T> rows = new Spliterators.AbstractSpliterator<T>(Long.MAX_VALUE,
+                Spliterator.ORDERED | Spliterator.NONNULL) {
+            private boolean done;
+
+            @Override
+            public boolean tryAdvance(Consumer<? super T> action) {
+                if (done) {
+                    return false;
+                }
+                try {
+                    if (!rs.next()) {
+                        done = true;
+                        release.run();
+                        return false;
+                    }
+                    action.accept(mapper.map(rs));
+                    return true;
+                } catch (SQLException e) {
+                    done = true;
+                    throw new UncheckedSQLException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(rows, false).onClose(release);
+    }
+
+    // Prepares a forward-only, read-only statement that asks the driver to stream rows
+    public static PreparedStatement prepareStreaming(Connection conn, String sql) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        stmt.setFetchSize(DBConnection.getStreamingFetchSize());
+        return stmt;
+    }
+
+    private static void closeQuietly(Connection conn, PreparedStatement stmt, SQLException cause) {
+        try {
+            try {
+                stmt.close();
+            } finally {
+                conn.close();
+            }
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+}
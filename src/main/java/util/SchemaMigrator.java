@@ -0,0 +1,247 @@
+package util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Applies the versioned scripts under db/migration in order and records each one in
+ * the schema_version table. Scripts are read from the classpath, or from the
+ * directory given by bank.migrations.dir (src/main/resources/db/migration by default)
+ * when the application is run straight from the source tree.
+ *
+ * The scripts are written for MySQL. On another database (H2 in MySQL mode, used by the
+ * benchmarks) a script in the subdirectory named after it, e.g. db/migration/h2/, replaces
+ * the MySQL one of the same name, and the MySQL named lock is not taken.
+ */
+public class SchemaMigrator {
+    // Ordered list of migrations; append new scripts here
+    private static final String[] SCRIPTS = {
+            "V1__baseline.sql",
+            "V2__hot_path_indexes.sql",
+            "V3__widen_money_columns.sql",
+            "V4__widen_password_column.sql",
+            "V5__bulk_import_progress.sql",
+            "V6__balance_snapshots.sql",
+            "V7__transaction_rollups.sql",
+            "V8__idempotency_keys.sql",
+            "V9__user_directory_index.sql",
+    };
+
+    private static final String RESOURCE_DIR = "/db/migration/";
+    private static final String SOURCE_DIR = System.getProperty("bank.migrations.dir", "src/main/resources/db/migration");
+    private static final String LOCK_NAME = "bank_schema_migration";
+
+    public static int migrate() throws SQLException {
+        try (Connection conn = DBConnection.getConnection()) {
+            String dialect = dialectOf(conn);
+            boolean mysql = dialect == null;
+            if (mysql) {
+                acquireLock(conn);
+            }
+            try {
+                return applyPending(conn, dialect);
+            } finally {
+                if (mysql) {
+                    releaseLock(conn);
+                }
+            }
+        }
+    }
+
+    public static List<String> pendingScripts() throws SQLException {
+        try (Connection conn = DBConnection.getConnection()) {
+            createVersionTable(conn);
+            Map<Integer, Long> applied = appliedVersions(conn);
+            List<String> pending = new ArrayList<>();
+            for (String script : SCRIPTS) {
+                if (!applied.containsKey(versionOf(script))) {
+                    pending.add(script);
+                }
+            }
+            return pending;
+        }
+    }
+
+    // The database's JDBC subprotocol ("h2"), naming the subdirectory that holds its versions
+    // of the scripts, or null for MySQL. Also used by repositories with dialect-specific SQL.
+    public static String dialectOf(Connection conn) throws SQLException {
+        String url = conn.getMetaData().getURL();
+        if (url.startsWith("jdbc:mysql:")) {
+            return null;
+        }
+        int end = url.indexOf(':', "jdbc:".length());
+        return url.substring("jdbc:".length(), end < 0 ? url.length() : end);
+    }
+
+    private static int applyPending(Connection conn, String dialect) throws SQLException {
+        createVersionTable(conn);
+        Map<Integer, Long> applied = appliedVersions(conn);
+
+        int count = 0;
+        for (String script : SCRIPTS) {
+            int version = versionOf(script);
+            String sql = load(script, dialect);
+            long checksum = checksum(sql);
+
+            Long recorded = applied.get(version);
+            if (recorded != null) {
+                if (recorded != checksum) {
+                    System.err.println("Warning: migration " + script + " changed after it was applied.");
+                }
+                continue;
+            }
+
+            // MySQL commits DDL implicitly, so a failing script is not rolled back; it stays
+            // unrecorded and is reported so it can be fixed and re-run
+            try (Statement stmt = conn.createStatement()) {
+                for (String statement : splitStatements(sql)) {
+                    stmt.execute(statement);
+                }
+            } catch (SQLException e) {
+                throw new SQLException("Migration " + script + " failed: " + e.getMessage(), e.getSQLState(),
+                        e.getErrorCode(), e);
+            }
+            recordVersion(conn, version, script, checksum);
+            System.out.println("Applied schema migration " + script);
+            count++;
+        }
+        return count;
+    }
+
+    private static void createVersionTable(Connection conn) throws SQLException {
+        String sql = "CREATE TABLE IF NOT EXISTS schema_version ("
+                + "version INT PRIMARY KEY, "
+                + "script VARCHAR(200) NOT NULL, "
+                + "checksum BIGINT NOT NULL, "
+                + "appliedAt DATETIME NOT NULL)";
+        try (Statement stmt = conn.createStatement()) {
+            stmt.execute(sql);
+        }
+    }
+
+    private static Map<Integer, Long> appliedVersions(Connection conn) throws SQLException {
+        Map<Integer, Long> versions = new HashMap<>();
+        try (Statement stmt = conn.createStatement();
+                ResultSet rs = stmt.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (rs.next()) {
+                versions.put(rs.getInt("version"), rs.getLong("checksum"));
+            }
+        }
+        return versions;
+    }
+
+    private static void recordVersion(Connection conn, int version, String script, long checksum) throws SQLException {
+        String sql = "INSERT INTO schema_version (version, script, checksum, appliedAt) VALUES (?, ?, ?, ?)";
+        try (PreparedStatement stmt = conn.prepareStatement(sql)) {
+            stmt.setInt(1, version);
+            stmt.setString(2, script);
+            stmt.setLong(3, checksum);
+            stmt.setTimestamp(4, Timestamp.valueOf(LocalDateTime.now()));
+            stmt.executeUpdate();
+        }
+    }
+
+    // Two application instances starting together must not run the same script twice
+    private static void acquireLock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT GET_LOCK(?, 60)")) {
+            stmt.setString(1, LOCK_NAME);
+            try (ResultSet rs = stmt.executeQuery()) {
+                if (!rs.next() || rs.getInt(1) != 1) {
+                    throw new SQLException("Timed out waiting for the schema migration lock.");
+                }
+            }
+        }
+    }
+
+    private static void releaseLock(Connection conn) throws SQLException {
+        try (PreparedStatement stmt = conn.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+            stmt.setString(1, LOCK_NAME);
+            stmt.executeQuery().close();
+        }
+    }
+
+    static int versionOf(String script) {
+        return Integer.parseInt(script.substring(1, script.indexOf("__")));
+    }
+
+    private static String load(String script, String dialect) throws SQLException {
+        if (dialect != null) {
+            String sql = read(dialect + "/" + script);
+            if (sql != null) {
+                return sql;
+            }
+        }
+        String sql = read(script);
+        if (sql == null) {
+            throw new SQLException("Migration " + script + " not found on the classpath or in " + SOURCE_DIR);
+        }
+        return sql;
+    }
+
+    // The script at this path under db/migration, or null if there is none
+    private static String read(String script) throws SQLException {
+        try (InputStream in = SchemaMigrator.class.getResourceAsStream(RESOURCE_DIR + script)) {
+            if (in != null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                }
+                return new String(out.toByteArray(), StandardCharsets.UTF_8);
+            }
+            Path path = Paths.get(SOURCE_DIR, script);
+            if (Files.exists(path)) {
+                return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+            }
+        } catch (IOException e) {
+            throw new SQLException("Could not read migration " + script, e);
+        }
+        return null;
+    }
+
+    // Splits on semicolons that end a line; comment lines are dropped
+    static List<String> splitStatements(String sql) {
+        List<String> statements = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+        for (String line : sql.split("\r?\n")) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("--")) {
+                continue;
+            }
+            current.append(line).append('\n');
+            if (trimmed.endsWith(";")) {
+                String statement = current.toString().trim();
+                statements.add(statement.substring(0, statement.length() - 1));
+                current.setLength(0);
+            }
+        }
+        if (current.toString().trim().length() > 0) {
+            statements.add(current.toString().trim());
+        }
+        return statements;
+    }
+
+    private static long checksum(String sql) {
+        CRC32 crc = new CRC32();
+        crc.update(sql.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+        return crc.getValue();
+    }
+}
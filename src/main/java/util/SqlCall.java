@@ -0,0 +1,8 @@
+package util;
+
+import java.sql.SQLException;
+
+@FunctionalInterface
+public interface SqlCall<T> {
+    T call() throws SQLException;
+}
@@ -0,0 +1,47 @@
+package util;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Idle prepared statements of one physical connection, keyed by SQL, least recently used
+// evicted first. A statement is removed while a borrower uses it, so two users of the same
+// SQL on one connection never share it. Only used by the thread holding the connection.
+final class StatementCache {
+    private final int maxSize;
+    private final LinkedHashMap<String, PreparedStatement> idle;
+
+    StatementCache(int maxSize) {
+        this.maxSize = maxSize;
+        this.idle = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    // An idle statement for the key, or null if the caller has to prepare one
+    PreparedStatement checkOut(String key) {
+        return idle.remove(key);
+    }
+
+    // Keeps the statement for the next borrower unless one is already kept for the key
+    void checkIn(String key, PreparedStatement statement) {
+        if (idle.containsKey(key)) {
+            closeQuietly(statement);
+            return;
+        }
+        idle.put(key, statement);
+        if (idle.size() > maxSize) {
+            Iterator<Map.Entry<String, PreparedStatement>> eldest = idle.entrySet().iterator();
+            closeQuietly(eldest.next().getValue());
+            eldest.remove();
+        }
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException ignored) {
+            // Only the driver's resources for this statement are lost
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package util;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TransactionManager {
+    private static final ThreadLocal<List<CommitHook>> commitHooks = new ThreadLocal<>();
+    // Set while a unit of a group commit runs (see inSavepoint)
+    private static final ThreadLocal<Savepoint> unitStart = new ThreadLocal<>();
+
+    // Runs the work on a single pooled connection and commits it as one unit.
+    // Any exception rolls the whole unit back. Work that decides to abort without
+    // throwing calls rollback(conn); the final commit is then a no-op.
+    public static <T> T inTransaction(SqlWork<T> work) throws SQLException {
+        List<CommitHook> outerHooks = commitHooks.get();
+        List<CommitHook> hooks = new ArrayList<>();
+        commitHooks.set(hooks);
+        T result;
+        try (Connection conn = DBConnection.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                result = work.execute(conn);
+                conn.commit();
+            } catch (SQLException | RuntimeException e) {
+                rollbackQuietly(conn, e);
+                throw e;
+            }
+        } finally {
+            commitHooks.set(outerHooks);
+        }
+
+        runCommitHooks(hooks);
+        return result;
+    }
+
+    // Runs one unit of a shared transaction (see repository.TransactionJournal) on the group's
+    // connection, behind a savepoint: a failure, or rollback(conn) from inside the work, undoes
+    // only this unit. Its commit hooks are added to the given list, to be run with
+    // runCommitHooks once the group has committed.
+    public static <T> T inSavepoint(Connection conn, SqlWork<T> work, List<CommitHook> hooks) throws SQLException {
+        Savepoint savepoint = conn.setSavepoint();
+        List<CommitHook> outerHooks = commitHooks.get();
+        commitHooks.set(hooks);
+        unitStart.set(savepoint);
+        try {
+            return work.execute(conn);
+        } catch (SQLException | RuntimeException e) {
+            hooks.clear();
+            try {
+                conn.rollback(savepoint);
+            } catch (SQLException rollbackFailure) {
+                e.addSuppressed(rollbackFailure);
+            }
+            throw e;
+        } finally {
+            unitStart.remove();
+            commitHooks.set(outerHooks);
+        }
+    }
+
+    // The work has committed by the time the hooks run, so a failing hook is reported and must
+    // never reach the caller: a retry loop around the work would apply it a second time
+    public static void runCommitHooks(List<CommitHook> hooks) {
+        for (CommitHook hook : hooks) {
+            try {
+                hook.run();
+            } catch (SQLException | RuntimeException e) {
+                System.err.println("Commit hook failed after commit: " + e);
+            }
+        }
+    }
+
+    // Defers an action until the current transaction has committed; it is dropped if the
+    // transaction rolls back. Outside inTransaction the action runs immediately.
+    public static void afterCommit(CommitHook hook) throws SQLException {
+        List<CommitHook> hooks = commitHooks.get();
+        if (hooks == null) {
+            hook.run();
+        } else {
+            hooks.add(hook);
+        }
+    }
+
+    // Rolls back the current transaction (or unit, see inSavepoint) from inside the work and
+    // drops its commit hooks
+    public static void rollback(Connection conn) throws SQLException {
+        Savepoint savepoint = unitStart.get();
+        if (savepoint == null) {
+            conn.rollback();
+        } else {
+            conn.rollback(savepoint);
+        }
+        List<CommitHook> hooks = commitHooks.get();
+        if (hooks != null) {
+            hooks.clear();
+        }
+    }
+
+    private static void rollbackQuietly(Connection conn, Exception cause) {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            cause.addSuppressed(e);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+-- Baseline schema. Uses IF NOT EXISTS so databases created from the old schema.sql
+-- are adopted as version 1 without changes.
+
+CREATE TABLE IF NOT EXISTS users (
+    userId INT PRIMARY KEY AUTO_INCREMENT,
+    username VARCHAR(50) UNIQUE NOT NULL,
+    password VARCHAR(50) NOT NULL,
+    role VARCHAR(20) NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS accounts (
+    accountId INT PRIMARY KEY AUTO_INCREMENT,
+    userId INT NOT NULL,
+    balance DECIMAL(10,2) NOT NULL DEFAULT 0.00,
+    FOREIGN KEY (userId) REFERENCES users(userId)
+);
+
+CREATE TABLE IF NOT EXISTS transactions (
+    transactionId INT PRIMARY KEY AUTO_INCREMENT,
+    fromAccountId INT NOT NULL,
+    toAccountId INT NOT NULL,
+    amount DECIMAL(10,2) NOT NULL,
+    dateTime DATETIME NOT NULL,
+    type VARCHAR(20) NOT NULL,
+    FOREIGN KEY (fromAccountId) REFERENCES accounts(accountId),
+    FOREIGN KEY (toAccountId) REFERENCES accounts(accountId)
+);
+
+-- Default admin user
+INSERT INTO users (username, password, role)
+SELECT 'admin', 'admin', 'ADMIN' FROM DUAL
+WHERE NOT EXISTS (SELECT 1 FROM users WHERE username = 'admin');
+
+INSERT INTO accounts (userId, balance)
+SELECT userId, 0.00 FROM users
+WHERE username = 'admin' AND NOT EXISTS (SELECT 1 FROM accounts a WHERE a.userId = users.userId);
@@ -0,0 +1,13 @@
+-- One account per user: findByUserId becomes a unique lookup and concurrent
+-- createAccountIfNotExists calls can no longer create duplicates.
+-- Fails if duplicates already exist; remove the extra accounts first.
+CREATE UNIQUE INDEX uk_accounts_user ON accounts (userId);
+
+-- History by account is answered as a UNION of two range scans, one per side of the
+-- transfer. Each index also carries the (dateTime, transactionId) sort and keyset columns,
+-- so a page is read backwards straight off the index without a filesort.
+CREATE INDEX idx_transactions_from ON transactions (fromAccountId, dateTime, transactionId);
+CREATE INDEX idx_transactions_to ON transactions (toAccountId, dateTime, transactionId);
+
+-- Admin listing of all transactions, newest first
+CREATE INDEX idx_transactions_date ON transactions (dateTime, transactionId);
@@ -0,0 +1,4 @@
+-- DECIMAL(10,2) capped balances at 99,999,999.99. DECIMAL(18,2) still converts
+-- exactly to a long number of cents (see model.Money).
+ALTER TABLE accounts MODIFY COLUMN balance DECIMAL(18,2) NOT NULL DEFAULT 0.00;
+ALTER TABLE transactions MODIFY COLUMN amount DECIMAL(18,2) NOT NULL;
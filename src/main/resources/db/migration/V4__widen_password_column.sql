@@ -0,0 +1,3 @@
+-- Passwords are now stored as PBKDF2 hashes ("pbkdf2-sha256$iterations$salt$hash",
+-- about 90 characters). Existing plaintext values are rehashed at the next login.
+ALTER TABLE users MODIFY COLUMN password VARCHAR(255) NOT NULL;
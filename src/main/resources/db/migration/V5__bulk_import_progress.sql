@@ -0,0 +1,10 @@
+-- One row per chunk loaded by a bulk import job. Each row is written in the same
+-- transaction as its chunk, so a restarted job knows exactly which chunks are in.
+CREATE TABLE IF NOT EXISTS bulk_import_progress (
+    jobId VARCHAR(100) NOT NULL,
+    entity VARCHAR(20) NOT NULL,
+    chunk INT NOT NULL,
+    rowsLoaded INT NOT NULL,
+    completedAt DATETIME NOT NULL,
+    PRIMARY KEY (jobId, entity, chunk)
+);
@@ -0,0 +1,28 @@
+-- Periodic balance checkpoints (see service.BalanceSnapshotService). A snapshot holds every
+-- account's balance as of lastTransactionId. Transactions with a lower id that were still
+-- uncommitted when it was taken are not in it; their ids are listed in balance_snapshot_pending
+-- so a replay from the snapshot can pick them up. Only complete snapshots are used.
+CREATE TABLE IF NOT EXISTS balance_snapshots (
+    snapshotId INT PRIMARY KEY AUTO_INCREMENT,
+    takenAt DATETIME NOT NULL,
+    lastTransactionId INT NOT NULL,
+    accountCount INT NOT NULL DEFAULT 0,
+    complete BOOLEAN NOT NULL DEFAULT FALSE,
+    INDEX idx_balance_snapshots_taken (complete, takenAt)
+);
+
+CREATE TABLE IF NOT EXISTS balance_checkpoints (
+    snapshotId INT NOT NULL,
+    accountId INT NOT NULL,
+    userId INT NOT NULL,
+    balance DECIMAL(18,2) NOT NULL,
+    PRIMARY KEY (snapshotId, accountId),
+    FOREIGN KEY (snapshotId) REFERENCES balance_snapshots(snapshotId) ON DELETE CASCADE
+);
+
+CREATE TABLE IF NOT EXISTS balance_snapshot_pending (
+    snapshotId INT NOT NULL,
+    transactionId INT NOT NULL,
+    PRIMARY KEY (snapshotId, transactionId),
+    FOREIGN KEY (snapshotId) REFERENCES balance_snapshots(snapshotId) ON DELETE CASCADE
+);
@@ -0,0 +1,34 @@
+-- Per-account totals by day (period 'D') and by month ('M'), kept up to date in the same
+-- database transaction as each transaction row (see repository.RollupRepository). kind is
+-- the transaction as seen from the account: DEPOSIT, WITHDRAWAL, TRANSFER_IN or TRANSFER_OUT.
+-- periodStart is the day, or the first day of the month.
+CREATE TABLE IF NOT EXISTS transaction_rollups (
+    accountId INT NOT NULL,
+    period CHAR(1) NOT NULL,
+    periodStart DATE NOT NULL,
+    kind VARCHAR(20) NOT NULL,
+    txCount BIGINT NOT NULL,
+    totalAmount DECIMAL(20,2) NOT NULL,
+    minAmount DECIMAL(18,2) NOT NULL,
+    maxAmount DECIMAL(18,2) NOT NULL,
+    PRIMARY KEY (accountId, period, periodStart, kind),
+    INDEX idx_rollups_period (period, periodStart)
+);
+
+-- Backfill from the existing history; tools.RebuildRollups does the same for a date range
+INSERT INTO transaction_rollups (accountId, period, periodStart, kind, txCount, totalAmount, minAmount, maxAmount)
+SELECT accountId, 'D', day, kind, COUNT(*), SUM(amount), MIN(amount), MAX(amount)
+FROM (
+    SELECT fromAccountId AS accountId, DATE(dateTime) AS day, amount,
+           CASE type WHEN 'DEPOSIT' THEN 'DEPOSIT' WHEN 'WITHDRAWAL' THEN 'WITHDRAWAL' ELSE 'TRANSFER_OUT' END AS kind
+    FROM transactions
+    UNION ALL
+    SELECT toAccountId, DATE(dateTime), amount, 'TRANSFER_IN'
+    FROM transactions WHERE toAccountId <> fromAccountId
+) sides
+GROUP BY accountId, day, kind;
+
+INSERT INTO transaction_rollups (accountId, period, periodStart, kind, txCount, totalAmount, minAmount, maxAmount)
+SELECT accountId, 'M', DATE_FORMAT(periodStart, '%Y-%m-01'), kind, SUM(txCount), SUM(totalAmount), MIN(minAmount), MAX(maxAmount)
+FROM transaction_rollups WHERE period = 'D'
+GROUP BY accountId, DATE_FORMAT(periodStart, '%Y-%m-01'), kind;
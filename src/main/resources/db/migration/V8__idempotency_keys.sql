@@ -0,0 +1,15 @@
+-- Client-supplied request keys for deposits, withdrawals and transfers (see
+-- service.RequestDeduplicator). A key is written in the same database transaction as the
+-- money movement it identifies, so the primary key lets each one apply at most once per
+-- source account; a retry finds the row and gets the recorded outcome back instead.
+CREATE TABLE IF NOT EXISTS idempotency_keys (
+    accountId INT NOT NULL,
+    requestKey VARCHAR(64) NOT NULL,
+    operation VARCHAR(20) NOT NULL,
+    toAccountId INT NOT NULL,
+    amount DECIMAL(18,2) NOT NULL,
+    applied BOOLEAN NOT NULL,
+    createdAt DATETIME NOT NULL,
+    PRIMARY KEY (accountId, requestKey),
+    INDEX idx_idempotency_keys_created (createdAt)
+);
@@ -0,0 +1,3 @@
+-- Admin user directory filtered by role: the matching users are read in username order
+-- straight off this index (see repository.UserDirectoryRepository)
+CREATE INDEX idx_users_role_username ON users (role, username);